@@ -3,7 +3,9 @@ package org.jwave.controller;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
-import org.jwave.model.editor.GroupedSampleInfo;
+import java.util.concurrent.CompletableFuture;
+import org.jwave.model.editor.GroupedWaveform;
+import org.jwave.model.editor.WaveformTile;
 import org.jwave.view.UI;
 import org.jwave.view.screens.EditorScreenController;
 
@@ -58,6 +60,16 @@ public interface EditorController {
      */
     void paste(int from);
 
+    /**
+     * Undoes the last modification of the song.
+     */
+    void undo();
+
+    /**
+     * Redoes the last undone modification of the song.
+     */
+    void redo();
+
     /**
      * @param f
      * @throws IllegalArgumentException
@@ -65,7 +77,23 @@ public interface EditorController {
      */
     void loadSong(File f) throws IllegalArgumentException, IOException;
 
-    void saveFile(String path);
+    /**
+     * Loads a song in background, decoding and analysing it if needed.
+     * 
+     * @param f
+     * @return A future completed once the song is loaded, or completed
+     *         exceptionally if it can't be loaded.
+     */
+    CompletableFuture<Void> loadSongAsync(File f);
+
+    /**
+     * Exports the modified song as a .wav file.
+     * 
+     * @param path
+     * @throws IOException
+     *             if the song can't be read, or the file can't be written.
+     */
+    void saveFile(String path) throws IOException;
     
     /**
      * Moves throughout the song.
@@ -79,11 +107,56 @@ public interface EditorController {
      */
     public void setVolume(Integer amount);
 
+    /**
+     * Sets the crossfade smoothing every join of the edited song when it is
+     * played, kept for the songs loaded later. Exported songs are not faded.
+     * 
+     * @param ms
+     *            length of the crossfade, 0 to join segments exactly as
+     *            exported.
+     * @throws IllegalArgumentException
+     *             if ms is negative.
+     */
+    public void setSpliceFade(int ms) throws IllegalArgumentException;
+
+    /**
+     * 
+     * @return The waveform of the song for plotting, the same buffer is
+     *         filled again on every call.
+     */
+    public GroupedWaveform getWaveform();
+
+    /**
+     * 
+     * @param from
+     *            first frame of the song to plot
+     * @param to
+     *            frame after the last one to plot
+     * @param pixels
+     *            width of the plot
+     * @return The tiles of the waveform covering the given frames.
+     */
+    public List<WaveformTile> getWaveformTiles(int from, int to, int pixels);
+
+    /**
+     * Computes the tiles of the waveform in background, see getWaveformTiles.
+     * Cancelling the returned future before the tiles are computed avoids
+     * computing them at all.
+     * 
+     * @param from
+     *            first frame of the song to plot
+     * @param to
+     *            frame after the last one to plot
+     * @param pixels
+     *            width of the plot
+     * @return The future tiles of the waveform covering the given frames.
+     */
+    public CompletableFuture<List<WaveformTile>> getWaveformTilesAsync(int from, int to, int pixels);
+
     /**
      * 
-     * @return A list of GroupedSampleInfo GroupedSampleInfo for plotting the
-     *         waveform of the song.
+     * @return The length (in frames) of the modified song.
      */
-    public List<GroupedSampleInfo> getWaveform();
+    public int getSongLength();
 
 }
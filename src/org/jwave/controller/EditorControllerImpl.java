@@ -2,15 +2,22 @@ package org.jwave.controller;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import org.jwave.controller.editor.Editor;
 import org.jwave.controller.editor.EditorImpl;
 import org.jwave.controller.player.ClockAgent;
 import org.jwave.controller.player.PlaylistController;
 import org.jwave.model.editor.DynamicEditorPlayerImpl;
-import org.jwave.model.editor.GroupedSampleInfo;
+import org.jwave.model.editor.GroupedWaveform;
+import org.jwave.model.editor.ModifiableSong;
+import org.jwave.model.editor.WaveformTile;
 import org.jwave.model.player.DynamicPlayer;
 import org.jwave.model.player.DynamicPlayerImpl;
 import org.jwave.model.playlist.PlaylistImpl;
@@ -30,6 +37,7 @@ public final class EditorControllerImpl implements EditorController, UpdatableUI
     private static final float MAXIMUM_SONG_POSITION_PERCENTAGE = 10000;
     private static final int SAMPLES_RESOLUTION = 1000;
     private static final int SONG_LENGHT_SCALING_FACTOR = 100;
+    private static final int ANALYSIS_STEP = 1 << 18;   /* frames read by every analysis task on the worker */
     
     private final DynamicPlayer editorPlayer;
     private final PlaylistManager manager;
@@ -37,6 +45,10 @@ public final class EditorControllerImpl implements EditorController, UpdatableUI
     private final Set<UI> uis;
     private final Editor editor;
     private final Set<EditorScreenController> graphs;
+    private final GroupedWaveform waveform;
+    private final ExecutorService worker;
+    private volatile ModifiableSong analysed;   /* song being analysed on the worker, if any */
+    private volatile int spliceFade;            /* ms of the crossfade at every join, when played */
 
     public EditorControllerImpl() {
 
@@ -49,12 +61,18 @@ public final class EditorControllerImpl implements EditorController, UpdatableUI
 
         this.editorPlayer = new DynamicEditorPlayerImpl(new DynamicPlayerImpl());
         this.manager = new PlaylistManagerImpl(new PlaylistImpl("editor"));
-        this.agent = new ClockAgent(editorPlayer, manager, ClockAgent.Mode.PLAYER);
+        this.agent = new ClockAgent(editorPlayer, manager, ClockAgent.Mode.EDITOR);
         this.agent.addController(this);
         this.agent.startClockAgent();
         this.uis = new HashSet<>();
         this.editor = new EditorImpl();
         this.graphs = new HashSet<>();
+        this.waveform = new GroupedWaveform(SAMPLES_RESOLUTION);
+        this.worker = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "Editor worker");
+            thread.setDaemon(true);
+            return thread;
+        });
         
 
         manager.setQueue(manager.getDefaultPlaylist());
@@ -76,16 +94,34 @@ public final class EditorControllerImpl implements EditorController, UpdatableUI
      * @param song
      */
     public void loadSong(final File song) throws IllegalArgumentException, IOException {
+        this.analysed = null;
         Song newSong = this.manager.addAudioFile(song);
         this.editor.loadSongToEdit(newSong);
+        this.applySpliceFade();
+        this.startAnalysis(this.editor.getSong());
         Song newEditableSong = this.editor.getSong();
         editorPlayer.setPlayer(newEditableSong);
         graphs.forEach(e->{
-        e.updateGraphLenght(editor.getModifiedSongLength()/SONG_LENGHT_SCALING_FACTOR);
-        System.out.println("UPDATE GRAPH "+editor.getModifiedSongLength()/SONG_LENGHT_SCALING_FACTOR);
+        e.updateGraphLenght(editor.framesToMs(editor.getModifiedSongLength())/SONG_LENGHT_SCALING_FACTOR);
         });
     }
     
+    /* (non-Javadoc)
+     * @see org.jwave.controller.EditorController#loadSongAsync(java.io.File)
+     */
+    @Override
+    public CompletableFuture<Void> loadSongAsync(final File song) {
+        // the analysis of the previous song is dropped before waiting for the worker
+        this.analysed = null;
+        return CompletableFuture.runAsync(() -> {
+            try {
+                loadSong(song);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, worker);
+    }
+
     /* (non-Javadoc)
      * @see org.jwave.controller.EditorController#play()
      */
@@ -115,10 +151,10 @@ public final class EditorControllerImpl implements EditorController, UpdatableUI
      * @see org.jwave.controller.EditorController#cut(int, int)
      */
     public void cut(int from, int to) {
-        editor.setSelectionFrom(from*SONG_LENGHT_SCALING_FACTOR);
-        editor.setSelectionTo(to*SONG_LENGHT_SCALING_FACTOR);
+        editor.setSelectionFrom(editor.msToFrames(from*SONG_LENGHT_SCALING_FACTOR));
+        editor.setSelectionTo(editor.msToFrames(to*SONG_LENGHT_SCALING_FACTOR));
         editor.cutSelection();
-        graphs.forEach(e->e.paintWaveForm(editor.getAggregatedWaveform(0, editor.getModifiedSongLength(), SAMPLES_RESOLUTION)));   
+        paintGraphs();
         editorPlayer.setPlayer(editor.getSong());      
     }
 
@@ -163,10 +199,59 @@ public final class EditorControllerImpl implements EditorController, UpdatableUI
         this.editorPlayer.setVolume(amount);
     }
 
+    /* (non-Javadoc)
+     * @see org.jwave.controller.EditorController#setSpliceFade(int)
+     */
+    @Override
+    public void setSpliceFade(final int ms) throws IllegalArgumentException {
+        if (ms < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.spliceFade = ms;
+        if (editor.isSongLoaded()) {
+            applySpliceFade();
+            editorPlayer.setPlayer(editor.getSong());
+        }
+    }
+
+    /*
+     * Sets the crossfade of the loaded song, as long as a song allows.
+     */
+    private void applySpliceFade() {
+        editor.getSong().setSpliceFade(Math.min(editor.msToFrames(spliceFade), ModifiableSong.MAX_SPLICE_FADE));
+    }
+
+    /*
+     * Analyses a song on the worker in short steps, so that waveform tiles
+     * are computed in between, until the song is analysed or another one is
+     * loaded.
+     */
+    private void startAnalysis(final ModifiableSong song) {
+        this.analysed = song;
+        this.worker.execute(() -> this.analyseStep(song));
+    }
+
+    private void analyseStep(final ModifiableSong song) {
+        if (this.analysed != song) {
+            return;
+        }
+        if (!song.analyse(ANALYSIS_STEP)) {
+            try {
+                this.worker.execute(() -> this.analyseStep(song));
+            } catch (RejectedExecutionException e) {
+                // the editor has been terminated
+            }
+        } else if (this.analysed == song) {
+            this.analysed = null;
+        }
+    }
+
     /**
      * Releases player resources.
      */
     public void terminate() {
+        this.analysed = null;
+        this.worker.shutdownNow();
         this.editorPlayer.releasePlayerResources();
     }
 
@@ -184,8 +269,8 @@ public final class EditorControllerImpl implements EditorController, UpdatableUI
      */
     @Override
     public void copy(int from, int to) {
-        editor.setSelectionFrom(from*SONG_LENGHT_SCALING_FACTOR);
-        editor.setSelectionTo(to*SONG_LENGHT_SCALING_FACTOR);
+        editor.setSelectionFrom(editor.msToFrames(from*SONG_LENGHT_SCALING_FACTOR));
+        editor.setSelectionTo(editor.msToFrames(to*SONG_LENGHT_SCALING_FACTOR));
         editor.copySelection();
     }
 
@@ -194,12 +279,36 @@ public final class EditorControllerImpl implements EditorController, UpdatableUI
      */
     @Override
     public void paste(int from) {
-        editor.setSelectionFrom(from*SONG_LENGHT_SCALING_FACTOR);
+        editor.setSelectionFrom(editor.msToFrames(from*SONG_LENGHT_SCALING_FACTOR));
         editor.pasteCopiedSelection();
-        graphs.forEach(e->e.paintWaveForm(editor.getAggregatedWaveform(0, editor.getModifiedSongLength(), SAMPLES_RESOLUTION)));
+        paintGraphs();
         editorPlayer.setPlayer(editor.getSong());
     }
 
+    /* (non-Javadoc)
+     * @see org.jwave.controller.EditorController#undo()
+     */
+    @Override
+    public void undo() {
+        if (editor.canUndo()) {
+            editor.undo();
+            paintGraphs();
+            editorPlayer.setPlayer(editor.getSong());
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.jwave.controller.EditorController#redo()
+     */
+    @Override
+    public void redo() {
+        if (editor.canRedo()) {
+            editor.redo();
+            paintGraphs();
+            editorPlayer.setPlayer(editor.getSong());
+        }
+    }
+
     /*
      * Adds an observer graph that will be plotted over time
      */
@@ -210,18 +319,43 @@ public final class EditorControllerImpl implements EditorController, UpdatableUI
 
     /**
      * 
-     * @return A list of GroupedSampleInfo GroupedSampleInfo for plotting the
-     *         waveform of the song.
+     * @return The waveform of the song for plotting, the same buffer is
+     *         filled again on every call.
      */
     @Override
-    public List<GroupedSampleInfo> getWaveform() {
-        return editor.getAggregatedWaveform(0, editor.getModifiedSongLength(), SAMPLES_RESOLUTION);
+    public GroupedWaveform getWaveform() {
+        editor.getAggregatedWaveform(0, editor.getModifiedSongLength(), SAMPLES_RESOLUTION, waveform);
+        return waveform;
+    }
+
+    @Override
+    public List<WaveformTile> getWaveformTiles(int from, int to, int pixels) {
+        return editor.getWaveformTiles(from, to, pixels);
     }
 
     @Override
-    public void saveFile(String path) {
+    public CompletableFuture<List<WaveformTile>> getWaveformTilesAsync(int from, int to, int pixels) {
+        return CompletableFuture.supplyAsync(() -> editor.getWaveformTiles(from, to, pixels), worker);
+    }
+
+    @Override
+    public int getSongLength() {
+        return editor.getModifiedSongLength();
+    }
+
+    /*
+     * Plots the waveform of the modified song on every graph.
+     */
+    private void paintGraphs() {
+        graphs.forEach(e->{
+            e.updateGraphLenght(editor.framesToMs(editor.getModifiedSongLength())/SONG_LENGHT_SCALING_FACTOR);
+            e.paintWaveForm();
+        });
+    }
+
+    @Override
+    public void saveFile(String path) throws IOException {
         editor.exportSong(path);
-        
     }
 
 }
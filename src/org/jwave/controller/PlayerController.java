@@ -2,6 +2,9 @@ package org.jwave.controller;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 import org.jwave.model.player.Song;
 import org.jwave.model.playlist.PlayMode;
 import org.jwave.model.playlist.Playlist;
@@ -26,6 +29,19 @@ public interface PlayerController {
      */
     public void loadSong(File song) throws IllegalArgumentException, IOException;
 
+    /**
+     * Imports audio files, and whole folders of them, in background: all the
+     * songs found are added to the default playlist at once, which is saved
+     * once.
+     * 
+     * @param files
+     *            the files and folders to be imported.
+     * @return A future completed on a thread of the scanner with the number of
+     *         songs added, or completed exceptionally if a folder can't be
+     *         scanned or the playlist can't be saved.
+     */
+    public CompletableFuture<Integer> importFiles(List<File> files);
+
     /**
      * @param song
      */
@@ -81,6 +97,13 @@ public interface PlayerController {
      */
     public void setMode(PlayMode mode);
 
+    /**
+     * @param millis Sets how long the songs of the playing queue overlap, fading
+     *            into each other, 0 for no crossfade
+     * @throws IllegalArgumentException if millis < 0
+     */
+    public void setCrossfade(int millis);
+
     /**
      * @param name name of the new playlist
      */
@@ -108,8 +131,9 @@ public interface PlayerController {
     /**
      * @param playlist
      * @return  A collection that wraps the list of songs of a playlist and permit the gui to be notified when changes occurs
+     * @throws IllegalStateException if the songs of the playlist can't be loaded, the playlist is then removed
      */
-    public ObservableList<Song> getObservablePlaylistContent(Playlist playlist);
+    public ObservableList<Song> getObservablePlaylistContent(Playlist playlist) throws IllegalStateException;
 
     /**
      * Releases the resources
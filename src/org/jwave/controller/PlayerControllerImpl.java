@@ -2,21 +2,28 @@ package org.jwave.controller;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import org.jwave.controller.player.ClockAgent;
 import org.jwave.controller.player.PlaylistController;
 import org.jwave.model.player.DynamicPlayer;
 import org.jwave.model.player.DynamicPlayerImpl;
 import org.jwave.model.player.Song;
+import org.jwave.model.playlist.LibraryScanner;
+import org.jwave.model.playlist.LibraryScannerImpl;
 import org.jwave.model.playlist.PlayMode;
 import org.jwave.model.playlist.Playlist;
 import org.jwave.model.playlist.PlaylistManager;
 import org.jwave.model.playlist.PlaylistManagerImpl;
 import org.jwave.view.UI;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 
@@ -30,6 +37,7 @@ final class PlayerControllerImpl implements PlayerController, UpdatableUI {
     private final DynamicPlayer player;
     private final PlaylistManager manager;
     private final ClockAgent agent;
+    private final LibraryScanner scanner;
     private ObservableList<Playlist> playlists;
     private Map<Playlist, ObservableList<Song>> songs;
     private final Set<UI> uis;
@@ -49,15 +57,11 @@ final class PlayerControllerImpl implements PlayerController, UpdatableUI {
         this.player = new DynamicPlayerImpl();
         final Playlist def = PlaylistController.loadDefaultPlaylist();
         this.manager = new PlaylistManagerImpl(def);
-        try {
-            PlaylistController.saveDefaultPlaylistToFile(def, def.getName());
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
         this.agent = new ClockAgent(player, manager, ClockAgent.Mode.PLAYER);
         this.agent.addController(this);
         this.agent.startClockAgent();
         this.uis = new HashSet<>();
+        this.scanner = new LibraryScannerImpl();
 
         try {
             manager.setAvailablePlaylists(PlaylistController.reloadAvailablePlaylists());
@@ -70,11 +74,8 @@ final class PlayerControllerImpl implements PlayerController, UpdatableUI {
 
         this.playlists = FXCollections.observableArrayList(this.manager.getAvailablePlaylists());
 
+        // The contents are only loaded when a playlist is first shown
         this.songs = new HashMap<>();
-        this.manager.getAvailablePlaylists().forEach(e -> {
-            songs.put(e, FXCollections.observableArrayList(e.getPlaylistContent()));
-        });
-
     }
 
     /*
@@ -93,10 +94,39 @@ final class PlayerControllerImpl implements PlayerController, UpdatableUI {
             player.setPlayer(manager.selectSongFromPlayingQueueAtIndex(0));
         }
 
-        this.songs.get(manager.getDefaultPlaylist()).add(newSong);
+        this.showSongs(manager.getDefaultPlaylist(), Collections.singletonList(newSong));
+
+        PlaylistController.songAdded(manager.getDefaultPlaylist(), newSong);
+        this.agent.queueChanged();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.jwave.controller.PlayerController#importFiles(java.util.List)
+     */
+    @Override
+    public CompletableFuture<Integer> importFiles(final List<File> files) {
+        // songs are added and saved on the scanner pool, only the view is updated on the FX thread
+        return this.scanner.scan(files).thenApply(found -> {
+            this.manager.addSongs(found);
+
+            if (this.player.isEmpty() && !found.isEmpty()) {
+                manager.setQueue(manager.getDefaultPlaylist());
+                player.setPlayer(manager.selectSongFromPlayingQueueAtIndex(0));
+            }
+
+            Platform.runLater(() -> this.showSongs(manager.getDefaultPlaylist(), found));
+            this.agent.queueChanged();
 
-        PlaylistController.saveDefaultPlaylistToFile(manager.getDefaultPlaylist(),
-                manager.getDefaultPlaylist().getName());
+            try {
+                PlaylistController.saveDefaultPlaylistToFile(manager.getDefaultPlaylist(),
+                        manager.getDefaultPlaylist().getName());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return found.size();
+        });
     }
 
     /*
@@ -157,6 +187,7 @@ final class PlayerControllerImpl implements PlayerController, UpdatableUI {
             if (wasPlaying) {
                 this.player.play();
             }
+            this.agent.queueChanged();
         }
     }
 
@@ -174,6 +205,7 @@ final class PlayerControllerImpl implements PlayerController, UpdatableUI {
             if (wasPlaying) {
                 this.player.play();
             }
+            this.agent.queueChanged();
         }
     }
 
@@ -205,8 +237,9 @@ final class PlayerControllerImpl implements PlayerController, UpdatableUI {
     @Override
     public void addSongToPlaylist(Song song, Playlist playlist) throws IOException {
         playlist.addSong(song);
-        PlaylistController.savePlaylistToFile(playlist, playlist.getName());
-        songs.get(playlist).add(song);
+        PlaylistController.songAdded(playlist, song);
+        this.showSongs(playlist, Collections.singletonList(song));
+        this.agent.queueChanged();
     }
 
     /**
@@ -218,37 +251,22 @@ final class PlayerControllerImpl implements PlayerController, UpdatableUI {
     public void removeSongFromPlaylist(Song song, Playlist playlist) throws IOException {
         //Could have been way more easy with more support from the model
         if (playlist.equals(manager.getDefaultPlaylist())) {
+            // Playlists not loaded yet only get the removal in their journal
             manager.getAvailablePlaylists().forEach(p -> {
-                p.getPlaylistContent().forEach(s->{
-                    if(s.getName().equals(song.getName())){
-                        p.removeFromPlaylist(s.getSongID());
-                    }
-                });
                 try {
-                    if (p.equals(manager.getDefaultPlaylist())) {
-                        PlaylistController.saveDefaultPlaylistToFile(p, p.getName());
-                    } else {
-                        PlaylistController.savePlaylistToFile(p, p.getName());
-                    }
-                } catch (Exception x) {
+                    PlaylistController.removeSongsNamed(p, song.getName());
+                } catch (IOException x) {
                     System.out.println("Unable to save playlist " + p.getName());
                 }
             });
         } else {
             // playlist.removeFromPlaylist(song.getSongID());
-            playlist.getPlaylistContent().forEach(s -> {
-                if (song.getName().equals(s.getName())) {
-                    playlist.removeFromPlaylist(s.getSongID());
-                }
-            });
-            PlaylistController.savePlaylistToFile(playlist, playlist.getName());
+            PlaylistController.removeSongsNamed(playlist, song.getName());
         }   
         //Had to reinitialize because modify them would have implied a ConcurrentOperationException
         playlists = FXCollections.observableArrayList(this.manager.getAvailablePlaylists());
         songs = new HashMap<>();
-        manager.getAvailablePlaylists().forEach(e -> {
-            songs.put(e, FXCollections.observableArrayList(e.getPlaylistContent()));
-        });
+        this.agent.queueChanged();
 
     }
 
@@ -263,6 +281,7 @@ final class PlayerControllerImpl implements PlayerController, UpdatableUI {
     public void selectSong(Song song) {
         this.player.setPlayer(this.manager.selectSongFromPlayingQueue(song.getSongID()));
         this.player.play();
+        this.agent.queueChanged();
     }
 
     /*
@@ -308,8 +327,25 @@ final class PlayerControllerImpl implements PlayerController, UpdatableUI {
      * jwave.model.playlist.Playlist)
      */
     @Override
-    public ObservableList<Song> getObservablePlaylistContent(Playlist playlist) {
-        return songs.get(playlist);
+    public ObservableList<Song> getObservablePlaylistContent(Playlist playlist) throws IllegalStateException {
+        try {
+            return songs.computeIfAbsent(playlist, p -> FXCollections.observableArrayList(p.getPlaylistContent()));
+        } catch (IllegalStateException e) {
+            // A playlist whose file can't be read anymore is no longer offered
+            this.manager.deletePlaylist(playlist.getPlaylistID());
+            this.playlists.remove(playlist);
+            throw e;
+        }
+    }
+
+    /*
+     * Shows songs added to a playlist, if its content is already shown.
+     */
+    private void showSongs(final Playlist playlist, final List<Song> added) {
+        final ObservableList<Song> shown = this.songs.get(playlist);
+        if (shown != null) {
+            shown.addAll(added);
+        }
     }
 
     /*
@@ -320,6 +356,8 @@ final class PlayerControllerImpl implements PlayerController, UpdatableUI {
     @Override
     public void terminate() {
         this.player.releasePlayerResources();
+        this.scanner.shutdown();
+        PlaylistController.closeJournals();
         // this.agent.KILL
     }
 
@@ -345,6 +383,18 @@ final class PlayerControllerImpl implements PlayerController, UpdatableUI {
     @Override
     public void setMode(PlayMode mode) {
         manager.setPlayMode(mode);
+        this.agent.queueChanged();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.jwave.controller.PlayerController#setCrossfade(int)
+     */
+    @Override
+    public void setCrossfade(int millis) {
+        manager.setCrossfade(millis);
+        this.agent.crossfadeChanged();
     }
 
     /*
@@ -1,10 +1,13 @@
 package org.jwave.controller.editor;
 
+import java.io.IOException;
 import java.util.List;
 
 import org.jwave.model.editor.GroupedSampleInfo;
+import org.jwave.model.editor.GroupedWaveform;
 import org.jwave.model.editor.ModifiableSong;
 import org.jwave.model.editor.SimpleSampleInfo;
+import org.jwave.model.editor.WaveformTile;
 import org.jwave.model.player.Song;
 
 /**
@@ -13,7 +16,8 @@ import org.jwave.model.player.Song;
  * cutting and pasting together segments in order to produce
  * a new song, which can then be saved.
  * 
- * All "ms" acronyms stand for milliseconds.
+ * All positions and lengths are expressed in sample frames, "ms" acronyms
+ * stand for milliseconds.
  *
  */
 public interface Editor {
@@ -51,7 +55,7 @@ public interface Editor {
      * Gets the length of the original, unmodifed song.
      *          
      * @return
-     * 			length of original song in ms, -1 if no song loaded.
+     * 			length of original song in frames, -1 if no song loaded.
      */
 	int getOriginalSongLength();
 	
@@ -59,35 +63,59 @@ public interface Editor {
      * Gets the length of the modified song.
      *          
      * @return
-     * 			length of modified song in ms, -1 if no song loaded.
+     * 			length of modified song in frames, -1 if no song loaded.
      */
 	int getModifiedSongLength();	
 	
+    /**
+     * Converts a duration, or a position, from ms to sample frames of the
+     * currently loaded song.
+     * 
+     * @param ms
+     *          the duration (in ms) to convert.
+     *          
+     * @return
+     * 			the duration (in frames).
+     */
+	int msToFrames(int ms);
+	
+    /**
+     * Converts a duration, or a position, from sample frames of the
+     * currently loaded song to ms.
+     * 
+     * @param frames
+     *          the duration (in frames) to convert.
+     *          
+     * @return
+     * 			the duration (in ms).
+     */
+	int framesToMs(int frames);
+	
     /**
      * Sets the selection-from cursor, specifying from which point
      * the current selection begins. Also referred to as the main
      * cursor, because of it's usage to paste copied audio.
      * 
-     * @param ms
-     *          the position (in ms) where to place the cursor.
+     * @param frame
+     *          the position (in frames) where to place the cursor.
      */
-	void setSelectionFrom(int ms);
+	void setSelectionFrom(int frame);
 	
     /**
      * Sets the selection-to cursor, specifying at which point the
      * current selection end.
      * 
-     * @param ms
-     *          the position (in ms) where to place the cursor.
+     * @param frame
+     *          the position (in frames) where to place the cursor.
      */
-	void setSelectionTo(int ms);	
+	void setSelectionTo(int frame);	
 	
     /**
      * Gets the position of the selection-from cursor, specifying from where
      * the current selection begins.
      *          
      * @return
-     * 			the position (in ms) of the cursor, -1 if cursor not placed.
+     * 			the position (in frames) of the cursor, -1 if cursor not placed.
      */
 	int getSelectionFrom();
 	
@@ -96,7 +124,7 @@ public interface Editor {
      * the current selection ends.
      *          
      * @return
-     * 			the position (in ms) of the cursor, -1 if cursor not placed.
+     * 			the position (in frames) of the cursor, -1 if cursor not placed.
      */
 	int getSelectionTo();	
 	
@@ -137,7 +165,7 @@ public interface Editor {
      * Gets the starting point of the copied selection.
      *          
      * @return
-     * 			the position (in ms) of the beginning of the copied
+     * 			the position (in frames) of the beginning of the copied
      * 			selection, -1 if nothing copied.
      */
 	int getCopiedFrom();
@@ -146,7 +174,7 @@ public interface Editor {
      * Gets the end point of the copied selection.
      *          
      * @return
-     * 			the position (in ms) of the end of the copied
+     * 			the position (in frames) of the end of the copied
      * 			selection, -1 if nothing copied.
      */
 	int getCopiedTo();
@@ -182,15 +210,49 @@ public interface Editor {
      */
 	void cutSelection();
 	
+    /**
+     * Checks if there is a modification of the loaded song that can
+     * be undone.
+     *          
+     * @return
+     * 			true if a modification can be undone, false otherwise.
+     */
+	boolean canUndo();
+	
+    /**
+     * Checks if there is an undone modification of the loaded song that
+     * can be redone.
+     *          
+     * @return
+     * 			true if a modification can be redone, false otherwise.
+     */
+	boolean canRedo();
+	
+    /**
+     * Undoes the last modification (paste, cut or reset) of the loaded song.
+     * 
+     * @throws IllegalStateException
+     * 			if no song is loaded or there is nothing to undo.
+     */
+	void undo();
+	
+    /**
+     * Redoes the last undone modification of the loaded song.
+     * 
+     * @throws IllegalStateException
+     * 			if no song is loaded or there is nothing to redo.
+     */
+	void redo();
+	
     /**
      * Checks if the gathering the asked for amount of samples for the given
      * interval from the currently loaded song would result in groups of
      * samples or single samples.
      * 
      * @param from
-     * 			from what position (in ms) to check resolution.
+     * 			from what position (in frames) to check resolution.
      * @param to
-     * 			to what position (in ms) to check resolution.
+     * 			to what position (in frames) to check resolution.
      * @param samples
      * 			number of segments divide interval in.
      *          
@@ -212,9 +274,9 @@ public interface Editor {
      * All values are normalized in a -1 to 1 range.
      * 
      * @param from
-     * 			from what position (in ms) to get the waveform.
+     * 			from what position (in frames) to get the waveform.
      * @param to
-     * 			to what position (in ms) to get the waveform.
+     * 			to what position (in frames) to get the waveform.
      * @param samples
      * 			number of sets of values to retrieve for the asked for interval.
      * @return
@@ -238,9 +300,9 @@ public interface Editor {
      * All values are normalized in a -1 to 1 range.
      * 
      * @param from
-     * 			from what position (in ms) to get the waveform.
+     * 			from what position (in frames) to get the waveform.
      * @param to
-     * 			to what position (in ms) to get the waveform.
+     * 			to what position (in frames) to get the waveform.
      * @param samples
      * 			number of sets of values to retrieve for the asked for interval.
      * @return
@@ -249,6 +311,44 @@ public interface Editor {
      */
 	List<GroupedSampleInfo> getAggregatedWaveform(int from, int to, int samples);	
 	
+    /**
+     * Fills the given waveform with the groups of values representing the
+     * waveform of the currently loaded, and possibly modified, song, as
+     * getAggregatedWaveform does, but without allocating a list of objects:
+     * the values are written by column into a buffer owned by the caller,
+     * which is grown only if it can't hold the groups asked for.
+     * 
+     * All values are normalized in a -1 to 1 range.
+     * 
+     * @param from
+     * 			from what position (in frames) to get the waveform.
+     * @param to
+     * 			to what position (in frames) to get the waveform.
+     * @param samples
+     * 			number of sets of values to retrieve for the asked for interval.
+     * @param waveform
+     * 			the buffer to fill, its previous content is discarded.
+     */
+	void getAggregatedWaveform(int from, int to, int samples, GroupedWaveform waveform);
+	
+    /**
+     * Returns the tiles of the waveform of the currently loaded, and possibly
+     * modified, song covering only the asked for interval, at the zoom level
+     * giving at least one group of samples per pixel. Tiles are cached for
+     * every version of the song and zoom level, and an edit only invalidates
+     * the tiles it overlaps, so scrolling and zooming seldom compute anything.
+     * 
+     * @param from
+     * 			from what position (in frames) to get the waveform.
+     * @param to
+     * 			to what position (in frames) to get the waveform.
+     * @param pixels
+     * 			width (in pixels) the interval is drawn on.
+     * @return
+     * 			the tiles covering the interval, in order.
+     */
+	List<WaveformTile> getWaveformTiles(int from, int to, int pixels);
+	
     /**
      * Temporary debug method for printing a text representation of the
      * waveform of the currently loaded modifiable song.
@@ -262,8 +362,10 @@ public interface Editor {
      * @param exportPath
      * 			absolute path of .wav file where song will be saved.
      * 
+     * @throws IOException
+     * 			if the song can't be read, or the file can't be written.
      */	
-	void exportSong(String exportPath);	
+	void exportSong(String exportPath) throws IOException;	
 	
     /**
      * Temporary debug method for printing information relative to the current
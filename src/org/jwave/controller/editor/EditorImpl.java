@@ -1,10 +1,13 @@
 package org.jwave.controller.editor;
 
+import java.io.IOException;
 import java.util.List;
 
 import org.jwave.model.editor.GroupedSampleInfo;
+import org.jwave.model.editor.GroupedWaveform;
 import org.jwave.model.editor.ModifiableSongImpl;
 import org.jwave.model.editor.SimpleSampleInfo;
+import org.jwave.model.editor.WaveformTile;
 import org.jwave.model.player.Song;
 
 public class EditorImpl implements Editor {
@@ -13,7 +16,7 @@ public class EditorImpl implements Editor {
 	private int copiedFrom;
 	private int copiedTo;
 	
-	private ModifiableSongImpl song;	
+	private volatile ModifiableSongImpl song;		/* replaced on the FX thread, read by the editor worker */
 	
 	public EditorImpl() {
 		this.selectionFrom = -1;
@@ -71,13 +74,13 @@ public class EditorImpl implements Editor {
 	}		
 	
 	@Override
-	public void setSelectionFrom(final int ms) throws IllegalArgumentException {
-		if (ms >= -1 && ms <= this.song.getModifiedLength() + 1) {
-			if (this.getSelectionTo() > -1 && ms > this.getSelectionTo()) {
+	public void setSelectionFrom(final int frame) throws IllegalArgumentException {
+		if (frame >= -1 && frame <= this.song.getModifiedLength() + 1) {
+			if (this.getSelectionTo() > -1 && frame > this.getSelectionTo()) {
 				this.selectionFrom = this.getSelectionTo();
-				this.selectionTo = ms;
+				this.selectionTo = frame;
 			} else {
-				this.selectionFrom = ms;
+				this.selectionFrom = frame;
 			}			
 		} else {
 			throw new IllegalArgumentException();
@@ -85,19 +88,37 @@ public class EditorImpl implements Editor {
 	}
 
 	@Override
-	public void setSelectionTo(final int ms) throws IllegalArgumentException {
-		if (ms >= -1 && ms <= this.song.getModifiedLength() + 1) {
-			if (this.getSelectionFrom() > -1 && ms < this.getSelectionFrom()) {
+	public void setSelectionTo(final int frame) throws IllegalArgumentException {
+		if (frame >= -1 && frame <= this.song.getModifiedLength() + 1) {
+			if (this.getSelectionFrom() > -1 && frame < this.getSelectionFrom()) {
 				this.selectionTo = this.getSelectionFrom();
-				this.selectionFrom = ms;
+				this.selectionFrom = frame;
 			} else {
-				this.selectionTo = ms;
+				this.selectionTo = frame;
 			}			
 		} else {
 			throw new IllegalArgumentException();
 		}
 	}
 
+	@Override
+	public int msToFrames(final int ms) throws IllegalStateException {
+		if (this.isSongLoaded()) {
+			return this.song.msToFrames(ms);
+		} else {
+			throw new IllegalStateException();
+		}
+	}
+	
+	@Override
+	public int framesToMs(final int frames) throws IllegalStateException {
+		if (this.isSongLoaded()) {
+			return this.song.framesToMs(frames);
+		} else {
+			throw new IllegalStateException();
+		}
+	}
+
 	@Override
 	public int getSelectionFrom() {
 		return this.selectionFrom;
@@ -180,6 +201,34 @@ public class EditorImpl implements Editor {
 		}
 	}
 	
+	@Override
+	public boolean canUndo() {
+		return this.isSongLoaded() && this.song.canUndo();
+	}
+	
+	@Override
+	public boolean canRedo() {
+		return this.isSongLoaded() && this.song.canRedo();
+	}
+	
+	@Override
+	public void undo() throws IllegalStateException {
+		if (this.canUndo()) {
+			this.song.undo();
+		} else {
+			throw new IllegalStateException();
+		}
+	}
+	
+	@Override
+	public void redo() throws IllegalStateException {
+		if (this.canRedo()) {
+			this.song.redo();
+		} else {
+			throw new IllegalStateException();
+		}
+	}
+	
 	@Override
 	public boolean isMaxResolution(final int from, final int to, final int samples) {
 		return this.song.isMaxResolution(from, to, samples);
@@ -195,6 +244,16 @@ public class EditorImpl implements Editor {
 		return this.song.getAggregatedWaveform(from, to, samples);
 	}	
 	
+	@Override
+	public void getAggregatedWaveform(final int from, final int to, final int samples, final GroupedWaveform waveform) {
+		this.song.getAggregatedWaveform(from, to, samples, waveform);
+	}
+	
+	@Override
+	public List<WaveformTile> getWaveformTiles(final int from, final int to, final int pixels) {
+		return this.song.getWaveformTiles(from, to, pixels);
+	}
+	
 	public void printWaveform() {
 		List<GroupedSampleInfo> results;
 		
@@ -211,14 +270,14 @@ public class EditorImpl implements Editor {
 	}
 	
 	@Override
-	public void exportSong(final String exportPath) {
+	public void exportSong(final String exportPath) throws IOException {
 		this.song.exportSong(exportPath);
 	}
 	
 	@Override
 	public void printSongDebug() {
-		System.out.println("Current selection: from " + getSelectionFrom() + "ms to " + getSelectionTo() + "ms");
-		System.out.println("Copied selection: from " + getCopiedFrom() + "ms to " + getCopiedTo() + "ms");
+		System.out.println("Current selection: from " + getSelectionFrom() + " to " + getSelectionTo());
+		System.out.println("Copied selection: from " + getCopiedFrom() + " to " + getCopiedTo());
 		
 		this.song.printAllCuts();
 	}	
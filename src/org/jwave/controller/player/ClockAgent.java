@@ -1,20 +1,34 @@
 package org.jwave.controller.player;
 
-import java.util.HashSet;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.jwave.controller.UpdatableUI;
 import org.jwave.model.player.DynamicPlayer;
+import org.jwave.model.player.PlaybackListener;
 import org.jwave.model.player.Song;
 import org.jwave.model.playlist.PlayMode;
 import org.jwave.model.playlist.PlaylistManager;
 
 /**
- * This class is a clock for {@link DynamicPlayer}, determining controls at a specified interval. 
- *
+ * This class is a clock for {@link DynamicPlayer}, driven by the buffers its audio output renders.
+ * 
+ * The notifications of the player only schedule the controls on the agent's own thread, at most one at a time,
+ * and the controllers are updated at most once per display frame, with the position of the player interpolated
+ * to the time of the update. The end of a song is an event as well, so nothing runs while the player is paused
+ * or stopped.
+ * 
+ * In player mode the agent is gapless by default: while a song plays, the one the playing queue will move to is
+ * opened ahead in the player, which starts it on the frame the current one ends, or crossfades into it if the
+ * playlist manager has a crossfade set. The next song is only looked for again when it may have changed: when
+ * the player moves to it, when a song ends, and when the controller tells the agent about a change of the loaded
+ * song, of the playing queue or of the play mode; the crossfade is handed to the player when it changes.
  */
-public class ClockAgent implements Runnable {
+public class ClockAgent implements PlaybackListener {
     
     /**
      * Enum describing ClockAgent modes.
@@ -27,17 +41,24 @@ public class ClockAgent implements Runnable {
         PLAYER,
         
         /**
-         * Checks if the reproduced song has some cuts inside.
+         * Stops at the end of the song, whose cuts are followed by the player itself.
          */
         EDITOR;
     }
     
-    private final Thread t;
+    private static final long FRAME_INTERVAL = 16L;
+    
+    private final ExecutorService executor;
+    private final AtomicBoolean tickPending;
     private final DynamicPlayer dynPlayer;
     private PlaylistManager playlistManager;
     private Set<UpdatableUI> controllerSet;
     private final ClockAgent.Mode mode;
     private volatile boolean stopped;
+    private volatile boolean gapless;
+    private long lastUpdate;
+    private Song preparedFor;
+    private Song prepared;
     
     /**
      * Creates a new instance of ClockAgent.
@@ -54,34 +75,114 @@ public class ClockAgent implements Runnable {
         this.dynPlayer = player;
         this.playlistManager = manager;
         this.stopped = false;
-        this.controllerSet = new HashSet<>();
+        this.controllerSet = new CopyOnWriteArraySet<>();
         this.mode = checkMode;
-        this.t = new Thread(this);
+        this.gapless = checkMode == ClockAgent.Mode.PLAYER;
+        this.tickPending = new AtomicBoolean(false);
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            final Thread thread = new Thread(r, "Clock agent");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
     
     @Override
-    public void run() {
-        while (!this.isStopped()) {
-            try {
+    public void positionChanged() {
+        if (!this.isStopped() && this.tickPending.compareAndSet(false, true)) {
+            this.executor.execute(() -> {
+                this.tickPending.set(false);
                 this.checkInReproduction();
-                Thread.sleep(10L);
-            } catch (InterruptedException e) {
-                System.out.println("Thread interrupted");
-            }
+            });
         }
     }
     
-    private void checkInReproduction() {
-        switch (this.mode) {
-        case EDITOR:
-            this.checkEditor();
-            break;
-        default:
-            this.checkPlayer();
+    @Override
+    public void trackEnded() {
+        if (!this.isStopped()) {
+            this.executor.execute(() -> {
+                if (this.mode == ClockAgent.Mode.EDITOR) {
+                    this.checkEditor();
+                } else {
+                    this.checkPlayer();
+                    this.preparedFor = null;
+                    this.prepared = null;
+                    if (this.gapless) {
+                        this.prepareNext();
+                    }
+                }
+            });
+        }
+    }
+    
+    @Override
+    public void nextTrackStarted() {
+        if (!this.isStopped()) {
+            this.executor.execute(() -> {
+                if (this.playlistManager.getPlayMode() != PlayMode.LOOP_ONE) {
+                    this.playlistManager.next();
+                }
+                this.preparedFor = null;
+                this.prepared = null;
+                this.lastUpdate = 0;
+                if (this.gapless) {
+                    this.prepareNext();
+                }
+            });
+        }
+    }
+    
+    /**
+     * Tells the agent that the song following the loaded one may have changed, as the loaded song, the playing
+     * queue or the play mode did, so that it is opened ahead again.
+     */
+    public void queueChanged() {
+        if (!this.isStopped()) {
+            this.executor.execute(() -> {
+                this.preparedFor = null;
+                this.prepared = null;
+                if (this.gapless) {
+                    this.prepareNext();
+                }
+            });
+        }
+    }
+    
+    /**
+     * Tells the agent that the crossfade of the playlist manager has changed, so that the player uses it from
+     * the next song on, only in player mode.
+     */
+    public void crossfadeChanged() {
+        if (!this.isStopped() && this.mode == ClockAgent.Mode.PLAYER) {
+            this.executor.execute(() -> this.dynPlayer.setCrossfade(this.playlistManager.getCrossfade()));
         }
-        if (this.dynPlayer.isPlaying()) {
+    }
+    
+    /**
+     * Sets whether the songs of the playing queue follow each other with no gap, only in player mode.
+     * 
+     * @param value
+     *          true to open every next song ahead, false to open it when the current one ends.
+     */
+    public void setGapless(final boolean value) {
+        this.gapless = value && this.mode == ClockAgent.Mode.PLAYER;
+        this.executor.execute(() -> {
+            this.preparedFor = null;
+            this.prepared = null;
+            if (!this.gapless && !this.dynPlayer.isEmpty()) {
+                this.dynPlayer.setNextPlayer(Optional.empty());
+            } else if (this.gapless) {
+                this.prepareNext();
+            }
+        });
+    }
+    
+    private void checkInReproduction() {
+        final long now = System.currentTimeMillis();
+        if (now - this.lastUpdate >= FRAME_INTERVAL && this.dynPlayer.isPlaying()) {
+            this.lastUpdate = now;
+            final int position = this.dynPlayer.getFramePosition().millisAt(System.nanoTime());
             this.controllerSet.forEach(c -> {
-                c.updatePosition(this.dynPlayer.getPosition());
+                c.updatePosition(position);
                 c.updateReproductionInfo(this.dynPlayer.getLoaded().get());
             });
             
@@ -89,11 +190,12 @@ public class ClockAgent implements Runnable {
     }
     
     /**
-     * Starts the clock agent thread.
+     * Starts the clock agent, listening to the player.
      */
     public void startClockAgent() {
         this.setStopped(false);
-        this.t.start();
+        this.dynPlayer.addPlaybackListener(this);
+        this.crossfadeChanged();
     }
     
     /**
@@ -107,10 +209,12 @@ public class ClockAgent implements Runnable {
     }
     
     /**
-     * Stops the clock agent thread.
+     * Stops the clock agent, which can't be started again.
      */
     public void stopClockAgent() {
         this.setStopped(true);
+        this.dynPlayer.removePlaybackListener(this);
+        this.executor.shutdown();
     }
     
     private boolean isStopped() {
@@ -149,9 +253,42 @@ public class ClockAgent implements Runnable {
         }
     }
     
+    /*
+     * Opens the song that follows the loaded one in the player, unless it is already open.
+     */
+    private void prepareNext() {
+        final Optional<Song> current = this.dynPlayer.getLoaded();
+        if (current.isPresent() && !this.dynPlayer.isEmpty()) {
+            final Optional<Song> next = this.nextOf(current.get());
+            if (current.get() != this.preparedFor || next.orElse(null) != this.prepared) {
+                this.preparedFor = current.get();
+                this.prepared = next.orElse(null);
+                this.dynPlayer.setNextPlayer(next);
+            }
+        }
+    }
+    
+    /*
+     * Tells the song the playing queue will move to after the given one, without moving.
+     */
+    private Optional<Song> nextOf(final Song current) {
+        switch (this.playlistManager.getPlayMode()) {
+        case LOOP_ONE:
+            return Optional.of(current);
+        case NO_LOOP:
+            if (this.playlistManager.getPlayingQueue().indexOf(current.getSongID()) 
+                    >= (this.playlistManager.getPlayingQueue().getDimension() - 1)) {
+                return Optional.empty();
+            }
+            return this.playlistManager.peekNext();
+        default:
+            return this.playlistManager.peekNext();
+        }
+    }
+    
     private void checkEditor() {
-        if (this.dynPlayer.getLoaded().isPresent()) {
-            this.dynPlayer.isPlaying();
+        if (!this.dynPlayer.isEmpty() && !this.dynPlayer.isPlaying() && !this.dynPlayer.isPaused()) {
+            this.dynPlayer.stop();
         }
     }
 }
@@ -0,0 +1,182 @@
+package org.jwave.controller.player;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+import org.jwave.model.EObserver;
+import org.jwave.model.player.Song;
+import org.jwave.model.playlist.Playlist;
+
+/**
+ * This is a {@link Playlist} listed from the header of its file, whose songs are only loaded the first time they
+ * are needed. Its name, identifier and dimension are known from the header alone, unless songs have been removed
+ * by name since the last snapshot: then the dimension is only known once the songs are loaded.
+ */
+final class LazyPlaylist implements Playlist {
+
+    private final UUID playlistID;
+    private final Callable<Playlist> loader;
+    private final Set<EObserver<? super Integer>> observers;
+    private String playlistName;
+    private int dimension;
+    private Playlist content;
+
+    /**
+     * Creates a new LazyPlaylist.
+     *
+     * @param header
+     *          the header of the playlist.
+     * @param loader
+     *          loads the songs of the playlist.
+     */
+    LazyPlaylist(final PlaylistCodec.Header header, final Callable<Playlist> loader) {
+        this.playlistID = header.getPlaylistID();
+        this.playlistName = header.getName();
+        this.dimension = header.getCount();
+        this.loader = loader;
+        this.observers = new HashSet<>();
+    }
+
+    /**
+     * @return
+     *          whether the songs of the playlist have been loaded.
+     */
+    synchronized boolean isLoaded() {
+        return this.content != null;
+    }
+
+    /**
+     * Forgets the dimension read from the header, after songs have been removed by name without loading them.
+     */
+    synchronized void forgetDimension() {
+        this.dimension = -1;
+    }
+
+    @Override
+    public void addSong(final Song newSong) {
+        this.content().addSong(newSong);
+    }
+
+    @Override
+    public void moveSongToPosition(final int songToMoveID, final int position) throws IllegalArgumentException {
+        this.content().moveSongToPosition(songToMoveID, position);
+    }
+
+    @Override
+    public void removeFromPlaylist(final UUID songID) throws IllegalArgumentException {
+        this.content().removeFromPlaylist(songID);
+    }
+
+    @Override
+    public int indexOf(final UUID songID) throws IllegalArgumentException {
+        return this.content().indexOf(songID);
+    }
+
+    @Override
+    public synchronized int getDimension() {
+        return this.content == null && this.dimension >= 0 ? this.dimension : this.content().getDimension();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.getDimension() == 0;
+    }
+
+    @Override
+    public Song getSong(final UUID songID) throws IllegalArgumentException {
+        return this.content().getSong(songID);
+    }
+
+    @Override
+    public Song getSongAtIndex(final int index) throws IllegalArgumentException {
+        return this.content().getSongAtIndex(index);
+    }
+
+    @Override
+    public List<Song> getPlaylistContent() {
+        return this.content().getPlaylistContent();
+    }
+
+    @Override
+    public synchronized String getName() {
+        return this.content == null ? this.playlistName : this.content.getName();
+    }
+
+    @Override
+    public UUID getPlaylistID() {
+        return this.playlistID;
+    }
+
+    @Override
+    public void clear() {
+        this.content().clear();
+    }
+
+    @Override
+    public synchronized void setName(final String newName) {
+        if (this.content == null) {
+            this.playlistName = newName;
+        } else {
+            this.content.setName(newName);
+        }
+    }
+
+    @Override
+    public synchronized void refreshContent() {
+        if (this.content != null) {
+            this.content.refreshContent();
+        }
+    }
+
+    @Override
+    public synchronized void addEObserver(final EObserver<? super Integer> obs) {
+        if (this.content == null) {
+            this.observers.add(obs);
+        } else {
+            this.content.addEObserver(obs);
+        }
+    }
+
+    @Override
+    public void notifyEObservers(final Integer arg) {
+        this.content().notifyEObservers(arg);
+    }
+
+    @Override
+    public synchronized void clearObservers() {
+        if (this.content == null) {
+            this.observers.clear();
+        } else {
+            this.content.clearObservers();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.getName();
+    }
+
+    /*
+     * Loads the songs the first time they are needed, keeping the observers and the name given in the meantime.
+     */
+    private synchronized Playlist content() {
+        if (this.content == null) {
+            final Playlist loaded;
+            try {
+                loaded = this.loader.call();
+            } catch (Exception e) {
+                throw new IllegalStateException("Unable to load playlist " + this.playlistName, e);
+            }
+            if (!loaded.getName().equals(this.playlistName)) {
+                loaded.setName(this.playlistName);
+            }
+            this.observers.forEach(loaded::addEObserver);
+            this.observers.clear();
+            this.content = loaded;
+        }
+        return this.content;
+    }
+}
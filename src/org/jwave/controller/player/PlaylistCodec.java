@@ -0,0 +1,312 @@
+package org.jwave.controller.player;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.jwave.model.player.MetaData;
+import org.jwave.model.player.Song;
+import org.jwave.model.player.SongImpl;
+import org.jwave.model.playlist.Playlist;
+import org.jwave.model.playlist.PlaylistImpl;
+
+/**
+ * Reads and writes playlists in the binary format of JWave.
+ *
+ * A playlist file starts with a magic number and a version, then holds the generation of the snapshot, telling
+ * which journal of edits follows it (see {@link PlaylistJournal}), the identifier and the name of the playlist and
+ * its songs in order: for every song its identifier, its path, the last modification time of the file
+ * when its tags were read and the tags that are not empty. A playlist is read back in a single pass, and the tags
+ * of a file are only parsed again if it has been modified since. The header, up to the number of songs, can be
+ * read alone to list a playlist without loading its songs.
+ */
+final class PlaylistCodec {
+
+    private static final int MAGIC = 0x4A57504C;        /* "JWPL" */
+    private static final int VERSION = 2;
+    private static final MetaData[] TAGS = MetaData.values();
+
+    private PlaylistCodec() { }
+
+    /**
+     * Tells whether a stream holds a playlist in this format, leaving the stream where it was.
+     *
+     * @param in
+     *          the stream to be checked.
+     * @return
+     *          whether the stream starts with the magic number of the format.
+     * @throws IOException
+     *          if the stream can't be read.
+     */
+    static boolean isPlaylist(final BufferedInputStream in) throws IOException {
+        in.mark(Integer.BYTES);
+        try {
+            return new DataInputStream(in).readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            in.reset();
+        }
+    }
+
+    /**
+     * Writes a snapshot of a playlist.
+     *
+     * @param playlist
+     *          the playlist to be written.
+     * @param generation
+     *          the generation of the snapshot.
+     * @param out
+     *          the stream to write to.
+     * @throws IOException
+     *          if the stream can't be written.
+     */
+    static void write(final Playlist playlist, final long generation, final DataOutputStream out) throws IOException {
+        final List<Song> songs = playlist.getPlaylistContent();
+
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeLong(generation);
+        writeId(playlist.getPlaylistID(), out);
+        out.writeUTF(playlist.getName());
+        out.writeInt(songs.size());
+        for (final Song song : songs) {
+            writeSong(song, out);
+        }
+    }
+
+    /**
+     * Reads a snapshot of a playlist.
+     *
+     * @param in
+     *          the stream to read from.
+     * @return
+     *          the snapshot read.
+     * @throws IOException
+     *          if the stream can't be read or doesn't hold a playlist of a known version.
+     */
+    static Snapshot read(final DataInputStream in) throws IOException {
+        final Header header = readHeader(in);
+        final Playlist out = new PlaylistImpl(header.getName(), header.getPlaylistID());
+        final Map<UUID, Song> read = new HashMap<>();
+        for (int i = 0; i < header.getCount(); i++) {
+            final Song song = readSong(in);
+            out.addSong(read.computeIfAbsent(song.getSongID(), key -> song));
+        }
+        return new Snapshot(out, header.getGeneration());
+    }
+
+    /**
+     * Reads the header of a snapshot of a playlist, leaving the stream at its first song.
+     *
+     * @param in
+     *          the stream to read from.
+     * @return
+     *          the header read.
+     * @throws IOException
+     *          if the stream can't be read or doesn't hold a playlist of a known version.
+     */
+    static Header readHeader(final DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a playlist");
+        }
+        final int version = in.readUnsignedShort();
+        if (version > VERSION) {
+            throw new IOException("Unknown playlist version " + version);
+        }
+
+        final long generation = version > 1 ? in.readLong() : 0L;
+        final UUID id = readId(in);
+        final String name = in.readUTF();
+        return new Header(id, name, in.readInt(), generation);
+    }
+
+    /**
+     * Writes a song, with its tags.
+     *
+     * @param song
+     *          the song to be written.
+     * @param out
+     *          the stream to write to.
+     * @throws IOException
+     *          if the stream can't be written.
+     */
+    static void writeSong(final Song song, final DataOutputStream out) throws IOException {
+        writeId(song.getSongID(), out);
+        out.writeUTF(song.getAbsolutePath());
+        out.writeLong(song instanceof SongImpl ? ((SongImpl) song).getMetaDataTimestamp() : 0L);
+
+        final Map<MetaData, String> tags = new EnumMap<>(MetaData.class);
+        for (final MetaData tag : TAGS) {
+            final String value = song.getMetaData().retrieve(tag);
+            if (value != null && !value.isEmpty()) {
+                tags.put(tag, value);
+            }
+        }
+        out.writeShort(tags.size());
+        for (final Map.Entry<MetaData, String> tag : tags.entrySet()) {
+            out.writeUTF(tag.getKey().name());
+            out.writeUTF(tag.getValue());
+        }
+    }
+
+    /**
+     * Reads a song, with its saved tags if its file hasn't been modified since, or is missing.
+     *
+     * @param in
+     *          the stream to read from.
+     * @return
+     *          the song read.
+     * @throws IOException
+     *          if the stream can't be read.
+     */
+    static Song readSong(final DataInputStream in) throws IOException {
+        final UUID id = readId(in);
+        final File file = new File(in.readUTF());
+        final long timestamp = in.readLong();
+        final int count = in.readUnsignedShort();
+        final Map<MetaData, String> tags = new EnumMap<>(MetaData.class);
+
+        for (int i = 0; i < count; i++) {
+            final String name = in.readUTF();
+            final String value = in.readUTF();
+            for (final MetaData tag : TAGS) {
+                if (tag.name().equals(name)) {
+                    tags.put(tag, value);
+                }
+            }
+        }
+
+        final long modified = file.lastModified();
+        if (timestamp != 0L && (modified == timestamp || modified == 0L)) {
+            return new SongImpl(file, id, tags, timestamp);
+        }
+        return new SongImpl(file, id);
+    }
+
+    /**
+     * Writes an identifier.
+     *
+     * @param id
+     *          the identifier to be written.
+     * @param out
+     *          the stream to write to.
+     * @throws IOException
+     *          if the stream can't be written.
+     */
+    static void writeId(final UUID id, final DataOutputStream out) throws IOException {
+        out.writeLong(id.getMostSignificantBits());
+        out.writeLong(id.getLeastSignificantBits());
+    }
+
+    /**
+     * Reads an identifier.
+     *
+     * @param in
+     *          the stream to read from.
+     * @return
+     *          the identifier read.
+     * @throws IOException
+     *          if the stream can't be read.
+     */
+    static UUID readId(final DataInputStream in) throws IOException {
+        return new UUID(in.readLong(), in.readLong());
+    }
+
+    /**
+     * The header of a snapshot: what is needed to list a playlist without loading its songs.
+     */
+    static final class Header {
+        private final UUID id;
+        private final String name;
+        private final int count;
+        private final long generation;
+
+        /**
+         * Creates a new Header.
+         *
+         * @param id
+         *          the identifier of the playlist.
+         * @param name
+         *          the name of the playlist.
+         * @param count
+         *          the number of songs of the playlist.
+         * @param generation
+         *          the generation of the snapshot.
+         */
+        Header(final UUID id, final String name, final int count, final long generation) {
+            this.id = id;
+            this.name = name;
+            this.count = count;
+            this.generation = generation;
+        }
+
+        /**
+         * @return
+         *          the identifier of the playlist.
+         */
+        UUID getPlaylistID() {
+            return this.id;
+        }
+
+        /**
+         * @return
+         *          the name of the playlist.
+         */
+        String getName() {
+            return this.name;
+        }
+
+        /**
+         * @return
+         *          the number of songs of the playlist.
+         */
+        int getCount() {
+            return this.count;
+        }
+
+        /**
+         * @return
+         *          the generation of the snapshot.
+         */
+        long getGeneration() {
+            return this.generation;
+        }
+    }
+
+    /**
+     * A playlist read from a file, with the generation of the snapshot.
+     */
+    static final class Snapshot {
+        private final Playlist playlist;
+        private final long generation;
+
+        private Snapshot(final Playlist playlist, final long generation) {
+            this.playlist = playlist;
+            this.generation = generation;
+        }
+
+        /**
+         * @return
+         *          the playlist read.
+         */
+        Playlist getPlaylist() {
+            return this.playlist;
+        }
+
+        /**
+         * @return
+         *          the generation of the snapshot.
+         */
+        long getGeneration() {
+            return this.generation;
+        }
+    }
+}
@@ -1,14 +1,12 @@
 package org.jwave.controller.player;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -16,8 +14,12 @@ import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.jwave.model.player.Song;
 import org.jwave.model.playlist.Playlist;
 import org.jwave.model.playlist.PlaylistImpl;
 
@@ -36,6 +38,8 @@ public final class PlaylistController {
     private static final String SEPARATOR = "file.separator";
     private static final String DEF_PLAYLIST_NAME = "default";
     private static final String DEF_EXTENSION = ".jwo";
+    private static final Map<UUID, PlaylistJournal> JOURNALS = new ConcurrentHashMap<>();
+    private static volatile boolean syncEdits = true;
     
     /**
      * Creates a new instance of controller.
@@ -73,6 +77,136 @@ public final class PlaylistController {
         savePlaylist(playlist, name);
     }
 
+    /**
+     * Records the adding of a song at the end of a saved playlist, with a small append to its journal.
+     * 
+     * @param playlist
+     *          the playlist the song has been added to.
+     *          
+     * @param song
+     *          the song added.
+     *          
+     * @throws IOException 
+     */
+    public static void songAdded(final Playlist playlist, final Song song) throws IOException {
+        final PlaylistJournal journal = JOURNALS.get(playlist.getPlaylistID());
+        if (journal == null) {
+            savePlaylistToFile(playlist, playlist.getName());
+        } else {
+            journal.added(playlist, song, syncEdits);
+        }
+    }
+    
+    /**
+     * Records the removal of a song from a saved playlist, with a small append to its journal.
+     * 
+     * @param playlist
+     *          the playlist the song has been removed from.
+     *          
+     * @param songID
+     *          the identifier of the song removed.
+     *          
+     * @throws IOException 
+     */
+    public static void songRemoved(final Playlist playlist, final UUID songID) throws IOException {
+        final PlaylistJournal journal = JOURNALS.get(playlist.getPlaylistID());
+        if (journal == null) {
+            savePlaylistToFile(playlist, playlist.getName());
+        } else {
+            journal.removed(playlist, songID, syncEdits);
+        }
+    }
+    
+    /**
+     * Removes from a playlist all the songs with a name. The songs of a saved playlist that haven't been loaded yet
+     * aren't loaded: the removal is only appended to its journal, and applied when they are.
+     * 
+     * @param playlist
+     *          the playlist the songs are removed from.
+     *          
+     * @param songName
+     *          the name of the songs to be removed.
+     *          
+     * @throws IOException 
+     */
+    public static void removeSongsNamed(final Playlist playlist, final String songName) throws IOException {
+        final PlaylistJournal journal = JOURNALS.get(playlist.getPlaylistID());
+        if (journal != null && playlist instanceof LazyPlaylist) {
+            final LazyPlaylist lazy = (LazyPlaylist) playlist;
+            synchronized (lazy) {
+                if (!lazy.isLoaded()) {
+                    lazy.forgetDimension();
+                    journal.removedNamed(playlist, songName, syncEdits);
+                    return;
+                }
+            }
+        }
+        for (final Song song : playlist.getPlaylistContent()) {
+            if (song.getName().equals(songName)) {
+                playlist.removeFromPlaylist(song.getSongID());
+                songRemoved(playlist, song.getSongID());
+            }
+        }
+    }
+    
+    /**
+     * Records the move of a song of a saved playlist, with a small append to its journal.
+     * 
+     * @param playlist
+     *          the playlist the song has been moved in.
+     *          
+     * @param from
+     *          the index of the song moved.
+     *          
+     * @param to
+     *          the index it has been moved to.
+     *          
+     * @throws IOException 
+     */
+    public static void songMoved(final Playlist playlist, final int from, final int to) throws IOException {
+        final PlaylistJournal journal = JOURNALS.get(playlist.getPlaylistID());
+        if (journal == null) {
+            savePlaylistToFile(playlist, playlist.getName());
+        } else {
+            journal.moved(playlist, from, to, syncEdits);
+        }
+    }
+    
+    /**
+     * Records the rename of a saved playlist, with a small append to its journal. The playlist keeps its file.
+     * 
+     * @param playlist
+     *          the playlist renamed.
+     *          
+     * @throws IOException 
+     */
+    public static void playlistRenamed(final Playlist playlist) throws IOException {
+        final PlaylistJournal journal = JOURNALS.get(playlist.getPlaylistID());
+        if (journal == null) {
+            savePlaylistToFile(playlist, playlist.getName());
+        } else {
+            journal.renamed(playlist, syncEdits);
+        }
+    }
+    
+    /**
+     * Sets whether the edits of the playlists are forced to the disk. They are forced together, at most every
+     * {@value PlaylistJournal#GROUP_COMMIT_MILLIS} milliseconds.
+     * 
+     * @param sync
+     *          true to force the edits to the disk, false to leave it to the system.
+     */
+    public static void setSyncEdits(final boolean sync) {
+        syncEdits = sync;
+    }
+    
+    /**
+     * Forces the pending edits of the playlists to the disk and closes their journals.
+     */
+    public static void closeJournals() {
+        JOURNALS.values().forEach(PlaylistJournal::close);
+    }
+
     /**
      * Reloads all the available playlist in the default directory.
      * 
@@ -100,15 +234,46 @@ public final class PlaylistController {
         return out;
     }
     
+    /*
+     * Lists a playlist in the format of PlaylistCodec from its header and the edits recorded in its journal,
+     * leaving its songs to be loaded when they are first needed. A playlist serialized by older versions is
+     * loaded at once.
+     */
     private static Playlist loadPlaylist(final File playlist) throws FileNotFoundException, IOException, 
     ClassNotFoundException {
-        try (final ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(
-                new FileInputStream(playlist)))) {
-            final Playlist extractedPlaylist = (Playlist) ois.readObject();
-            extractedPlaylist.clearObservers();
-            extractedPlaylist.refreshContent();
-            return extractedPlaylist;
+        final Playlist out;
+        final PlaylistJournal journal;
+        try (final BufferedInputStream in = new BufferedInputStream(new FileInputStream(playlist))) {
+            if (PlaylistCodec.isPlaylist(in)) {
+                final PlaylistCodec.Header header = PlaylistCodec.readHeader(new DataInputStream(in));
+                journal = new PlaylistJournal(playlist.toPath(), header.getGeneration());
+                out = new LazyPlaylist(journal.summarize(header), () -> loadContent(playlist, journal));
+            } else {
+                final ObjectInputStream ois = new ObjectInputStream(in);
+                out = (Playlist) ois.readObject();
+                out.clearObservers();
+                out.refreshContent();
+                journal = new PlaylistJournal(playlist.toPath(), 0L);
+                journal.replay(out);
+            }
+        }
+        final PlaylistJournal previous = JOURNALS.put(out.getPlaylistID(), journal);
+        if (previous != null) {
+            previous.close();
         }
+        return out;
+    }
+    
+    /*
+     * Reads the songs of a playlist in the format of PlaylistCodec, then applies the edits recorded in its journal.
+     */
+    private static Playlist loadContent(final File playlist, final PlaylistJournal journal) throws IOException {
+        final Playlist out;
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(playlist)))) {
+            out = PlaylistCodec.read(in).getPlaylist();
+        }
+        journal.replay(out);
+        return out;
     }
    
     /**
@@ -143,7 +308,7 @@ public final class PlaylistController {
     }
     
     /**
-     * Loads the default playlist or creates it if necessary.
+     * Loads the default playlist or creates and saves it if necessary. Its songs are loaded when first needed.
      * 
      * @return
      *          the default playlist.
@@ -160,16 +325,31 @@ public final class PlaylistController {
             return out;
         } catch (ClassNotFoundException | IOException e) {
             Playlist def = new PlaylistImpl(DEF_PLAYLIST_NAME);
+            try {
+                savePlaylist(def, DEF_PLAYLIST_NAME);
+            } catch (IOException x) {
+                x.printStackTrace();
+            }
             return def;
         }
     }
     
+    /*
+     * Writes a new snapshot of a playlist, starting its journal over. A playlist saved under another name moves to
+     * the new file, and the snapshot and journal it had are deleted.
+     */
     private static void savePlaylist(final Playlist playlist, final String name) throws IOException {
         final Path outFile = Paths.get(getDefaultSavePath().toString(), System.getProperty(SEPARATOR), name);
-        Files.deleteIfExists(outFile);
-        try (final ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(
-                new FileOutputStream(new File(outFile.toString()))))) {
-            oos.writeObject(playlist);
+        final PlaylistJournal previous = JOURNALS.get(playlist.getPlaylistID());
+        if (previous != null && previous.getSnapshot().equals(outFile)) {
+            previous.compact(playlist);
+        } else {
+            final PlaylistJournal journal = new PlaylistJournal(outFile, 0L);
+            journal.compact(playlist);
+            JOURNALS.put(playlist.getPlaylistID(), journal);
+            if (previous != null) {
+                previous.delete();
+            }
         }
     }
 }
@@ -0,0 +1,446 @@
+package org.jwave.controller.player;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.jwave.model.player.Song;
+import org.jwave.model.playlist.Playlist;
+
+/**
+ * Keeps the edits of a saved playlist in an append-only journal next to its snapshot, so that an edit costs a
+ * small append instead of writing the whole playlist again.
+ *
+ * The journal starts with a magic number and the generation of the snapshot it follows, then holds the edits in
+ * order, each one as its length, its checksum and its content. An edit is the adding of a song, with its tags as
+ * in {@link PlaylistCodec}, the removal of a song, the removal of the songs with a name, the move of a song or
+ * the rename of the playlist. After
+ * {@link #COMPACT_EVERY} edits the playlist is written in a new snapshot of the next generation and the journal
+ * starts over: a journal left behind by a compaction that didn't complete is recognized by its generation and
+ * ignored, and a record torn by a crash ends the journal.
+ *
+ * When synchronous writes are requested the journal is forced to the disk at most every
+ * {@link #GROUP_COMMIT_MILLIS}, once for all the edits appended in the meantime.
+ */
+final class PlaylistJournal {
+
+    /**
+     * Number of edits after which the playlist is compacted into a new snapshot.
+     */
+    static final int COMPACT_EVERY = 256;
+
+    /**
+     * Time in milliseconds the edits are gathered before being forced to the disk together.
+     */
+    static final long GROUP_COMMIT_MILLIS = 100;
+
+    private static final String EXTENSION = ".log";
+    private static final int MAGIC = 0x4A574A4C;        /* "JWJL" */
+    private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES;
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+    private static final byte MOVE = 3;
+    private static final byte RENAME = 4;
+    private static final byte REMOVE_NAMED = 5;
+
+    private static final ScheduledExecutorService COMMITTER = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread t = new Thread(r, "Playlist journal");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Path snapshot;
+    private final Path journal;
+    private long generation;
+    private long validLength;
+    private int edits;
+    private FileChannel channel;
+    private boolean commitPending;
+
+    /**
+     * Creates a new PlaylistJournal.
+     *
+     * @param snapshot
+     *          the file holding the snapshot of the playlist.
+     * @param generation
+     *          the generation of the snapshot.
+     */
+    PlaylistJournal(final Path snapshot, final long generation) {
+        this.snapshot = snapshot;
+        this.journal = Paths.get(snapshot.toString() + EXTENSION);
+        this.generation = generation;
+    }
+
+    /**
+     * @return
+     *          the file holding the snapshot of the playlist.
+     */
+    Path getSnapshot() {
+        return this.snapshot;
+    }
+
+    /**
+     * Applies to a playlist read from the snapshot the edits of the journal that follow it.
+     *
+     * @param playlist
+     *          the playlist read from the snapshot.
+     * @return
+     *          the number of edits applied.
+     * @throws IOException
+     *          if the journal can't be read.
+     */
+    synchronized int replay(final Playlist playlist) throws IOException {
+        return this.walk((type, in) -> apply(playlist, type, in));
+    }
+
+    /**
+     * Applies to the header of the snapshot the edits of the journal that change it, without reading the songs.
+     * After the removal of the songs with a name their number isn't known any more, and is given as -1.
+     *
+     * @param header
+     *          the header of the snapshot.
+     * @return
+     *          the header of the playlist after the edits.
+     * @throws IOException
+     *          if the journal can't be read.
+     */
+    synchronized PlaylistCodec.Header summarize(final PlaylistCodec.Header header) throws IOException {
+        final String[] name = {header.getName()};
+        final int[] count = {header.getCount()};
+        this.walk((type, in) -> {
+            if (type == ADD) {
+                count[0] = count[0] < 0 ? -1 : count[0] + 1;
+            } else if (type == REMOVE) {
+                count[0] = count[0] < 0 ? -1 : Math.max(0, count[0] - 1);
+            } else if (type == RENAME) {
+                name[0] = in.readUTF();
+            } else if (type == REMOVE_NAMED) {
+                count[0] = -1;
+            }
+        });
+        return new PlaylistCodec.Header(header.getPlaylistID(), name[0], count[0], header.getGeneration());
+    }
+
+    /*
+     * Reads the valid records of the journal, remembering where they end.
+     */
+    private int walk(final RecordHandler handler) throws IOException {
+        this.validLength = 0;
+        this.edits = 0;
+        if (!Files.exists(this.journal)) {
+            return 0;
+        }
+
+        final long size = Files.size(this.journal);
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(this.journal)))) {
+            if (in.readInt() != MAGIC || in.readLong() != this.generation) {
+                return 0;
+            }
+            long position = HEADER_SIZE;
+            final CRC32 crc = new CRC32();
+            while (true) {
+                final int length = in.readInt();
+                final int checksum = in.readInt();
+                if (length <= 0 || position + RECORD_HEADER_SIZE + length > size) {
+                    break;
+                }
+                final byte[] record = new byte[length];
+                in.readFully(record);
+                crc.reset();
+                crc.update(record);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                final DataInputStream fields = new DataInputStream(new ByteArrayInputStream(record));
+                handler.handle(fields.readByte(), fields);
+                position += RECORD_HEADER_SIZE + length;
+                this.validLength = position;
+                this.edits++;
+            }
+        } catch (EOFException e) {
+            /* the journal ends here, possibly with a record torn by a crash */
+        }
+        return this.edits;
+    }
+
+    /**
+     * Records the adding of a song at the end of the playlist.
+     *
+     * @param playlist
+     *          the playlist after the edit.
+     * @param song
+     *          the song added.
+     * @param sync
+     *          whether the edit has to be forced to the disk.
+     * @throws IOException
+     *          if the journal can't be written.
+     */
+    void added(final Playlist playlist, final Song song, final boolean sync) throws IOException {
+        final ByteArrayOutputStream record = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(record);
+        out.writeByte(ADD);
+        PlaylistCodec.writeSong(song, out);
+        this.append(playlist, record.toByteArray(), sync);
+    }
+
+    /**
+     * Records the removal of a song.
+     *
+     * @param playlist
+     *          the playlist after the edit.
+     * @param songID
+     *          the identifier of the song removed.
+     * @param sync
+     *          whether the edit has to be forced to the disk.
+     * @throws IOException
+     *          if the journal can't be written.
+     */
+    void removed(final Playlist playlist, final UUID songID, final boolean sync) throws IOException {
+        final ByteArrayOutputStream record = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(record);
+        out.writeByte(REMOVE);
+        PlaylistCodec.writeId(songID, out);
+        this.append(playlist, record.toByteArray(), sync);
+    }
+
+    /**
+     * Records the removal of all the songs with a name, that can be recorded without reading the songs.
+     *
+     * @param playlist
+     *          the playlist after the edit.
+     * @param songName
+     *          the name of the songs removed.
+     * @param sync
+     *          whether the edit has to be forced to the disk.
+     * @throws IOException
+     *          if the journal can't be written.
+     */
+    void removedNamed(final Playlist playlist, final String songName, final boolean sync) throws IOException {
+        final ByteArrayOutputStream record = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(record);
+        out.writeByte(REMOVE_NAMED);
+        out.writeUTF(songName);
+        this.append(playlist, record.toByteArray(), sync);
+    }
+
+    /**
+     * Records the move of a song, as done by {@link Playlist#moveSongToPosition(int, int)}.
+     *
+     * @param playlist
+     *          the playlist after the edit.
+     * @param from
+     *          the index of the song moved.
+     * @param to
+     *          the index it has been moved to.
+     * @param sync
+     *          whether the edit has to be forced to the disk.
+     * @throws IOException
+     *          if the journal can't be written.
+     */
+    void moved(final Playlist playlist, final int from, final int to, final boolean sync) throws IOException {
+        final ByteArrayOutputStream record = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(record);
+        out.writeByte(MOVE);
+        out.writeInt(from);
+        out.writeInt(to);
+        this.append(playlist, record.toByteArray(), sync);
+    }
+
+    /**
+     * Records the rename of the playlist.
+     *
+     * @param playlist
+     *          the playlist after the edit.
+     * @param sync
+     *          whether the edit has to be forced to the disk.
+     * @throws IOException
+     *          if the journal can't be written.
+     */
+    void renamed(final Playlist playlist, final boolean sync) throws IOException {
+        final ByteArrayOutputStream record = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(record);
+        out.writeByte(RENAME);
+        out.writeUTF(playlist.getName());
+        this.append(playlist, record.toByteArray(), sync);
+    }
+
+    /**
+     * Writes the playlist in a new snapshot and starts the journal over.
+     *
+     * @param playlist
+     *          the playlist to be written.
+     * @throws IOException
+     *          if the snapshot can't be written.
+     */
+    synchronized void compact(final Playlist playlist) throws IOException {
+        final Path temp = Paths.get(this.snapshot.toString() + ".tmp");
+        try (final FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            final DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(
+                    Channels.newOutputStream(out)));
+            PlaylistCodec.write(playlist, this.generation + 1, dos);
+            dos.flush();
+            out.force(true);
+        }
+        Files.move(temp, this.snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        this.generation++;
+        this.closeChannel();
+        Files.deleteIfExists(this.journal);
+        this.validLength = 0;
+        this.edits = 0;
+    }
+
+    /**
+     * Forces the pending edits to the disk and closes the journal, that is opened again by the next edit.
+     */
+    synchronized void close() {
+        try {
+            this.closeChannel();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Closes the journal and deletes it together with its snapshot, once the playlist has been saved elsewhere.
+     *
+     * @throws IOException
+     *          if the files can't be deleted.
+     */
+    synchronized void delete() throws IOException {
+        this.closeChannel();
+        Files.deleteIfExists(this.journal);
+        Files.deleteIfExists(this.snapshot);
+    }
+
+    private synchronized void append(final Playlist playlist, final byte[] record, final boolean sync)
+            throws IOException {
+        final CRC32 crc = new CRC32();
+        crc.update(record);
+        final ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + record.length);
+        buffer.putInt(record.length).putInt((int) crc.getValue()).put(record).flip();
+
+        final FileChannel out = this.openChannel();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        this.validLength = out.position();
+        this.edits++;
+
+        if (this.edits >= COMPACT_EVERY) {
+            this.compact(playlist);
+        } else if (sync && !this.commitPending) {
+            this.commitPending = true;
+            COMMITTER.schedule(this::commit, GROUP_COMMIT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /*
+     * Forces to the disk all the edits appended since the last commit.
+     */
+    private synchronized void commit() {
+        this.commitPending = false;
+        if (this.channel != null) {
+            try {
+                this.channel.force(false);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /*
+     * Opens the journal for appending, dropping what follows the last valid record or a journal of another
+     * generation.
+     */
+    private FileChannel openChannel() throws IOException {
+        if (this.channel == null) {
+            this.channel = FileChannel.open(this.journal, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            if (this.validLength < HEADER_SIZE) {
+                this.channel.truncate(0);
+                final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putLong(this.generation).flip();
+                while (header.hasRemaining()) {
+                    this.channel.write(header);
+                }
+                this.validLength = HEADER_SIZE;
+            } else {
+                this.channel.truncate(this.validLength);
+            }
+            this.channel.position(this.validLength);
+        }
+        return this.channel;
+    }
+
+    private void closeChannel() throws IOException {
+        if (this.channel != null) {
+            try {
+                this.channel.force(false);
+            } finally {
+                this.channel.close();
+                this.channel = null;
+            }
+        }
+    }
+
+    private static void apply(final Playlist playlist, final byte type, final DataInputStream in)
+            throws IOException {
+        try {
+            switch (type) {
+            case ADD:
+                playlist.addSong(PlaylistCodec.readSong(in));
+                break;
+            case REMOVE:
+                playlist.removeFromPlaylist(PlaylistCodec.readId(in));
+                break;
+            case MOVE:
+                playlist.moveSongToPosition(in.readInt(), in.readInt());
+                break;
+            case RENAME:
+                playlist.setName(in.readUTF());
+                break;
+            case REMOVE_NAMED:
+                final String songName = in.readUTF();
+                for (final Song song : playlist.getPlaylistContent()) {
+                    if (song.getName().equals(songName)) {
+                        playlist.removeFromPlaylist(song.getSongID());
+                    }
+                }
+                break;
+            default:
+                throw new IOException("Unknown journal record " + type);
+            }
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            /* an edit that can't be applied any more, as the removal of a song that isn't there */
+        }
+    }
+
+    /*
+     * Something done with each record of the journal.
+     */
+    private interface RecordHandler {
+        void handle(byte type, DataInputStream in) throws IOException;
+    }
+}
@@ -11,7 +11,10 @@ import java.util.List;
  * are similiar to cuts but represent segments of the song relative to
  * the original song, and are used for obtaining actual audio.
  * 
- * All "ms" acronyms stand for milliseconds.
+ * Cuts are immutable, and so are their segments, which can therefore be
+ * accessed without being copied.
+ * 
+ * All positions and lengths are expressed in sample frames.
  *
  */
 public interface Cut {
@@ -19,7 +22,7 @@ public interface Cut {
      * Gets the position where this cut begins.
      *          
      * @return
-     * 			the position (in ms) of the beginning of the cut.
+     * 			the position (in frames) of the beginning of the cut.
      */	
 	int getFrom();
 	
@@ -27,31 +30,15 @@ public interface Cut {
      * Gets the position where this cut ends.
      *          
      * @return
-     * 			the position (in ms) of the end of the cut.
+     * 			the position (in frames) of the end of the cut.
      */		
 	int getTo();
 	
-    /**
-     * Sets the position where this cut begins.
-     *          
-     * @param from
-     * 			the position (in ms) of the beginning of the cut.
-     */		
-	void setFrom(int from);
-	
-    /**
-     * Sets the position where this cut end.
-     *          
-     * @param to
-     * 			the position (in ms) of the end of the cut.
-     */			
-	void setTo(int to);
-	
     /**
      * Gets the length of the cut.
      *          
      * @return
-     * 			the length (in ms) of the cut.
+     * 			the length (in frames) of the cut.
      */
 	int getLength();
 	
@@ -66,11 +53,54 @@ public interface Cut {
      */	
 	Segment getSegment(int i);
 	
+    /**
+     * Gets the number of segments that make up this cut.
+     *          
+     * @return
+     * 			the number of segments.
+     */	
+	int getSegmentCount();
+	
+    /**
+     * Gets where a segment begins, without going through the segment itself.
+     * 
+     * @param i
+     * 			index of the segment.
+     *          
+     * @return
+     * 			the position (in frames) of the beginning of the segment.
+     */	
+	int getSegmentFrom(int i);
+	
+    /**
+     * Gets where a segment ends, without going through the segment itself.
+     * 
+     * @param i
+     * 			index of the segment.
+     *          
+     * @return
+     * 			the position (in frames) of the end of the segment.
+     */	
+	int getSegmentTo(int i);
+	
+    /**
+     * Gets the total length of the segments that precede a given segment,
+     * that is where the segment begins relative to the beginning of the cut
+     * if segments are laid one after the other.
+     * 
+     * @param i
+     * 			index of the segment, up to the number of segments.
+     *          
+     * @return
+     * 			the sum of the lengths (in frames) of segments 0 to i - 1.
+     */	
+	int getSegmentOffset(int i);
+	
     /**
      * Gets a list of all of this cut's segments.
      *          
      * @return
-     * 			a list of segments that make up this cut.
+     * 			an unmodifiable list of the segments that make up this cut.
      */	
 	List<Segment> getSegments();
 }
@@ -1,17 +1,65 @@
 package org.jwave.model.editor;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
-public class CutImpl implements Cut {
-	private int from;
-	private int to;
-	private final List<Segment> segments;
+public final class CutImpl implements Cut {
+	private final int from;
+	private final int to;
+	
+	/*
+	 * Cuts are immutable, so the segments and their packed bounds are shared,
+	 * never copied, by all the cuts derived from this one.
+	 */
+	private final List<Segment> segments;		/* unmodifiable list of immutable segments */
+	private final int[] segmentFroms;
+	private final int[] segmentTos;
+	private final int[] segmentOffsets;			/* prefix sums of the segment lengths */
 	
 	public CutImpl(final int from, final int to, final List<Segment> segments) {
+		final List<Segment> immutableSegments = new ArrayList<>(segments.size());
+		
 		this.from = from;
 		this.to = to;
-		this.segments = new ArrayList<>(segments);
+		this.segmentFroms = new int[segments.size()];
+		this.segmentTos = new int[segments.size()];
+		this.segmentOffsets = new int[segments.size() + 1];
+		
+		for (int i = 0; i < segments.size(); i++) {
+			final Segment segment = segments.get(i);
+			
+			immutableSegments.add(segment instanceof SegmentImpl ? segment : new SegmentImpl(segment.getFrom(), segment.getTo()));
+			this.segmentFroms[i] = segment.getFrom();
+			this.segmentTos[i] = segment.getTo();
+			this.segmentOffsets[i + 1] = this.segmentOffsets[i] + segment.getLength();
+		}
+		
+		this.segments = Collections.unmodifiableList(immutableSegments);
+	}
+	
+	private CutImpl(final int from, final CutImpl cut) {
+		this.from = from;
+		this.to = from + cut.getLength();
+		this.segments = cut.segments;
+		this.segmentFroms = cut.segmentFroms;
+		this.segmentTos = cut.segmentTos;
+		this.segmentOffsets = cut.segmentOffsets;
+	}
+	
+	/*
+	 * Gets the given cut as a CutImpl, copying it only if it is not one already.
+	 */
+	static CutImpl of(final Cut cut) {
+		return cut instanceof CutImpl ? (CutImpl) cut : new CutImpl(cut.getFrom(), cut.getTo(), cut.getSegments());
+	}
+	
+	/*
+	 * Gets a cut with the same length and segments as this one, beginning at the
+	 * given position. The segments are shared, not copied.
+	 */
+	CutImpl moveTo(final int from) {
+		return from == this.from ? this : new CutImpl(from, this);
 	}
 	
 	@Override
@@ -25,27 +73,37 @@ public class CutImpl implements Cut {
 	}
 	
 	@Override
-	public void setFrom(final int from) {
-		this.from = from;
-	}	
+	public int getLength() {
+		return this.to - this.from;
+	}
 	
 	@Override
-	public void setTo(final int to) {
-		this.to = to;
+	public Segment getSegment(final int i) {
+		return this.segments.get(i);
 	}
 	
 	@Override
-	public int getLength() {
-		return this.to - this.from;
+	public int getSegmentCount() {
+		return this.segmentFroms.length;
 	}
 	
 	@Override
-	public Segment getSegment(final int i) {
-		return new SegmentImpl(this.segments.get(i).getFrom(), this.segments.get(i).getTo());
+	public int getSegmentFrom(final int i) {
+		return this.segmentFroms[i];
+	}
+	
+	@Override
+	public int getSegmentTo(final int i) {
+		return this.segmentTos[i];
+	}
+	
+	@Override
+	public int getSegmentOffset(final int i) {
+		return this.segmentOffsets[i];
 	}
 	
 	@Override
 	public List<Segment> getSegments() {
-		return new ArrayList<>(this.segments);
+		return this.segments;
 	}
 }
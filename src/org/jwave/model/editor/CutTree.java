@@ -0,0 +1,497 @@
+package org.jwave.model.editor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An immutable, height balanced (AVL) tree holding the ordered cuts of a
+ * modifiable song. Every node is augmented with the number of cuts and the
+ * number of frames covered by its subtree, so that the position of a cut
+ * is never stored but always derived from the cuts that precede it.
+ *
+ * This gives O(log n) lookup of the cut containing a position and O(log n)
+ * insertion and removal, without having to shift the from/to of every later
+ * cut. Operations never modify a tree, they return a new one sharing all the
+ * untouched nodes with the previous one.
+ *
+ * Cuts are considered to be contiguous and inclusive of both their ends, a cut
+ * going from x to y therefore covers (y - x + 1) frames and the next cut
+ * begins at y + 1. So are their segments, which add up to the frames of the
+ * cut, and the same positions are used to edit, draw, play and export the
+ * song. The last position covered by the cuts is the end of the song, as
+ * the first cut of a song covers its length plus one, so the song is made of
+ * one frame less than the cuts cover.
+ *
+ * All positions and lengths are expressed in sample frames.
+ *
+ */
+public final class CutTree {
+	private static final CutTree EMPTY = new CutTree(null);
+
+	private final Node root;
+
+	private CutTree(final Node root) {
+		this.root = root;
+	}
+
+    /**
+     * Gets a tree containing no cuts.
+     *
+     * @return
+     * 			the empty tree.
+     */
+	public static CutTree empty() {
+		return EMPTY;
+	}
+
+    /**
+     * Builds a perfectly balanced tree containing the given cuts, in order.
+     * The from and to of the cuts are only used to compute their length.
+     *
+     * @param cuts
+     * 			the cuts to insert in the tree.
+     *
+     * @return
+     * 			a tree containing all the cuts.
+     */
+	public static CutTree of(final List<? extends Cut> cuts) {
+		return new CutTree(build(cuts, 0, cuts.size()));
+	}
+
+    /**
+     * Gets the number of cuts in the tree.
+     *
+     * @return
+     * 			the number of cuts.
+     */
+	public int size() {
+		return count(this.root);
+	}
+
+    /**
+     * Checks if the tree contains no cuts.
+     *
+     * @return
+     * 			true if the tree is empty, false otherwise.
+     */
+	public boolean isEmpty() {
+		return this.root == null;
+	}
+
+    /**
+     * Gets the number of frames covered by all the cuts in the tree.
+     *
+     * @return
+     * 			the total span (in frames) of the cuts.
+     */
+	public int getSpan() {
+		return span(this.root);
+	}
+
+    /**
+     * Gets the number of frames of the song made of the cuts, as edited,
+     * drawn, played and exported, which excludes the end of the song.
+     *
+     * @return
+     * 			the length (in frames) of the song.
+     */
+	public int getFrames() {
+		return Math.max(this.getSpan() - 1, 0);
+	}
+
+    /**
+     * Gets a cut by index, with its from and to set to where it currently lies.
+     * The returned cut shares its segments with the one stored in the tree.
+     *
+     * @param index
+     * 			index of the cut to retrieve.
+     *
+     * @return
+     * 			the cut.
+     */
+	public Cut get(final int index) {
+		return this.node(index).cut.moveTo(this.spanBefore(index));
+	}
+
+    /**
+     * Gets a cut by index exactly as it is stored in the tree, without
+     * allocating anything. Its segments are those of the cut at that index,
+     * but its from and to are the ones it had when it was inserted: where it
+     * currently lies is given by {@link #spanBefore(int)}.
+     *
+     * @param index
+     * 			index of the cut to retrieve.
+     *
+     * @return
+     * 			the stored cut.
+     */
+	public Cut getStored(final int index) {
+		return this.node(index).cut;
+	}
+
+    /**
+     * Finds the cut that contains the given position.
+     *
+     * @param position
+     * 			the position (in frames) to look for.
+     *
+     * @return
+     * 			the index of the cut containing the position, -1 if no cut
+     * 			contains it.
+     */
+	public int indexAt(final int position) {
+		if (position < 0 || position >= this.getSpan()) {
+			return -1;
+		}
+
+		Node current = this.root;
+		int p = position;
+		int index = 0;
+
+		while (current != null) {
+			if (p < span(current.left)) {
+				current = current.left;
+			} else if (p < span(current.left) + current.span) {
+				return index + count(current.left);
+			} else {
+				p -= span(current.left) + current.span;
+				index += count(current.left) + 1;
+				current = current.right;
+			}
+		}
+
+		return -1;
+	}
+
+    /**
+     * Inserts a cut at the given index, shifting the later cuts.
+     *
+     * @param index
+     * 			the index the new cut will have.
+     *
+     * @param cut
+     * 			the cut to insert, only its length and segments are used.
+     *
+     * @return
+     * 			a new tree containing the inserted cut.
+     */
+	public CutTree insert(final int index, final Cut cut) {
+		this.checkIndex(index, this.size());
+
+		return new CutTree(insert(this.root, index, cut));
+	}
+
+    /**
+     * Removes the cut at the given index.
+     *
+     * @param index
+     * 			the index of the cut to remove.
+     *
+     * @return
+     * 			a new tree without the removed cut.
+     */
+	public CutTree remove(final int index) {
+		this.checkIndex(index, this.size() - 1);
+
+		return new CutTree(remove(this.root, index));
+	}
+
+    /**
+     * Replaces the cut at the given index.
+     *
+     * @param index
+     * 			the index of the cut to replace.
+     *
+     * @param cut
+     * 			the new cut, only its length and segments are used.
+     *
+     * @return
+     * 			a new tree containing the new cut in place of the old one.
+     */
+	public CutTree set(final int index, final Cut cut) {
+		this.checkIndex(index, this.size() - 1);
+
+		return new CutTree(set(this.root, index, cut));
+	}
+
+    /**
+     * Walks the pieces of the original song the frames from (inclusive) to
+     * (exclusive) are made of, in order, without allocating anything. Every
+     * piece is a run of contiguous frames of a single segment.
+     *
+     * @param from
+     * 			first frame to walk.
+     *
+     * @param to
+     * 			frame after the last one to walk.
+     *
+     * @param visitor
+     * 			what to do with every piece.
+     */
+	public void walk(final int from, final int to, final PieceVisitor visitor) {
+		int i = this.indexAt(from);
+
+		if (i < 0) {
+			return;
+		}
+
+		Cut cut = this.getStored(i);
+		final int inCut = from - this.spanBefore(i);
+		int j = findSegment(cut, inCut, 1);
+		int offset = inCut - cut.getSegmentOffset(j) - j;
+		int position = from;
+
+		while (position < to) {
+			final int origin = cut.getSegmentFrom(j) + offset;
+			final int frames = Math.min(cut.getSegmentTo(j) + 1 - origin, to - position);
+
+			if (frames > 0) {
+				visitor.visit(position, origin, frames);
+				position += frames;
+			}
+
+			offset = 0;
+			if (++j >= cut.getSegmentCount()) {
+				j = 0;
+				if (++i >= this.size()) {
+					break;
+				}
+				cut = this.getStored(i);
+			}
+		}
+	}
+
+	/*
+	 * Finds the first segment of the given cut for which a running frame counter,
+	 * increased by the length of the segment itself, reaches the given offset.
+	 * The counter advances by the length of each segment plus the given gap,
+	 * and is obtained from the prefix sums of the cut, so the search is a
+	 * binary search. If no segment reaches the offset the last one is returned.
+	 */
+	static int findSegment(final Cut cut, final int offset, final int gap) {
+		int low = 0;
+		int high = cut.getSegmentCount() - 1;
+
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+
+			if (cut.getSegmentOffset(middle + 1) + middle * gap >= offset) {
+				high = middle;
+			} else {
+				low = middle + 1;
+			}
+		}
+
+		return low;
+	}
+
+    /**
+     * Returns all the cuts of the tree, in order, with their from and to set
+     * to where they currently lie.
+     *
+     * @return
+     * 			a list of all the cuts.
+     */
+	public List<Cut> toList() {
+		final List<Cut> out = new ArrayList<>(this.size());
+
+		collect(this.root, 0, out);
+
+		return out;
+	}
+
+    /**
+     * Gets the number of frames covered by the cuts before the given index,
+     * which is the position the cut at that index currently begins at.
+     *
+     * @param index
+     * 			index of the cut, up to the number of cuts.
+     *
+     * @return
+     * 			the position (in frames) of the cut.
+     */
+	public int spanBefore(final int index) {
+		this.checkIndex(index, this.size());
+
+		Node current = this.root;
+		int i = index;
+		int before = 0;
+
+		while (current != null) {
+			if (i <= count(current.left)) {
+				current = current.left;
+			} else {
+				i -= count(current.left) + 1;
+				before += span(current.left) + current.span;
+				current = current.right;
+			}
+		}
+
+		return before;
+	}
+
+	private Node node(final int index) {
+		this.checkIndex(index, this.size() - 1);
+
+		Node current = this.root;
+		int i = index;
+
+		while (count(current.left) != i) {
+			if (i < count(current.left)) {
+				current = current.left;
+			} else {
+				i -= count(current.left) + 1;
+				current = current.right;
+			}
+		}
+
+		return current;
+	}
+
+	private void checkIndex(final int index, final int max) {
+		if (index < 0 || index > max) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size());
+		}
+	}
+
+	private static int collect(final Node node, final int from, final List<Cut> out) {
+		if (node == null) {
+			return from;
+		}
+
+		final int cutFrom = collect(node.left, from, out);
+		out.add(node.cut.moveTo(cutFrom));
+
+		return collect(node.right, cutFrom + node.span, out);
+	}
+
+	private static Node build(final List<? extends Cut> cuts, final int from, final int to) {
+		if (from >= to) {
+			return null;
+		}
+
+		final int middle = (from + to) >>> 1;
+
+		return new Node(CutImpl.of(cuts.get(middle)), build(cuts, from, middle), build(cuts, middle + 1, to));
+	}
+
+	private static Node insert(final Node node, final int index, final Cut cut) {
+		if (node == null) {
+			return new Node(CutImpl.of(cut), null, null);
+		}
+
+		if (index <= count(node.left)) {
+			return balance(node.cut, insert(node.left, index, cut), node.right);
+		} else {
+			return balance(node.cut, node.left, insert(node.right, index - count(node.left) - 1, cut));
+		}
+	}
+
+	private static Node remove(final Node node, final int index) {
+		final int leftCount = count(node.left);
+
+		if (index < leftCount) {
+			return balance(node.cut, remove(node.left, index), node.right);
+		} else if (index > leftCount) {
+			return balance(node.cut, node.left, remove(node.right, index - leftCount - 1));
+		} else if (node.left == null) {
+			return node.right;
+		} else if (node.right == null) {
+			return node.left;
+		} else {
+			/* replace the removed node with its in-order successor */
+			Node successor = node.right;
+			while (successor.left != null) {
+				successor = successor.left;
+			}
+
+			return balance(successor.cut, node.left, remove(node.right, 0));
+		}
+	}
+
+	private static Node set(final Node node, final int index, final Cut cut) {
+		final int leftCount = count(node.left);
+
+		if (index < leftCount) {
+			return new Node(node.cut, set(node.left, index, cut), node.right);
+		} else if (index > leftCount) {
+			return new Node(node.cut, node.left, set(node.right, index - leftCount - 1, cut));
+		} else {
+			return new Node(CutImpl.of(cut), node.left, node.right);
+		}
+	}
+
+	private static Node balance(final CutImpl cut, final Node left, final Node right) {
+		if (height(left) > height(right) + 1) {
+			if (height(left.left) >= height(left.right)) {
+				return new Node(left.cut, left.left, new Node(cut, left.right, right));
+			} else {
+				return new Node(left.right.cut,
+								new Node(left.cut, left.left, left.right.left),
+								new Node(cut, left.right.right, right));
+			}
+		} else if (height(right) > height(left) + 1) {
+			if (height(right.right) >= height(right.left)) {
+				return new Node(right.cut, new Node(cut, left, right.left), right.right);
+			} else {
+				return new Node(right.left.cut,
+								new Node(cut, left, right.left.left),
+								new Node(right.cut, right.left.right, right.right));
+			}
+		} else {
+			return new Node(cut, left, right);
+		}
+	}
+
+	private static int height(final Node node) {
+		return node == null ? 0 : node.height;
+	}
+
+	private static int count(final Node node) {
+		return node == null ? 0 : node.count;
+	}
+
+	private static int span(final Node node) {
+		return node == null ? 0 : node.totalSpan;
+	}
+
+    /**
+     * Something done with each piece of the original song a range of frames
+     * is made of, see {@link CutTree#walk(int, int, PieceVisitor)}.
+     */
+	public interface PieceVisitor {
+	    /**
+	     * Visits a piece.
+	     *
+	     * @param position
+	     * 			frame (as played or exported) the piece begins at.
+	     *
+	     * @param origin
+	     * 			frame of the original song the piece begins at.
+	     *
+	     * @param frames
+	     * 			number of frames of the piece.
+	     */
+		void visit(int position, int origin, int frames);
+	}
+
+	private static final class Node {
+		private final CutImpl cut;
+		private final Node left;
+		private final Node right;
+		private final int span;			/* frames covered by this node's cut */
+		private final int totalSpan;	/* frames covered by the whole subtree */
+		private final int count;
+		private final int height;
+
+		private Node(final CutImpl cut, final Node left, final Node right) {
+			this.cut = cut;
+			this.left = left;
+			this.right = right;
+			this.span = cut.getLength() + 1;
+			this.totalSpan = span(left) + this.span + span(right);
+			this.count = count(left) + 1 + count(right);
+			this.height = Math.max(height(left), height(right)) + 1;
+		}
+	}
+}
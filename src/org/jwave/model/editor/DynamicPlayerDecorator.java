@@ -1,21 +1,20 @@
 package org.jwave.model.editor;
 
-import java.util.List;
 import java.util.Optional;
 
 import org.jwave.model.player.DynamicPlayer;
+import org.jwave.model.player.PlaybackListener;
+import org.jwave.model.player.PlaybackPosition;
 import org.jwave.model.player.Song;
 
+/*
+ * A modified song provides its own playback source, which follows the cuts
+ * and segments as the audio is rendered, so the decorated player needs no
+ * help to play it and positions are already those of the modified song.
+ */
 public abstract class DynamicPlayerDecorator implements DynamicPlayer {
 	protected DynamicPlayer decoratedDynamicPlayer;
 	
-	private ModifiableSong song;
-	
-	private List<Cut> cuts;
-	private Segment currentSegment;
-	private int currentSegmentIndex;
-	private int currentCutIndex;
-	
 	public DynamicPlayerDecorator(final DynamicPlayer player) {
 		this.decoratedDynamicPlayer = player;
 	}
@@ -33,11 +32,6 @@ public abstract class DynamicPlayerDecorator implements DynamicPlayer {
 	@Override
 	public void stop() {
 		this.decoratedDynamicPlayer.stop();
-		
-		this.cuts = this.song.getCuts();
-		this.currentSegmentIndex = 0;
-		this.currentCutIndex = 0;
-		this.currentSegment = this.cuts.get(this.currentCutIndex).getSegment(this.currentSegmentIndex);		
 	}
 
 	@Override
@@ -50,29 +44,14 @@ public abstract class DynamicPlayerDecorator implements DynamicPlayer {
 		return this.decoratedDynamicPlayer.getLength();
 	}
 	
-	private int getSongPosition() {
+	@Override
+	public int getPosition() {
 		return this.decoratedDynamicPlayer.getPosition();
 	}
 
 	@Override
-	public int getPosition() {
-		int currentPosition = 0;
-		Cut currentCut;
-		Segment currentSegment;
-		
-		currentCut = this.cuts.get(this.currentCutIndex);
-		
-		currentPosition = currentCut.getFrom();
-		
-		for (int i = 0; i < this.currentSegmentIndex; i++) {
-			currentPosition += this.cuts.get(this.currentCutIndex).getSegment(i).getLength();
-		}
-		
-		currentSegment = currentCut.getSegment(this.currentSegmentIndex);
-		
-		currentPosition += this.getSongPosition() - currentSegment.getFrom();
-		
-		return currentPosition;
+	public PlaybackPosition getFramePosition() {
+		return this.decoratedDynamicPlayer.getFramePosition();
 	}
 
 	@Override
@@ -82,29 +61,7 @@ public abstract class DynamicPlayerDecorator implements DynamicPlayer {
 
 	@Override
 	public boolean isPlaying() {
-		if (this.decoratedDynamicPlayer.isPlaying()) {
-			if (this.currentCutIndex < this.cuts.size()) {
-			    if (this.getSongPosition() >= this.currentSegment.getTo()) {
-			    	this.currentSegmentIndex++;
-
-			        if (this.currentSegmentIndex >= this.cuts.get(this.currentCutIndex).getSegments().size()) {
-			        	this.currentCutIndex++;
-			        	this.currentSegmentIndex = 0;
-			        	this.currentSegment = this.cuts.get(this.currentCutIndex).getSegment(this.currentSegmentIndex);
-			        }
-
-			        this.cue(currentSegment.getFrom());
-			    }
-			    
-			    return true;
-			} else {
-				this.stop();
-				
-				return false;
-			}
-		} else {
-			return false;
-		}
+		return this.decoratedDynamicPlayer.isPlaying();
 	}
 
 	@Override
@@ -121,17 +78,30 @@ public abstract class DynamicPlayerDecorator implements DynamicPlayer {
 	public void setVolume(final float amount) {
 		this.decoratedDynamicPlayer.setVolume(amount);
 	}
+
+	@Override
+	public void setCrossfade(final int millis) {
+		this.decoratedDynamicPlayer.setCrossfade(millis);
+	}
+
+	@Override
+	public void addPlaybackListener(final PlaybackListener listener) {
+		this.decoratedDynamicPlayer.addPlaybackListener(listener);
+	}
+
+	@Override
+	public void removePlaybackListener(final PlaybackListener listener) {
+		this.decoratedDynamicPlayer.removePlaybackListener(listener);
+	}
 	
 	@Override
 	public void setPlayer(final Song song) {
-		this.song = (ModifiableSong) song;
-		
-		this.decoratedDynamicPlayer.setPlayer(this.song);
-		
-		this.cuts = this.song.getCuts();
-		this.currentSegmentIndex = 0;
-		this.currentCutIndex = 0;
-		this.currentSegment = this.cuts.get(this.currentCutIndex).getSegment(this.currentSegmentIndex);
+		this.decoratedDynamicPlayer.setPlayer((ModifiableSong) song);
+	}
+	
+	@Override
+	public boolean setNextPlayer(final Optional<Song> song) {
+		return this.decoratedDynamicPlayer.setNextPlayer(song);
 	}
 	
 	@Override
@@ -0,0 +1,338 @@
+package org.jwave.model.editor;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.jwave.model.player.PlaybackSource;
+
+import ddf.minim.UGen;
+
+/**
+ * A unit generator playing a version of the cuts of a modified song, reading
+ * the frames of the original song along the segments, so that the song plays
+ * exactly as it would be exported: segments are joined at their exact frame,
+ * with no polling and no seeking of the player.
+ *
+ * Decoding may take longer than an audio buffer, so it is done ahead by a
+ * thread of the player into chunks of fixed size, and the audio callback only
+ * copies from them, never allocating or waiting. The player reads its own
+ * fork of the source, so it never waits for the waveform analysis reading the
+ * same song. Every cue starts a new generation of chunks, older ones being
+ * dropped as they come.
+ *
+ * Optionally every join between frames that are not contiguous in the
+ * original song can be smoothed by a short equal-power crossfade, from the
+ * frames that followed the previous segment in the original song into the
+ * next segment, which keeps the length of the song unchanged.
+ *
+ */
+final class EditListPlayer extends UGen implements PlaybackSource {
+	static final int CHUNK_FRAMES = 4096;
+
+	/*
+	 * The chunks queued cover about a second of audio, so that playback goes
+	 * on while a block of the song is decoded: decoding a block of an MP3,
+	 * opening its stream included, has been measured at up to 250 ms.
+	 */
+	private static final int PREFETCH_MILLIS = 1000;
+	private static final int MIN_CHUNKS = 4;
+
+	private final CutTree cuts;
+	private final PcmSource source;
+	private final float sampleRate;
+	private final int length;					/* length (in frames) of the modified song */
+	private final int fadeFrames;
+	private final float[] tailLeft;				/* frames following a segment in the original song, for fades */
+	private final float[] tailRight;
+	private final BlockingQueue<Chunk> free;
+	private final BlockingQueue<Chunk> filled;
+	private final Thread prefetcher;
+	private final Object lock;
+	private final CutTree.PieceVisitor reader;	/* reads the pieces of a chunk, created once */
+	private final CutTree.PieceVisitor joiner;	/* fades the joins of a chunk, created once */
+
+	private int generation;						/* guarded by lock, as is fillPosition */
+	private int fillPosition;					/* next frame the prefetcher decodes */
+	private volatile int currentGeneration;		/* generation the audio callback plays */
+	private volatile boolean playing;
+	private Chunk current;						/* only used by the audio callback */
+	private int inChunk;
+	private Chunk rendered;						/* only used by the prefetcher, as are the next two */
+	private int renderFrom;						/* first frame of the chunk being rendered */
+	private int previousEnd;					/* frame after the previous piece in the original song */
+
+	/**
+	 * Creates a paused player at the beginning of the song.
+	 *
+	 * @param cuts
+	 * 			the version of the cuts to play.
+	 *
+	 * @param source
+	 * 			the source of the original song, owned and closed by the player.
+	 *
+	 * @param fadeFrames
+	 * 			length (in frames) of the crossfade at every join, 0 for none.
+	 */
+	EditListPlayer(final CutTree cuts, final PcmSource source, final int fadeFrames) {
+		if (fadeFrames < 0 || fadeFrames > CHUNK_FRAMES) {
+			throw new IllegalArgumentException();
+		}
+
+		this.cuts = cuts;
+		this.source = source;
+		this.sampleRate = source.getSampleRate();
+		this.length = cuts.getFrames();
+		this.fadeFrames = fadeFrames;
+		this.tailLeft = new float[CHUNK_FRAMES];
+		this.tailRight = new float[CHUNK_FRAMES];
+
+		final int chunks = Math.max(MIN_CHUNKS,
+									(int) Math.ceil(this.sampleRate * PREFETCH_MILLIS / 1000.0 / CHUNK_FRAMES));
+
+		this.free = new ArrayBlockingQueue<>(chunks);
+		this.filled = new ArrayBlockingQueue<>(chunks);
+		this.lock = new Object();
+		this.reader = this::readPiece;
+		this.joiner = this::fadeJoin;
+
+		for (int i = 0; i < chunks; i++) {
+			this.free.add(new Chunk());
+		}
+
+		this.setChannelCount(2);
+		this.prefetcher = new Thread(this::prefetch, "Edit list prefetcher");
+		this.prefetcher.setDaemon(true);
+		this.prefetcher.start();
+	}
+
+	@Override
+	public UGen getOutput() {
+		return this;
+	}
+
+	@Override
+	public void play() {
+		this.playing = true;
+	}
+
+	@Override
+	public void pause() {
+		this.playing = false;
+	}
+
+	@Override
+	public void rewind() {
+		this.seek(0);
+	}
+
+	@Override
+	public void cue(final int millis) {
+		this.seek((int) Math.max(0, Math.min(Math.round(millis * (double) this.sampleRate / 1000.0), this.length)));
+	}
+
+	@Override
+	public int length() {
+		return (int) Math.round(this.length * 1000.0 / this.sampleRate);
+	}
+
+	@Override
+	public boolean isPlaying() {
+		return this.playing;
+	}
+
+	@Override
+	public float getSampleRate() {
+		return this.sampleRate;
+	}
+
+	@Override
+	public void close() {
+		this.playing = false;
+		this.prefetcher.interrupt();
+	}
+
+	/*
+	 * Starts a new generation of chunks from the given frame, recycling the
+	 * chunks already decoded. The prefetcher may queue chunks of the new
+	 * generation meanwhile, so only the older ones are taken back.
+	 */
+	private void seek(final int frame) {
+		final int seekGeneration;
+
+		synchronized (this.lock) {
+			this.generation++;
+			this.fillPosition = frame;
+			this.currentGeneration = this.generation;
+			seekGeneration = this.generation;
+		}
+
+		for (final Chunk chunk : this.filled) {
+			if (chunk.generation != seekGeneration && this.filled.remove(chunk)) {
+				this.free.offer(chunk);
+			}
+		}
+	}
+
+	@Override
+	protected void uGenerate(final float[] channels) {
+		if (!this.playing || !this.nextFrameReady()) {
+			for (int i = 0; i < channels.length; i++) {
+				channels[i] = 0f;
+			}
+			return;
+		}
+
+		final float left = this.current.left[this.inChunk];
+		final float right = this.current.right[this.inChunk];
+
+		if (channels.length == 1) {
+			channels[0] = (left + right) / 2;
+		} else {
+			channels[0] = left;
+			channels[1] = right;
+			for (int i = 2; i < channels.length; i++) {
+				channels[i] = 0f;
+			}
+		}
+		this.inChunk++;
+	}
+
+	/*
+	 * Moves to the next frame of the current generation, taking the next
+	 * chunk if needed. Returns false on an underrun, or once the end of the
+	 * song has been reached, which stops the player.
+	 */
+	private boolean nextFrameReady() {
+		final int playedGeneration = this.currentGeneration;
+
+		while (this.current == null || this.current.generation != playedGeneration
+			   || this.inChunk >= this.current.frames) {
+			final Chunk next = this.filled.poll();
+
+			if (next == null) {
+				return false;
+			}
+			if (this.current != null) {
+				this.free.offer(this.current);
+			}
+			this.current = next;
+			this.inChunk = 0;
+
+			if (next.generation == playedGeneration && next.frames == 0) {
+				this.playing = false;
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/*
+	 * Decodes chunks ahead of the audio callback, as long as the player lives.
+	 */
+	private void prefetch() {
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				final Chunk chunk = this.free.take();
+				final int chunkGeneration;
+				final int from;
+
+				synchronized (this.lock) {
+					chunkGeneration = this.generation;
+					from = this.fillPosition;
+					this.fillPosition = Math.min(from + CHUNK_FRAMES, this.length);
+				}
+
+				chunk.generation = chunkGeneration;
+				chunk.frames = Math.min(CHUNK_FRAMES, this.length - from);
+				this.render(chunk, from);
+				this.filled.put(chunk);
+			}
+		} catch (InterruptedException e) {
+			/* the player has been closed */
+		} finally {
+			this.source.close();
+		}
+	}
+
+	/*
+	 * Reads the modified frames of a chunk from the given one along the
+	 * pieces of the original song they are made of, then fades the joins,
+	 * looking back far enough to find the joins whose fade reaches the chunk.
+	 */
+	private void render(final Chunk chunk, final int from) {
+		this.rendered = chunk;
+		this.renderFrom = from;
+		this.cuts.walk(from, from + chunk.frames, this.reader);
+
+		if (this.fadeFrames > 0) {
+			this.previousEnd = -1;
+			this.cuts.walk(Math.max(from - this.fadeFrames, 0), from + chunk.frames, this.joiner);
+		}
+	}
+
+	private void readPiece(final int position, final int origin, final int frames) {
+		this.read(origin, this.rendered.left, this.rendered.right, position - this.renderFrom, frames);
+	}
+
+	/*
+	 * Fades the join before a piece, if it doesn't follow the previous one in
+	 * the original song.
+	 */
+	private void fadeJoin(final int position, final int origin, final int frames) {
+		if (this.previousEnd >= 0 && origin != this.previousEnd) {
+			this.fade(position, this.previousEnd);
+		}
+		this.previousEnd = origin + frames;
+	}
+
+	/*
+	 * Crossfades the frames of the chunk after a join at the given modified
+	 * position with the frames that followed the previous segment in the
+	 * original song.
+	 */
+	private void fade(final int join, final int tail) {
+		final float[] left = this.rendered.left;
+		final float[] right = this.rendered.right;
+		final int from = this.renderFrom;
+		final int start = Math.max(join, from);
+		final int end = Math.min(join + this.fadeFrames, from + this.rendered.frames);
+
+		if (end <= start) {
+			return;
+		}
+
+		this.read(tail + start - join, this.tailLeft, this.tailRight, 0, end - start);
+		for (int k = start; k < end; k++) {
+			final double angle = Math.PI / 2 * (k - join + 0.5) / this.fadeFrames;
+			final float in = (float) Math.sin(angle);
+			final float out = (float) Math.cos(angle);
+
+			left[k - from] = left[k - from] * in + this.tailLeft[k - start] * out;
+			right[k - from] = right[k - from] * in + this.tailRight[k - start] * out;
+		}
+	}
+
+	/*
+	 * Reads frames of the original song, silence past its end.
+	 */
+	private void read(final int frame, final float[] left, final float[] right, final int offset, final int frames) {
+		final int read = this.source.read(frame, left, right, offset, frames);
+
+		for (int i = offset + read; i < offset + frames; i++) {
+			left[i] = 0f;
+			right[i] = 0f;
+		}
+	}
+
+	/*
+	 * Decoded frames of the modified song, recycled between the prefetcher
+	 * and the audio callback; an empty chunk marks the end of the song.
+	 */
+	private static final class Chunk {
+		private final float[] left = new float[CHUNK_FRAMES];
+		private final float[] right = new float[CHUNK_FRAMES];
+		private int generation;
+		private int frames;
+	}
+}
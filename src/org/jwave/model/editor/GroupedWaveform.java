@@ -0,0 +1,285 @@
+package org.jwave.model.editor;
+
+/**
+ * A waveform made of groups of samples, stored by column: one array for each
+ * of the 8 values of a GroupedSampleInfo, where index i of every array holds
+ * the values of the i-th group.
+ *
+ * The buffer is owned by the caller and filled again on every request, so that
+ * redrawing a waveform does not allocate anything once the buffer is big
+ * enough. The arrays are exposed directly, only their first getSize() values
+ * are meaningful.
+ *
+ */
+public final class GroupedWaveform {
+	private int size;
+	private float[] leftMax;
+	private float[] leftMin;
+	private float[] leftPosRMS;
+	private float[] leftNegRMS;
+	private float[] rightMax;
+	private float[] rightMin;
+	private float[] rightPosRMS;
+	private float[] rightNegRMS;
+	private int[] starts;			/* first frame of every group, in the original song */
+	private float[] scales;			/* 1 / frames summarised by every group, for the RMS */
+	private float[][] scratch;		/* values of the group being accumulated, by each run of groups */
+
+	/**
+	 * Creates an empty waveform.
+	 *
+	 * @param capacity
+	 * 			number of groups that can be held before the arrays are grown.
+	 */
+	public GroupedWaveform(final int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException();
+		}
+
+		this.size = 0;
+		this.scratch = new float[][] {new float[WaveformPyramid.VALUES]};
+		this.allocate(capacity);
+	}
+
+    /**
+     * Gets the number of groups of the waveform.
+     *
+     * @return
+     * 			the number of groups.
+     */
+	public int getSize() {
+		return this.size;
+	}
+
+    /**
+     * Gets the number of groups that can be held without growing the arrays.
+     *
+     * @return
+     * 			the capacity of the waveform.
+     */
+	public int getCapacity() {
+		return this.starts.length;
+	}
+
+    /**
+     * Gets the maximum amplitude of every group in the left channel.
+     *
+     * @return
+     * 			the maxima (up to 1) of the left channel.
+     */
+	public float[] getLeftChannelMax() {
+		return this.leftMax;
+	}
+
+    /**
+     * Gets the minimum amplitude of every group in the left channel.
+     *
+     * @return
+     * 			the minima (down to -1) of the left channel.
+     */
+	public float[] getLeftChannelMin() {
+		return this.leftMin;
+	}
+
+    /**
+     * Gets the RMS of positive values of every group in the left channel.
+     *
+     * @return
+     * 			the RMS of the positive values (0 to 1) of the left channel.
+     */
+	public float[] getLeftChannelPositiveRMS() {
+		return this.leftPosRMS;
+	}
+
+    /**
+     * Gets the RMS of negative values of every group in the left channel.
+     *
+     * @return
+     * 			the RMS of the negative values (-1 to 0) of the left channel.
+     */
+	public float[] getLeftChannelNegativeRMS() {
+		return this.leftNegRMS;
+	}
+
+    /**
+     * Gets the maximum amplitude of every group in the right channel.
+     *
+     * @return
+     * 			the maxima (up to 1) of the right channel.
+     */
+	public float[] getRightChannelMax() {
+		return this.rightMax;
+	}
+
+    /**
+     * Gets the minimum amplitude of every group in the right channel.
+     *
+     * @return
+     * 			the minima (down to -1) of the right channel.
+     */
+	public float[] getRightChannelMin() {
+		return this.rightMin;
+	}
+
+    /**
+     * Gets the RMS of positive values of every group in the right channel.
+     *
+     * @return
+     * 			the RMS of the positive values (0 to 1) of the right channel.
+     */
+	public float[] getRightChannelPositiveRMS() {
+		return this.rightPosRMS;
+	}
+
+    /**
+     * Gets the RMS of negative values of every group in the right channel.
+     *
+     * @return
+     * 			the RMS of the negative values (-1 to 0) of the right channel.
+     */
+	public float[] getRightChannelNegativeRMS() {
+		return this.rightNegRMS;
+	}
+
+    /**
+     * Gets the values of a single group.
+     *
+     * @param index
+     * 			index of the group.
+     *
+     * @return
+     * 			the values of the group.
+     */
+	public GroupedSampleInfo get(final int index) {
+		if (index < 0 || index >= this.size) {
+			throw new IndexOutOfBoundsException();
+		}
+
+		return new GroupedSampleInfoImpl(this.leftMax[index], this.leftMin[index],
+										 this.leftPosRMS[index], this.leftNegRMS[index],
+										 this.rightMax[index], this.rightMin[index],
+										 this.rightPosRMS[index], this.rightNegRMS[index]);
+	}
+
+	/*
+	 * Empties the waveform, growing the arrays if they can't hold the given
+	 * number of groups.
+	 */
+	void reset(final int capacity) {
+		if (capacity > this.getCapacity()) {
+			this.allocate(Math.max(capacity, 2 * this.getCapacity()));
+		}
+		this.size = 0;
+	}
+
+	/*
+	 * Appends a group beginning at the given frame, its values are set later.
+	 */
+	void addGroup(final int start) {
+		if (this.size == this.getCapacity()) {
+			this.allocate(Math.max(this.size + 1, 2 * this.size), this.size);
+		}
+		this.starts[this.size++] = start;
+	}
+
+	int getStart(final int index) {
+		return this.starts[index];
+	}
+
+	/*
+	 * Gets the values a WaveformPyramid accumulates a group into, owned by
+	 * the waveform so that filling it again allocates nothing.
+	 */
+	float[] getScratch() {
+		return this.scratch[0];
+	}
+
+	/*
+	 * Gets separate values to accumulate groups into for each of the given
+	 * number of runs of groups, which can then be filled concurrently.
+	 */
+	float[][] getScratch(final int runs) {
+		if (runs > this.scratch.length) {
+			final float[][] grown = new float[runs][];
+
+			for (int i = 0; i < runs; i++) {
+				grown[i] = i < this.scratch.length ? this.scratch[i] : new float[WaveformPyramid.VALUES];
+			}
+			this.scratch = grown;
+		}
+
+		return this.scratch;
+	}
+
+	/*
+	 * Stores the values accumulated by a WaveformPyramid for a group, with
+	 * the number of frames they summarise.
+	 */
+	void set(final int index, final float[] values, final int frames) {
+		this.scales[index] = frames > 0 ? 1f / frames : 0f;
+		this.leftMax[index] = values[WaveformPyramid.LEFT_MAX];
+		this.leftMin[index] = values[WaveformPyramid.LEFT_MIN];
+		this.leftPosRMS[index] = values[WaveformPyramid.LEFT_POSITIVE_SQUARES];
+		this.leftNegRMS[index] = values[WaveformPyramid.LEFT_NEGATIVE_SQUARES];
+		this.rightMax[index] = values[WaveformPyramid.RIGHT_MAX];
+		this.rightMin[index] = values[WaveformPyramid.RIGHT_MIN];
+		this.rightPosRMS[index] = values[WaveformPyramid.RIGHT_POSITIVE_SQUARES];
+		this.rightNegRMS[index] = values[WaveformPyramid.RIGHT_NEGATIVE_SQUARES];
+	}
+
+	/*
+	 * Turns the sums of squares stored by set into RMS values, over the
+	 * frames every group summarises, which are fewer than the others for a
+	 * group at the end of the song. Plain loops over single arrays, which
+	 * the JIT can vectorize.
+	 */
+	void toRMS() {
+		for (int i = 0; i < this.size; i++) {
+			this.leftPosRMS[i] = (float) Math.sqrt(this.leftPosRMS[i] * this.scales[i]);
+		}
+		for (int i = 0; i < this.size; i++) {
+			this.leftNegRMS[i] = -(float) Math.sqrt(this.leftNegRMS[i] * this.scales[i]);
+		}
+		for (int i = 0; i < this.size; i++) {
+			this.rightPosRMS[i] = (float) Math.sqrt(this.rightPosRMS[i] * this.scales[i]);
+		}
+		for (int i = 0; i < this.size; i++) {
+			this.rightNegRMS[i] = -(float) Math.sqrt(this.rightNegRMS[i] * this.scales[i]);
+		}
+	}
+
+	private void allocate(final int capacity) {
+		this.allocate(capacity, 0);
+	}
+
+	/*
+	 * Replaces the arrays with bigger ones, keeping the given number of groups.
+	 */
+	private void allocate(final int capacity, final int kept) {
+		this.leftMax = grow(this.leftMax, capacity, kept);
+		this.leftMin = grow(this.leftMin, capacity, kept);
+		this.leftPosRMS = grow(this.leftPosRMS, capacity, kept);
+		this.leftNegRMS = grow(this.leftNegRMS, capacity, kept);
+		this.rightMax = grow(this.rightMax, capacity, kept);
+		this.rightMin = grow(this.rightMin, capacity, kept);
+		this.rightPosRMS = grow(this.rightPosRMS, capacity, kept);
+		this.rightNegRMS = grow(this.rightNegRMS, capacity, kept);
+		this.scales = grow(this.scales, capacity, kept);
+
+		final int[] grown = new int[capacity];
+		if (kept > 0) {
+			System.arraycopy(this.starts, 0, grown, 0, kept);
+		}
+		this.starts = grown;
+	}
+
+	private static float[] grow(final float[] array, final int capacity, final int kept) {
+		final float[] grown = new float[capacity];
+
+		if (kept > 0) {
+			System.arraycopy(array, 0, grown, 0, kept);
+		}
+
+		return grown;
+	}
+}
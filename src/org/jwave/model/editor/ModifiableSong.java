@@ -1,8 +1,9 @@
 package org.jwave.model.editor;
 
+import java.io.IOException;
 import java.util.List;
 
-import org.jwave.model.player.Song;
+import org.jwave.model.player.RenderedSong;
 
 /**
  * This interface models the concept of a modifiable song, extending the
@@ -10,13 +11,21 @@ import org.jwave.model.player.Song;
  * into separate pieces, which then may be rearranged in order to create a
  * new song, based on the original.
  * 
- * All "ms" acronyms stand for milliseconds.
+ * All positions and lengths are expressed in sample frames, "ms" acronyms
+ * stand for milliseconds.
+ * 
+ * A modifiable song is played as it is currently modified: its playback
+ * source reads the frames of the original song along the cuts and segments,
+ * exactly as exportSong writes them.
  *
  */
-public interface ModifiableSong extends Song {
+public interface ModifiableSong extends RenderedSong {
+    /** Longest crossfade (in frames) that can smooth the joins of a song. */
+	int MAX_SPLICE_FADE = 4096;
+	
     /**
      * Resets the state of the current modifiable song, reseting all cuts
-     * and segments.
+     * and segments. The reset is itself a modification that can be undone.
      */	
 	void resetModifications();
 	
@@ -30,7 +39,7 @@ public interface ModifiableSong extends Song {
      * Gets the length of the original, non-modified song.
      *          
      * @return
-     * 			the length (in ms) of the original song.
+     * 			the length (in frames) of the original song.
      */	
 	int getLength();
 	
@@ -38,21 +47,51 @@ public interface ModifiableSong extends Song {
      * Gets the length of the modified song.
      *          
      * @return
-     * 			the length (in ms) of the modified song.
+     * 			the length (in frames) of the modified song.
      */	
 	int getModifiedLength();
+	
+    /**
+     * Gets the sample rate of the song, the number of frames in a second.
+     *          
+     * @return
+     * 			the sample rate of the song.
+     */	
+	float getSampleRate();
+	
+    /**
+     * Converts a duration, or a position, from ms to frames of this song.
+     * 
+     * @param ms
+     * 			the duration (in ms) to convert.
+     *          
+     * @return
+     * 			the duration (in frames).
+     */	
+	int msToFrames(int ms);
+	
+    /**
+     * Converts a duration, or a position, from frames of this song to ms.
+     * 
+     * @param frames
+     * 			the duration (in frames) to convert.
+     *          
+     * @return
+     * 			the duration (in ms).
+     */	
+	int framesToMs(int frames);
 
     /**
      * Pastes the given segment of the modified song into a given position.
      *          
      * @param from
-     * 			beginning (in ms) of segment to paste.
+     * 			beginning (in frames) of segment to paste.
      * 
      * @param to
-     * 			end (in ms) of segment to paste.
+     * 			end (in frames) of segment to paste.
      * 
      * @param at
-     * 			position (in ms) where to paste the from-to segment, shifting
+     * 			position (in frames) where to paste the from-to segment, shifting
      * 			all later segments down by the length of the from-to segment.
      */	
 	void pasteSelectionAt(int from, int to, int at);
@@ -61,13 +100,49 @@ public interface ModifiableSong extends Song {
      * Cuts the given segment of the modified song, deleting it.
      *          
      * @param from
-     * 			beginning (in ms) of segment to remove.
+     * 			beginning (in frames) of segment to remove.
      * 
      * @param to
-     * 			end (in ms) of segment to remove.
+     * 			end (in frames) of segment to remove.
      */	
 	void deleteSelection(int from, int to);
 	
+    /**
+     * Checks if there is a previous version of the modified song to go
+     * back to.
+     *          
+     * @return
+     * 			true if a modification can be undone, false otherwise.
+     */	
+	boolean canUndo();
+	
+    /**
+     * Checks if there is an undone version of the modified song that can
+     * be restored.
+     *          
+     * @return
+     * 			true if a modification can be redone, false otherwise.
+     */	
+	boolean canRedo();
+	
+    /**
+     * Undoes the last modification (paste, cut or reset), restoring the cuts
+     * and segments the song had before it.
+     * 
+     * @throws IllegalStateException
+     * 			if there is no modification to undo.
+     */	
+	void undo() throws IllegalStateException;
+	
+    /**
+     * Redoes the last undone modification. Any new modification made after
+     * an undo forgets all the undone ones.
+     * 
+     * @throws IllegalStateException
+     * 			if there is no modification to redo.
+     */	
+	void redo() throws IllegalStateException;
+	
     /**
      * Checks if asked for sample size in a given interval would end up being
      * at maximum resolution, in which case the number of values given for
@@ -76,9 +151,9 @@ public interface ModifiableSong extends Song {
      * samples) would be 8.
      * 
      * @param from
-     * 			from what position (in ms) to check resolution.
+     * 			from what position (in frames) to check resolution.
      * @param to
-     * 			to what position (in ms) to check resolution.
+     * 			to what position (in frames) to check resolution.
      * @param samples
      * 			number of segments divide interval in.
      *          
@@ -100,9 +175,9 @@ public interface ModifiableSong extends Song {
      * All values are normalized in a -1 to 1 range.
      * 
      * @param from
-     * 			from what position (in ms) to get the waveform.
+     * 			from what position (in frames) to get the waveform.
      * @param to
-     * 			to what position (in ms) to get the waveform.
+     * 			to what position (in frames) to get the waveform.
      * @param samples
      * 			number of sets of values to retrieve for the asked for interval.
      * @return
@@ -126,9 +201,9 @@ public interface ModifiableSong extends Song {
      * All values are normalized in a -1 to 1 range.
      * 
      * @param from
-     * 			from what position (in ms) to get the waveform.
+     * 			from what position (in frames) to get the waveform.
      * @param to
-     * 			to what position (in ms) to get the waveform.
+     * 			to what position (in frames) to get the waveform.
      * @param samples
      * 			number of sets of values to retrieve for the asked for interval.
      * @return
@@ -137,32 +212,102 @@ public interface ModifiableSong extends Song {
      */
 	List<GroupedSampleInfo> getAggregatedWaveform(int from, int to, int samples);	
 	
+    /**
+     * Fills the given waveform with the groups of values representing the
+     * waveform of the currently loaded, and possibly modified, song, as
+     * getAggregatedWaveform does, but without allocating a list of objects:
+     * the values are written by column into a buffer owned by the caller,
+     * which is grown only if it can't hold the groups asked for.
+     * 
+     * All values are normalized in a -1 to 1 range.
+     * 
+     * @param from
+     * 			from what position (in frames) to get the waveform.
+     * @param to
+     * 			to what position (in frames) to get the waveform.
+     * @param samples
+     * 			number of sets of values to retrieve for the asked for interval.
+     * @param waveform
+     * 			the buffer to fill, its previous content is discarded.
+     */
+	void getAggregatedWaveform(int from, int to, int samples, GroupedWaveform waveform);
+	
+    /**
+     * Returns the tiles of the waveform of the currently loaded, and possibly
+     * modified, song covering only the asked for interval, at the zoom level
+     * giving at least one group of samples per pixel. Tiles are cached for
+     * every version of the song and zoom level, and an edit only invalidates
+     * the tiles it overlaps, so scrolling and zooming seldom compute anything.
+     * 
+     * @param from
+     * 			from what position (in frames) to get the waveform.
+     * @param to
+     * 			to what position (in frames) to get the waveform.
+     * @param pixels
+     * 			width (in pixels) the interval is drawn on.
+     * @return
+     * 			the tiles covering the interval, in order.
+     */
+	List<WaveformTile> getWaveformTiles(int from, int to, int pixels);
+	
+    /**
+     * Goes on analysing the song, when its waveform has been loaded from the
+     * cache: the song is read a few frames at a time, so that the analysis can
+     * be spread over short tasks and dropped at any moment, and once it has
+     * been read entirely the cached waveform is replaced if it turns out to
+     * be stale.
+     * 
+     * @param frames
+     * 			number of frames to read, rounded up to whole blocks.
+     * @return
+     * 			true once the song has been analysed entirely, or if there
+     * 			was nothing to analyse.
+     */
+	boolean analyse(int frames);
+	
     /**
      * Exports the modified song to the absolute path provided.
      * 
      * @param exportPath
      * 			absolute path of .wav file where song will be saved.
      * 
+     * @throws IOException
+     * 			if the song can't be read, or the file can't be written.
+     */	
+	void exportSong(String exportPath) throws IOException;
+	
+    /**
+     * Sets the length of the crossfade smoothing every join between frames
+     * that are not contiguous in the original song when the song is played,
+     * from the playback sources created from now on. Exports are not faded.
+     * 
+     * @param frames
+     * 			length (in frames) of the crossfade, 0 (the default) to join
+     * 			segments exactly as exported.
+     * 
+     * @throws IllegalArgumentException
+     * 			if frames is negative or longer than MAX_SPLICE_FADE.
      */	
-	void exportSong(String exportPath);
+	void setSpliceFade(int frames) throws IllegalArgumentException;
 	
     /**
-     * Returns a defensive copy of all the songs cuts.
+     * Returns all the songs cuts. Cuts are immutable, so they are shared
+     * with the song rather than copied.
      * 
      * @return
-     * 			a defensive copy of the list of all the songs cuts.
+     * 			a list of all the songs cuts.
      * 
      */	
 	List<Cut> getCuts();
 	
     /**
-     * Returns a defensive copy a single cut.
+     * Returns a single cut.
      * 
      * @param i
      * 			the index of the cut to get.
      * 
      * @return
-     * 			a defensive copy the cut.
+     * 			the cut.
      * 
      */	
 	Cut getCut(int i);	
@@ -1,59 +1,166 @@
 package org.jwave.model.editor;
 
-import java.io.ByteArrayInputStream;
-import java.io.File;
 import java.io.IOException;
-import java.nio.FloatBuffer;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.IntStream;
 
-import javax.sound.sampled.AudioFileFormat;
-import javax.sound.sampled.AudioFormat;
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
 
-import org.jwave.model.FileSystemHandler;
+import org.jwave.model.player.PlaybackSource;
 import org.jwave.model.player.Song;
 
-import ddf.minim.AudioSample;
-import ddf.minim.Minim;
-import ddf.minim.analysis.FFT;
-import ddf.minim.javasound.FloatSampleBuffer;
 
 public class ModifiableSongImpl extends ModifiableSongDecorator implements ModifiableSong {
-	private final static Minim minim = new Minim(new FileSystemHandler());
+	private static final int EXPORT_FRAMES = 4096;
+	private static final int AGGREGATION_RUNS = Runtime.getRuntime().availableProcessors();
+	private static final int GROUPS_PER_RUN = Integer.getInteger("jwave.waveform.groupsPerRun", 256);
 	
-	private static final int BUFFER_SIZE = 1024;
-	
-	private final List<Cut> cuts;					/* all the cuts that make up this modifiable song */
-	private final AudioSample songSample;   		/* where to get actual audio data from */
+	private volatile CutTree cuts;					/* all the cuts that make up this modifiable song, read by waveform jobs */
+	private final int length;						/* length (in frames) of the original song */
+	private final float sampleRate;					/* frames per second of the original song */
+	private final PcmSource source;					/* where to get actual audio data from */
+	private volatile WaveformPyramid pyramid;		/* summary of the audio data, for waveforms */
+	private WaveformPyramid.Analysis analysis;		/* reading of the song checking a cached pyramid, if any */
+	private final WaveformTiles tiles;				/* waveform tiles of the current and previous cuts */
+	private volatile int spliceFade;				/* frames of the crossfade at every join, when played */
 	
 	private final List<Segment> previousCopy;		/* any previously copied segments */
 	
+	/*
+	 * Every modification produces a new version of the cuts, which shares all
+	 * of its unchanged nodes with the previous one, so keeping older versions
+	 * around costs only what each modification changed and undoing or redoing
+	 * just swaps the current version with another one.
+	 */
+	private final Deque<CutTree> undoHistory;		/* versions preceding the current one, latest first */
+	private final Deque<CutTree> redoHistory;		/* undone versions, latest undone first */
+	
 	public ModifiableSongImpl(final Song decoratedSong) {
 		super(decoratedSong);
 		
-		this.songSample = minim.loadSample(this.getAbsolutePath(), BUFFER_SIZE);
+		/*
+		 * the song is only decoded when its audio is needed, a few blocks at
+		 * a time, so the memory used does not depend on its length, while
+		 * uncompressed .wav files are just mapped and need no decoding
+		 */
+		if (WaveFileSource.canRead(this.getAbsolutePath())) {
+			this.source = new WaveFileSource(this.getAbsolutePath());
+		} else {
+			this.source = new PcmSourceImpl(this.getAbsolutePath());
+		}
+		this.sampleRate = this.source.getSampleRate();
+		
+		/*
+		 * if the waveform of the song has already been computed, it is shown
+		 * straight from the cache, while the song is analysed later on by
+		 * whoever loaded it, through analyse
+		 */
+		Optional<PeakCache> cache = PeakCache.load(this.getAbsolutePath());
+		
+		if (cache.isPresent()) {
+			this.pyramid = cache.get().getPyramid();
+			this.analysis = new WaveformPyramid.Analysis(this.source);
+		} else {
+			this.pyramid = new WaveformPyramid(this.source);
+			PeakCache.store(this.getAbsolutePath(), this.sampleRate, this.pyramid);
+		}
+		this.length = this.pyramid.getLength();
 		
 		if (decoratedSong instanceof ModifiableSong) {
 			ModifiableSong modifiableSong = (ModifiableSong) decoratedSong;
-			this.cuts = new ArrayList<>(modifiableSong.getCuts());
+			this.cuts = CutTree.of(modifiableSong.getCuts());
 		} else {
-			this.cuts = new ArrayList<>();
-			this.cuts.add(new CutImpl(0, this.songSample.length(), 
-						  new ArrayList<Segment>(Arrays.asList(new SegmentImpl(0, this.songSample.length())))));
+			this.cuts = this.createInitialCuts();
 		}
 		
+		tiles = new WaveformTiles();
 		previousCopy = new ArrayList<>();
+		undoHistory = new ArrayDeque<>();
+		redoHistory = new ArrayDeque<>();
+	}
+	
+	@Override
+	public synchronized boolean analyse(final int frames) {
+		if (this.analysis == null) {
+			return true;
+		}
+		
+		if (this.analysis.read(frames)) {
+			final WaveformPyramid analysed = this.analysis.toPyramid();
+			
+			/*
+			 * the cached pyramid is kept if it is still right, so that the
+			 * tiles computed from it stay valid
+			 */
+			this.analysis = null;
+			if (!analysed.hasSameBlocks(this.pyramid)) {
+				PeakCache.store(this.getAbsolutePath(), this.sampleRate, analysed);
+				if (analysed.getLength() == this.length) {
+					this.pyramid = analysed;
+				}
+			}
+			return true;
+		}
+		
+		return false;
+	}
+	
+	private CutTree createInitialCuts() {
+		return CutTree.empty().insert(0, new CutImpl(0, this.length, 
+				  					  new ArrayList<Segment>(Arrays.asList(new SegmentImpl(0, this.length)))));
+	}
+	
+	/*
+	 * Makes the given version of the cuts the current one, remembering the
+	 * previous one so that it can be restored.
+	 */
+	private void commit(final CutTree modifiedCuts) {
+		this.undoHistory.push(this.cuts);
+		this.redoHistory.clear();
+		this.tiles.migrate(this.cuts, modifiedCuts);
+		this.cuts = modifiedCuts;
 	}
 	
 	@Override
 	public void resetModifications() {
-		this.cuts.clear();
-		this.cuts.add(new CutImpl(0, this.songSample.length(),
-					  new ArrayList<Segment>(Arrays.asList(new SegmentImpl(0, this.songSample.length())))));
+		this.commit(this.createInitialCuts());
+	}
+	
+	@Override
+	public boolean canUndo() {
+		return !this.undoHistory.isEmpty();
+	}
+	
+	@Override
+	public boolean canRedo() {
+		return !this.redoHistory.isEmpty();
+	}
+	
+	@Override
+	public void undo() throws IllegalStateException {
+		if (this.canUndo()) {
+			this.redoHistory.push(this.cuts);
+			this.tiles.migrate(this.cuts, this.undoHistory.peek());
+			this.cuts = this.undoHistory.pop();
+		} else {
+			throw new IllegalStateException();
+		}
+	}
+	
+	@Override
+	public void redo() throws IllegalStateException {
+		if (this.canRedo()) {
+			this.undoHistory.push(this.cuts);
+			this.tiles.migrate(this.cuts, this.redoHistory.peek());
+			this.cuts = this.redoHistory.pop();
+		} else {
+			throw new IllegalStateException();
+		}
 	}
 	
 	@Override
@@ -63,12 +170,27 @@ public class ModifiableSongImpl extends ModifiableSongDecorator implements Modif
 
 	@Override
 	public int getLength() {
-		return this.songSample.length();
+		return this.length;
 	}
 
 	@Override
 	public int getModifiedLength() {
-		return this.cuts.get(this.cuts.size() - 1).getTo();
+		return this.cuts.getFrames();
+	}
+	
+	@Override
+	public float getSampleRate() {
+		return this.sampleRate;
+	}
+	
+	@Override
+	public int msToFrames(final int ms) {
+		return (int) Math.round(ms * (double) this.sampleRate / 1000.0);
+	}
+	
+	@Override
+	public int framesToMs(final int frames) {
+		return (int) Math.round(frames * 1000.0 / this.sampleRate);
 	}
 	
 	private CutImpl generateCutFromSelection(final int from, final int to, final int at) {
@@ -76,62 +198,45 @@ public class ModifiableSongImpl extends ModifiableSongDecorator implements Modif
 		
 		if (previousCopy.size() == 0) {						
 			int i, j;
-			int totalCopied;					/* counter for the total amount of ms copied */
-			int currentCutIndex;				/* counter for iterating cut indices */
-			int currentSegmentIndex;			/* counter for iterating segment indices */
+			int totalCopied;					/* counter for the total amount of frames copied */
 			int currentSegmentLength;			
 			int initialSegmentOffset;			/* offset of copied part, relative to the start of the first segment */
 			int copiedOffset;					/* offset of the copied */
+			Cut currentCut;
 			ArrayList<Segment> copiedSegments; 	/* a buffer used to collect segments from the copied selection */			
 			
 			copiedSegments = new ArrayList<>();
 			
-			currentCutIndex = -1;
-			currentSegmentIndex = -1;	
-			
 			/* we find the initial cut from which to begin transfering segments */
-			for (i = 0; i < cuts.size() && currentCutIndex == -1; i++) {
-				if (cuts.get(i).getFrom() <= from && cuts.get(i).getTo() >= from) {
-					currentCutIndex = i;
-				}
-			}
+			i = cuts.indexAt(from);
+			currentCut = cuts.getStored(i);
 			
-			/* and the initial segment */
-			i = 0; 			/* segment index counter */
-			j = 0; 			/* millisecond counter */
-			initialSegmentOffset = 0;
-			copiedOffset = from - cuts.get(currentCutIndex).getFrom(); /* WithRespectToCutFrom */
-			while (currentSegmentIndex == -1) {
-				currentSegmentLength = cuts.get(currentCutIndex).getSegment(i).getLength();
-				if (j <= copiedOffset && (j + currentSegmentLength) >= copiedOffset) {
-					currentSegmentIndex = i;
-					initialSegmentOffset = copiedOffset - j;
-				}
-				
-				j += currentSegmentLength;
-				i++;
-			}
+			/* and the initial segment, segments being inclusive of both their ends */
+			copiedOffset = from - cuts.spanBefore(i); /* WithRespectToCutFrom */
+			j = CutTree.findSegment(currentCut, copiedOffset, 1);
+			initialSegmentOffset = copiedOffset - currentCut.getSegmentOffset(j) - j;
 			
 			/* start copying in segments */
 			totalCopied = 0;
-			i = currentCutIndex;
-			j = currentSegmentIndex;
 			while (totalCopied < copiedCutLength) {
-				currentSegmentLength = cuts.get(i).getSegment(j).getTo() 
-									   - (cuts.get(i).getSegment(j).getFrom() + initialSegmentOffset);
+				int segmentFrom = currentCut.getSegmentFrom(j);
+				int segmentTo = currentCut.getSegmentTo(j);
+				
+				currentSegmentLength = segmentTo - (segmentFrom + initialSegmentOffset);
 			
-				copiedSegments.add(new SegmentImpl(cuts.get(i).getSegment(j).getFrom() + initialSegmentOffset,
+				copiedSegments.add(new SegmentImpl(segmentFrom + initialSegmentOffset,
 				        totalCopied + currentSegmentLength < copiedCutLength ? 
-				        cuts.get(i).getSegment(j).getTo() :
-						cuts.get(i).getSegment(j).getTo() - (totalCopied + currentSegmentLength - copiedCutLength)));
+				        segmentTo :
+				        segmentTo - (totalCopied + currentSegmentLength - copiedCutLength)));
 				
 				initialSegmentOffset = 0;
 				totalCopied += copiedSegments.get(copiedSegments.size() - 1).getLength() + 1;
 				
 				j++;
-				if (j >= cuts.get(i).getSegments().size()) {
+				if (j >= currentCut.getSegmentCount() && totalCopied < copiedCutLength) {
 					j = 0;
 					i++;
+					currentCut = cuts.getStored(i);
 				}
 			}
 					
@@ -143,23 +248,14 @@ public class ModifiableSongImpl extends ModifiableSongDecorator implements Modif
 
 	@Override
 	public void pasteSelectionAt(final int from, final int to, final int at) {
-		int cutToDivideIndex = 0;
-		Optional<Cut> cutToDivide = Optional.empty();
+		final int cutToDivideIndex = this.cuts.indexAt(at);
 		Cut cutToInsert;
-		int i;
 		
 		/*
 		 * First we get the cut that we will be dividing in two parts
 		 * in order to make room for the inserted paste in the middle.
 		 */
-		for (i = 0; i < cuts.size(); i++) {
-			if (cuts.get(i).getFrom() <= at && cuts.get(i).getTo() >= at) {
-				cutToDivideIndex = i;
-				cutToDivide = Optional.of(cuts.get(cutToDivideIndex));
-			}
-		}
-		
-		if (cutToDivide.isPresent()) {
+		if (cutToDivideIndex >= 0) {
 			int leftHalfLength;
 			int rightHalfLength;
 			int halfPoint;
@@ -167,85 +263,60 @@ public class ModifiableSongImpl extends ModifiableSongDecorator implements Modif
 			ArrayList<Segment> rightSegments = new ArrayList<>(); /* the segments will make up the right cut */
 			CutImpl leftCut;
 			CutImpl rightCut;
+			Cut cutToDivide;
 			int segmentCounter;			
+			int i;
 			
+			cutToDivide = this.cuts.get(cutToDivideIndex);
 			cutToInsert = generateCutFromSelection(from, to, at);
 			
-			leftHalfLength = at - cutToDivide.get().getFrom();
-			rightHalfLength = cutToDivide.get().getLength() - leftHalfLength;
-			halfPoint = cutToDivide.get().getFrom() + leftHalfLength;
+			leftHalfLength = at - cutToDivide.getFrom();
+			rightHalfLength = cutToDivide.getLength() - leftHalfLength;
+			halfPoint = cutToDivide.getFrom() + leftHalfLength;
 			
-			i = 0;
-			segmentCounter = 0;
-			while (segmentCounter + (cutToDivide.get().getSegment(i).getLength()) < leftHalfLength) {
-				leftSegments.add(new SegmentImpl(cutToDivide.get().getSegment(i).getFrom(),
-						        		         cutToDivide.get().getSegment(i).getTo()));
-				segmentCounter += (cutToDivide.get().getSegment(i).getLength());
-				i++;
-			}
+			i = CutTree.findSegment(cutToDivide, leftHalfLength, 1);
+			segmentCounter = cutToDivide.getSegmentOffset(i) + i;
+			leftSegments.addAll(cutToDivide.getSegments().subList(0, i));
 			
 			/* the two middle segments that "touch" the inserted cut */
-			leftSegments.add(new SegmentImpl(cutToDivide.get().getSegment(i).getFrom(),
-							 cutToDivide.get().getSegment(i).getFrom() + (leftHalfLength - segmentCounter) - 1));
-			rightSegments.add(new SegmentImpl(cutToDivide.get().getSegment(i).getFrom() +
-											          (leftHalfLength - segmentCounter),
-										      cutToDivide.get().getSegment(i).getTo()));
+			leftSegments.add(new SegmentImpl(cutToDivide.getSegmentFrom(i),
+							 cutToDivide.getSegmentFrom(i) + (leftHalfLength - segmentCounter) - 1));
+			rightSegments.add(new SegmentImpl(cutToDivide.getSegmentFrom(i) + (leftHalfLength - segmentCounter),
+										      cutToDivide.getSegmentTo(i)));
 			
-			for (i++; i < cutToDivide.get().getSegments().size(); i++) {
-				rightSegments.add(new SegmentImpl(cutToDivide.get().getSegment(i).getFrom(),
-						                          cutToDivide.get().getSegment(i).getTo()));
-			}
+			rightSegments.addAll(cutToDivide.getSegments().subList(i + 1, cutToDivide.getSegmentCount()));
 			
-			leftCut = new CutImpl(cutToDivide.get().getFrom(), halfPoint - 1, leftSegments);
+			leftCut = new CutImpl(cutToDivide.getFrom(), halfPoint - 1, leftSegments);
 			rightCut = new CutImpl(cutToInsert.getTo() + 1, cutToInsert.getTo() + rightHalfLength + 1, rightSegments);			
 			
-			/* shift all cuts up after cut that was divided */
-			cuts.add(new CutImpl(0, 0, new ArrayList<Segment>())); /* filler cut, to increase size */
-			cuts.add(new CutImpl(0, 0, new ArrayList<Segment>())); /* filler cut, to increase size */
-			for (i = cuts.size() - 1; i > cutToDivideIndex + 1; i--) {
-				cuts.set(i, cuts.get(i - 2));
-				cuts.get(i).setFrom(cuts.get(i).getFrom() + cutToInsert.getLength() + 1);
-				cuts.get(i).setTo(cuts.get(i).getTo() + cutToInsert.getLength() + 1);
-			}
-			
-			/* finally set all three cuts to the newly created ones */
-			cuts.set(cutToDivideIndex, leftCut);
-			cuts.set(cutToDivideIndex + 1, cutToInsert);
-			cuts.set(cutToDivideIndex + 2, rightCut);
+			/* the later cuts need no shifting, their position follows from the cuts before them */
+			this.commit(this.cuts.set(cutToDivideIndex, leftCut)
+								 .insert(cutToDivideIndex + 1, cutToInsert)
+								 .insert(cutToDivideIndex + 2, rightCut));
 		} else {
 			if (at < 0) {
 				cutToInsert = generateCutFromSelection(from, to, 0);
 				
-				/* shift all cuts up by one */
-				cuts.add(new CutImpl(0, 0, new ArrayList<Segment>())); // filler cut, to increase size
-				for (i = cuts.size() - 1; i > 0; i--) {
-					cuts.set(i, cuts.get(i - 1));
-					cuts.get(i).setFrom(cuts.get(i).getFrom() + cutToInsert.getLength() + 1);
-					cuts.get(i).setTo(cuts.get(i).getTo() + cutToInsert.getLength() + 1);
-				}
-				
-				cuts.set(0, cutToInsert);				
+				this.commit(this.cuts.insert(0, cutToInsert));
 			} else {
 				cutToInsert = generateCutFromSelection(from, to, at);
 				
-				cuts.add(cutToInsert);
+				this.commit(this.cuts.insert(this.cuts.size(), cutToInsert));
 			}
 		}
 	}
 	
 	@Override
 	public void deleteSelection(int from, int to) {
+		/* the deleted segments are kept as the copy, just once */
 		previousCopy.clear();
-		previousCopy.addAll(this.generateCutFromSelection(from, to, 0).getSegments());
+		this.generateCutFromSelection(from, to, 0);
 		
 		int i;
-		int selectionLength = to - from + 1; // plus one because algebraic subtraction forgets about one ms index
+		int selectionLength = to - from + 1; // plus one because algebraic subtraction forgets about one frame index
 
-		int firstCutToDivideIndex = 0;
-		Optional<Cut> firstCutToDivide = Optional.empty();
-		
-		int secondCutToDivideIndex = 0;
-		Optional<Cut> secondCutToDivide = Optional.empty();
+		Optional<Cut> leftCut = Optional.empty();
+		Optional<Cut> rightCut = Optional.empty();
 		
 		int segmentCounter;
 		int newFirstCutLength = 0;
@@ -254,102 +325,68 @@ public class ModifiableSongImpl extends ModifiableSongDecorator implements Modif
 		ArrayList<Segment> leftSegments = new ArrayList<>();
 		ArrayList<Segment> rightSegments = new ArrayList<>();
 		
-		from = from - 1; // the actual "from" ms is getting cut
-		to = to + 1; // as is the actual "to" ms		
+		from = from - 1; // the actual "from" frame is getting cut
+		to = to + 1; // as is the actual "to" frame		
 		
-		for (i = 0; i < cuts.size(); i++) {
-			if (cuts.get(i).getFrom() <= from && cuts.get(i).getTo() >= from) {
-				firstCutToDivideIndex = i;
-				firstCutToDivide = Optional.of(cuts.get(firstCutToDivideIndex));
-			}
-		}
+		final int firstCutToDivideIndex = this.cuts.indexAt(from);
+		final int secondCutToDivideIndex = this.cuts.indexAt(to);
 		
-		if (firstCutToDivide.isPresent()) {
-			newFirstCutLength = from - firstCutToDivide.get().getFrom();
+		if (firstCutToDivideIndex >= 0) {
+			Cut firstCutToDivide = this.cuts.get(firstCutToDivideIndex);
 			
-			i = 0;
-			segmentCounter = 0;
+			newFirstCutLength = from - firstCutToDivide.getFrom();
 			
-			while (segmentCounter + (firstCutToDivide.get().getSegment(i).getLength()) < newFirstCutLength) {
-				leftSegments.add(new SegmentImpl(firstCutToDivide.get().getSegment(i).getFrom(),
-								                 firstCutToDivide.get().getSegment(i).getTo()));				
-				segmentCounter += (firstCutToDivide.get().getSegment(i).getLength() + 1);
-				i++;
-			}
+			i = CutTree.findSegment(firstCutToDivide, newFirstCutLength, 1);
+			segmentCounter = firstCutToDivide.getSegmentOffset(i) + i;
+			leftSegments.addAll(firstCutToDivide.getSegments().subList(0, i));
 			
-			leftSegments.add(new SegmentImpl(firstCutToDivide.get().getSegment(i).getFrom(),
-							 firstCutToDivide.get().getSegment(i).getFrom() + (newFirstCutLength - segmentCounter)));			
-		}
-		
-		for (i = 0; i < cuts.size(); i++) {
-			if (cuts.get(i).getFrom() <= to && cuts.get(i).getTo() >= to) {
-				secondCutToDivideIndex = i;
-				secondCutToDivide = Optional.of(cuts.get(secondCutToDivideIndex));
-			}
-		}
-		
-		if (secondCutToDivide.isPresent()) {
-			newSecondCutLength = to - secondCutToDivide.get().getFrom(); // length of part being cut away			
+			leftSegments.add(new SegmentImpl(firstCutToDivide.getSegmentFrom(i),
+							 firstCutToDivide.getSegmentFrom(i) + (newFirstCutLength - segmentCounter)));
 			
-			i = 0;
-			segmentCounter = 0;
+			leftCut = Optional.of(new CutImpl(firstCutToDivide.getFrom(), firstCutToDivide.getFrom() + newFirstCutLength, leftSegments));
 			
-			while (segmentCounter + (secondCutToDivide.get().getSegment(i).getLength()) < newSecondCutLength) {				
-				segmentCounter += (secondCutToDivide.get().getSegment(i).getLength() + 1);
-				i++;
-			}
+			// the cut kept on the right will begin right where the removed selection began
+			secondCutFrom = from + 1;
+		}
+		
+		if (secondCutToDivideIndex >= 0) {
+			Cut secondCutToDivide = this.cuts.get(secondCutToDivideIndex);
 			
-			rightSegments.add(new SegmentImpl(secondCutToDivide.get().getSegment(i).getFrom() + (newSecondCutLength - segmentCounter), secondCutToDivide.get().getSegment(i).getTo()));
+			newSecondCutLength = to - secondCutToDivide.getFrom(); // length of part being cut away			
 			
-			for (i++; i < secondCutToDivide.get().getSegments().size(); i++) {
-				rightSegments.add(new SegmentImpl(secondCutToDivide.get().getSegment(i).getFrom(), secondCutToDivide.get().getSegment(i).getTo()));
-			}
+			i = CutTree.findSegment(secondCutToDivide, newSecondCutLength, 1);
+			segmentCounter = secondCutToDivide.getSegmentOffset(i) + i;
 			
-			// remove all and any cuts between the two cuts
-			for (i = secondCutToDivideIndex - 1; i > firstCutToDivideIndex; i--) {
-				cuts.remove(i);
-			}
+			rightSegments.add(new SegmentImpl(secondCutToDivide.getSegmentFrom(i) + (newSecondCutLength - segmentCounter), secondCutToDivide.getSegmentTo(i)));
+			rightSegments.addAll(secondCutToDivide.getSegments().subList(i + 1, secondCutToDivide.getSegmentCount()));
 			
-			// set new cuts only after building the new ones
-			if (firstCutToDivideIndex == secondCutToDivideIndex) {
-				cuts.add(new CutImpl(0, 0, new ArrayList<Segment>())); // filler cut, to increase size
-			
-				// shift actual cuts down to account that single cut will become two cuts
-				for (i = cuts.size() - 1; i > firstCutToDivideIndex + 1; i--) {
-					cuts.set(i, cuts.get(i - 1));					
-				}
-			}
-				
-			// particular logic dependant on whether or not first and second cut to divide are the same or not, and whether or not first cut exists
-			if (firstCutToDivide.isPresent()) {
-				secondCutFrom = (firstCutToDivideIndex != secondCutToDivideIndex) ? secondCutToDivide.get().getFrom() - ((selectionLength) - (to - secondCutToDivide.get().getFrom())) : firstCutToDivide.get().getFrom() + newFirstCutLength + 1;
-			} else {
-				secondCutFrom = 0;
-			}
+			rightCut = Optional.of(new CutImpl(secondCutFrom, secondCutToDivide.getTo() - selectionLength, rightSegments));
 		}
 		
-		if (firstCutToDivide.isPresent()) {
-			cuts.set(firstCutToDivideIndex, new CutImpl(firstCutToDivide.get().getFrom(), firstCutToDivide.get().getFrom() + newFirstCutLength, leftSegments));
-		} else {
-			cuts.remove(firstCutToDivideIndex);
-			firstCutToDivideIndex--;
+		// remove all cuts touched by the selection, from the first to divide to the second to divide
+		final int firstToRemove = firstCutToDivideIndex >= 0 ? firstCutToDivideIndex : 0;
+		final int lastToRemove = secondCutToDivideIndex >= 0 ? secondCutToDivideIndex : this.cuts.size() - 1;
+		CutTree modifiedCuts = this.cuts;
+		
+		for (i = lastToRemove; i >= firstToRemove; i--) {
+			modifiedCuts = modifiedCuts.remove(i);
+		}
+		
+		// and put back what is left of them, later cuts are shifted down implicitly
+		if (rightCut.isPresent()) {
+			modifiedCuts = modifiedCuts.insert(firstToRemove, rightCut.get());
 		}
 		
-		if (secondCutToDivide.isPresent()) {
-			cuts.set(firstCutToDivideIndex + 1, new CutImpl(secondCutFrom, secondCutToDivide.get().getTo() - selectionLength, rightSegments));			
+		if (leftCut.isPresent()) {
+			modifiedCuts = modifiedCuts.insert(firstToRemove, leftCut.get());
 		}
 		
-		// shift cut from's and to's down to account for the gap
-		for (i = firstCutToDivideIndex + 2; i < cuts.size(); i++) {
-			cuts.get(i).setFrom(cuts.get(i).getFrom() - selectionLength);
-			cuts.get(i).setTo(cuts.get(i).getTo() - selectionLength);
-		}		
+		this.commit(modifiedCuts);
 	}
 	
 	@Override
 	public boolean isMaxResolution(int from, int to, int samples) {	
-		float[] leftChannel = this.songSample.getChannel(AudioSample.LEFT);
-		int sampleSize = (int) ((leftChannel.length * (float) ((float) this.getModifiedLength() / (float) this.getLength())) / (float) samples);
+		int sampleSize = this.getModifiedLength() / samples;
 		
 		if (sampleSize <= 1) {
 			return true;
@@ -365,97 +402,18 @@ public class ModifiableSongImpl extends ModifiableSongDecorator implements Modif
 	public List<SimpleSampleInfo> getSimpleWaveform(int from, int to, int samples) throws IllegalArgumentException {
 		if (this.isMaxResolution(from, to, samples)) {
 			List<SimpleSampleInfo> waveformValues = new ArrayList<SimpleSampleInfo>();
-				
-			float lengthOfChunks;
-			
-			float[] rightChannel = this.songSample.getChannel(AudioSample.RIGHT);
-			float[] leftChannel = this.songSample.getChannel(AudioSample.LEFT);
-			
-			int sampleSize = 1;
-	
-			float[] samplesLeft = new float[sampleSize];
-			float[] samplesRight = new float[sampleSize];			
-	
-			int totalChunks = (leftChannel.length / sampleSize) + 1;			
-			
-			int startCutIndex = 0;
-			int endCutIndex = 0;
-			int startSegmentIndex = -1;
-			int startSegmentOffset = 0;
-			int endSegmentIndex = -1;
-			int endSegmentLength = 0;
-			int currentOffset;	/* used to track at which point in cut we are */
-			
-			lengthOfChunks = (float) this.getLength() / (float) totalChunks;
-			
-			for (int i = 0; i < cuts.size(); i++) {
-				if (cuts.get(i).getFrom() <= from && cuts.get(i).getTo() >= from) {
-					startCutIndex = i;
-				}
-			}
-			
-			int startCutOffset = from - cuts.get(startCutIndex).getFrom();
-			currentOffset = 0;
-			for (int i = 0; startSegmentIndex == -1; i++) {
-				if (currentOffset + (cuts.get(startCutIndex).getSegment(i).getLength()) > startCutOffset) {
-					startSegmentIndex = i;
-					startSegmentOffset = startCutOffset - currentOffset;
-				}
-				
-				currentOffset += cuts.get(startCutIndex).getSegment(i).getLength();
-			}
-			
-			for (int i = 0; i < cuts.size(); i++) {
-				if (cuts.get(i).getFrom() <= to && cuts.get(i).getTo() >= to) {
-					endCutIndex = i;
-				}
-			}
-			
-			int endCutOffset = to - cuts.get(endCutIndex).getFrom();
-			currentOffset = 0;
-			for (int i = 0; endSegmentIndex == -1; i++) {
-				if (currentOffset + (cuts.get(endCutIndex).getSegment(i).getLength()) > startCutOffset) {
-					endSegmentIndex = i;
-					endSegmentLength = endCutOffset - currentOffset;
-				}
-				
-				currentOffset += cuts.get(endCutIndex).getSegment(i).getLength();
-			}
+			float[] rightChannel = new float[EXPORT_FRAMES];
+			float[] leftChannel = new float[EXPORT_FRAMES];
 			
-			int i = startCutIndex;
-			int j = startSegmentIndex;
-	
-			while (i < endCutIndex || (i == endCutIndex && j <= endSegmentIndex)) {	
-				int segmentFrom = (i == startCutIndex && j == startSegmentIndex) ? startSegmentOffset : this.cuts.get(i).getSegment(j).getFrom();
-				int segmentTo = (i == endCutIndex && j == endSegmentIndex) ? this.cuts.get(i).getSegment(j).getFrom() + endSegmentLength : this.cuts.get(i).getSegment(j).getTo();
-				
-				for (int chunkIdx = (int) Math.floor(segmentFrom / lengthOfChunks); chunkIdx < (int) Math.floor(segmentTo / lengthOfChunks); ++chunkIdx) {
-					int chunkStartIndex = chunkIdx * sampleSize;
-					int chunkSize = Math.min(leftChannel.length - chunkStartIndex, sampleSize);
-					
-					System.arraycopy(leftChannel, chunkStartIndex, samplesLeft, 0, chunkSize);
-					System.arraycopy(rightChannel, chunkStartIndex, samplesRight, 0, chunkSize);
+			this.cuts.walk(from, to, (position, origin, frames) -> {
+				for (int k = 0; k < frames; k += EXPORT_FRAMES) {
+					int read = this.source.read(origin + k, leftChannel, rightChannel, 0, Math.min(EXPORT_FRAMES, frames - k));
 					
-					if (chunkSize < sampleSize) {
-						for (int k = chunkSize; k < samplesLeft.length - 1; k++) {
-							samplesLeft[k] = (float) 0.0;
-						}
-						
-						for (int k = chunkSize; k < samplesRight.length - 1; k++) {
-							samplesRight[k] = (float) 0.0;
-						}
+					for (int i = 0; i < read; i++) {
+						waveformValues.add(new SimpleSampleInfoImpl(leftChannel[i], rightChannel[i]));
 					}
-	
-					waveformValues.add(new SimpleSampleInfoImpl(samplesLeft[0], samplesRight[0]));					
-				}
-				
-				if (j + 1 >= this.cuts.get(i).getSegments().size()) {
-					j = 0;
-					i++;
-				} else {
-					j++;
 				}
-			}
+			});
 	
 			return waveformValues;
 		} else {
@@ -464,295 +422,143 @@ public class ModifiableSongImpl extends ModifiableSongDecorator implements Modif
 	}	
 	
 	@Override
-	// Example code taken from minim repository (Minim/examples/Analysis/offlineAnalysis/offlineAnalysis.pde)
 	public List<GroupedSampleInfo> getAggregatedWaveform(int from, int to, int samples) {
-		List<GroupedSampleInfo> waveformValues = new ArrayList<GroupedSampleInfo>();
-			
-		float lengthOfChunks;
-		
-		float[] rightChannel = this.songSample.getChannel(AudioSample.RIGHT);
-		float[] leftChannel = this.songSample.getChannel(AudioSample.LEFT);
+		GroupedWaveform waveform = new GroupedWaveform(samples);
+		List<GroupedSampleInfo> waveformValues = new ArrayList<GroupedSampleInfo>(samples);
 		
-		int sampleSize = (int) ((leftChannel.length * (float) ((float) this.getModifiedLength() / (float) this.getLength())) / (float) samples);
-		if (sampleSize < 1) {
-			sampleSize = 1;
+		this.getAggregatedWaveform(from, to, samples, waveform);
+		for (int i = 0; i < waveform.getSize(); i++) {
+			waveformValues.add(waveform.get(i));
 		}
-		float[] samplesLeft = new float[sampleSize];
-		float[] samplesRight = new float[sampleSize];			
-
-		int totalChunks = (leftChannel.length / sampleSize) + 1;
 		
-//		System.out.println(leftChannel.length);
-		  
-		lengthOfChunks = (float) this.getLength() / (float) totalChunks;
+		return waveformValues;
+	}
+	
+	@Override
+	// Example code taken from minim repository (Minim/examples/Analysis/offlineAnalysis/offlineAnalysis.pde)
+	public void getAggregatedWaveform(int from, int to, int samples, GroupedWaveform waveform) {
+		int sampleSize = Math.max(this.getModifiedLength() / samples, 1);
+		WaveformPyramid currentPyramid = this.pyramid;
 		
-		int startCutIndex = 0;
-		int endCutIndex = 0;
-		int startSegmentIndex = -1;
-		int startSegmentOffset = 0;
-		int endSegmentIndex = -1;
-		int endSegmentLength = 0;
-		int currentOffset; // used to track at which point in cut we are
+		waveform.reset(samples);
 		
-		for (int i = 0; i < cuts.size(); i++) {
-			if (cuts.get(i).getFrom() <= from && cuts.get(i).getTo() >= from) {
-				startCutIndex = i;
+		this.cuts.walk(from, to, (position, origin, frames) -> {
+			for (int chunkIdx = origin / sampleSize; chunkIdx < (origin + frames) / sampleSize; ++chunkIdx) {
+				waveform.addGroup(chunkIdx * sampleSize);
 			}
-		}
-		
-		int startCutOffset = from - cuts.get(startCutIndex).getFrom();
-		currentOffset = 0;
-		for (int i = 0; startSegmentIndex == -1; i++) {
-			if (currentOffset + (cuts.get(startCutIndex).getSegment(i).getLength()) > startCutOffset) {
-				startSegmentIndex = i;
-				startSegmentOffset = startCutOffset - currentOffset;
-			}
-			
-			currentOffset += cuts.get(startCutIndex).getSegment(i).getLength();
-		}
+		});
+
+		/*
+		 * every chunk is summarised independently into its own index, so runs
+		 * of chunks are spread across the common ForkJoin pool, each run with
+		 * its own scratch values, and the result does not depend on the
+		 * scheduling. Runs shorter than GROUPS_PER_RUN cost more to hand over
+		 * to another thread than to summarise, so small waveforms get fewer
+		 * runs, down to a single one on the calling thread. A group takes
+		 * 0.2-0.7 us to summarise and waking an idle worker of the pool about
+		 * 20 us, so a run of 256 groups is worth a few hand overs; the
+		 * threshold can be tuned with -Djwave.waveform.groupsPerRun.
+		 */
+		int groups = waveform.getSize();
+		int runs = Math.max(Math.min(groups / GROUPS_PER_RUN, AGGREGATION_RUNS), 1);
+		float[][] scratch = waveform.getScratch(runs);
 		
-		for (int i = 0; i < cuts.size(); i++) {
-			if (cuts.get(i).getFrom() <= to && cuts.get(i).getTo() >= to) {
-				endCutIndex = i;
-			}
+		if (runs == 1) {
+			summarise(currentPyramid, waveform, 0, groups, sampleSize, scratch[0]);
+		} else {
+			IntStream.range(0, runs).parallel().forEach(run -> 
+				summarise(currentPyramid, waveform, run * groups / runs, (run + 1) * groups / runs, sampleSize, scratch[run]));
 		}
 		
-		int endCutOffset = to - cuts.get(endCutIndex).getFrom();
-		currentOffset = 0;
-		for (int i = 0; endSegmentIndex == -1; i++) {
-			if (currentOffset + (cuts.get(endCutIndex).getSegment(i).getLength()) > startCutOffset) {
-				endSegmentIndex = i;
-				endSegmentLength = endCutOffset - currentOffset;
-			}
-			
-			currentOffset += cuts.get(endCutIndex).getSegment(i).getLength();
+		waveform.toRMS();
+	}
+	
+	/*
+	 * Summarises the groups from (inclusive) to (exclusive) of the given
+	 * waveform, accumulating every one of them in the given values.
+	 */
+	private static void summarise(final WaveformPyramid pyramid, final GroupedWaveform waveform, 
+								  final int from, final int to, final int sampleSize, final float[] values) {
+		for (int group = from; group < to; group++) {
+			int chunkStartIndex = waveform.getStart(group);
+			
+			/*
+			 * the pyramid summarises the whole chunk combining a few
+			 * precomputed blocks, a chunk past the end only has the frames
+			 * before it
+			 */
+			WaveformPyramid.clear(values);
+			waveform.set(group, values, pyramid.accumulate(chunkStartIndex, chunkStartIndex + sampleSize, values));
 		}
+	}
+	
+	@Override
+	public List<WaveformTile> getWaveformTiles(int from, int to, int pixels) {
+		return this.tiles.getTiles(this.cuts, this.pyramid, from, to, pixels);
+	}
+	
+	@Override
+	public void exportSong(String exportPath) throws IOException {
+		float[] rightChannel = new float[EXPORT_FRAMES];
+		float[] leftChannel = new float[EXPORT_FRAMES];
+		CutTree exported = this.cuts;
 		
-		int i = startCutIndex;
-		int j = startSegmentIndex;
-
-		while (i < endCutIndex || (i == endCutIndex && j <= endSegmentIndex)) {	
-			int segmentFrom = (i == startCutIndex && j == startSegmentIndex) ? startSegmentOffset : this.cuts.get(i).getSegment(j).getFrom();
-			int segmentTo = (i == endCutIndex && j == endSegmentIndex) ? this.cuts.get(i).getSegment(j).getFrom() + endSegmentLength : this.cuts.get(i).getSegment(j).getTo();
-			
-			for (int chunkIdx = (int) Math.floor(segmentFrom / lengthOfChunks); chunkIdx < (int) Math.floor(segmentTo / lengthOfChunks); ++chunkIdx) {
-				int chunkStartIndex = chunkIdx * sampleSize;
-				int chunkSize = Math.min(leftChannel.length - chunkStartIndex, sampleSize);
-				
-				System.arraycopy(leftChannel, chunkStartIndex, samplesLeft, 0, chunkSize);
-				System.arraycopy(rightChannel, chunkStartIndex, samplesRight, 0, chunkSize);
-				
-				if (chunkSize < sampleSize) {
-					for (int k = chunkSize; k < samplesLeft.length - 1; k++) {
-						samplesLeft[k] = (float) 0.0;
-					}
+		/*
+		 * every piece of the song is streamed from its source to the file,
+		 * so that only a few blocks of the song are held in memory
+		 */
+		try (WaveFileWriter writer = new WaveFileWriter(exportPath, this.source.getChannels(), (int) this.sampleRate)) {
+			exported.walk(0, exported.getFrames(), (position, origin, frames) -> {
+				for (int k = 0; k < frames; k += EXPORT_FRAMES) {
+					int count = Math.min(EXPORT_FRAMES, frames - k);
+					int read = this.source.read(origin + k, leftChannel, rightChannel, 0, count);
 					
-					for (int k = chunkSize; k < samplesRight.length - 1; k++) {
-						samplesRight[k] = (float) 0.0;
+					/* frames past the end of the original song are exported as silence */
+					try {
+						writer.write(leftChannel, rightChannel, 0, read);
+						writer.write(leftChannel, rightChannel, EXPORT_FRAMES, EXPORT_FRAMES + count - read);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
 					}
 				}
-
-				/*
-				 * first we do the left channel
-				 */
-				float leftHighest = 0;
-				float leftLowest = 0;
-				float leftQuadraticTotalPositive = 0;
-				float leftQuadraticTotalNegative = 0;
-				
-				for (int k = 0; k < samplesLeft.length; k++) {
-					if (samplesLeft[k] > 0) {
-						leftQuadraticTotalPositive += Math.pow(samplesLeft[k], 2);
-						
-						if (samplesLeft[k] > leftHighest) {
-							leftHighest = samplesLeft[k];
-						}							
-					} else if (samplesLeft[k] < 0) {
-						leftQuadraticTotalNegative += Math.pow(samplesLeft[k], 2);
-						
-						if (samplesLeft[k] < leftLowest) {
-							leftLowest = samplesLeft[k];
-						}
-					}
-				}				
-				
-				/*
-				 * then we do the right channel
-				 */
-				float rightHighest = 0;
-				float rightLowest = 0;
-				float rightQuadraticTotalPositive = 0;
-				float rightQuadraticTotalNegative = 0;
-				
-				for (int k = 0; k < samplesRight.length; k++) {
-					if (samplesRight[k] > 0) {
-						rightQuadraticTotalPositive += Math.pow(samplesRight[k], 2);
-						
-						if (samplesRight[k] > rightHighest) {
-							rightHighest = samplesRight[k];
-						}							
-					} else if (samplesRight[k] < 0) {
-						rightQuadraticTotalNegative += Math.pow(samplesRight[k], 2);
-						
-						if (samplesRight[k] < rightLowest) {
-							rightLowest = samplesRight[k];
-						}
-					}
-				}
-				
-				waveformValues.add(new GroupedSampleInfoImpl(leftHighest, leftLowest, (float) Math.sqrt(leftQuadraticTotalPositive * ((float) 1 / (float) samplesLeft.length)), -1 * (float) Math.sqrt(leftQuadraticTotalNegative * ((float) 1 / (float) samplesLeft.length)), rightHighest, rightLowest, (float) Math.sqrt(rightQuadraticTotalPositive * ((float) 1 / (float) samplesRight.length)), -1 * (float) Math.sqrt(rightQuadraticTotalNegative * ((float) 1 / (float) samplesRight.length))));					
-			}
-			
-			if (j + 1 >= this.cuts.get(i).getSegments().size()) {
-				j = 0;
-				i++;
-			} else {
-				j++;
-			}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
 		}
-
-		return waveformValues;
-	}
+	}	
 	
 	@Override
-	/* https://github.com/ddf/Minim/blob/master/src/ddf/minim/javasound/JSBufferedSampleRecorder.java */
-	public void exportSong(String exportPath) {
-		String exportName = exportPath;
-		AudioFileFormat.Type type = AudioFileFormat.Type.WAVE;
-		AudioFormat format = songSample.getFormat();
-		
-		ArrayList<FloatBuffer> buffers;
-		float[][] spectra;
-		int bufferSize = 2048;
-		FloatBuffer left;
-		FloatBuffer right;		
-		
-		buffers = new ArrayList<FloatBuffer>(20);
-		left = FloatBuffer.allocate(bufferSize * 10);
-		if (format.getChannels() == Minim.STEREO) {
-		  right = FloatBuffer.allocate(bufferSize * 10);
-		} else {
-		  right = null;
-		}		
-		
-		float[] rightChannel = songSample.getChannel(AudioSample.RIGHT);
-		float[] leftChannel = songSample.getChannel(AudioSample.LEFT);
-		
-		int fftSize = 1024;
-		float[] fftSamplesLeft = new float[fftSize];
-		float[] fftSamplesRight = new float[fftSize];
-		  
-		FFT fft = new FFT(fftSize, songSample.sampleRate());
-		  
-		int totalChunks = (leftChannel.length / fftSize) + 1;
-		
-		spectra = new float[totalChunks][fftSize / 2];
-		
-		for (int chunkIdx = 0; chunkIdx < totalChunks; ++chunkIdx) {
-			int chunkStartIndex = chunkIdx * fftSize;
-			int chunkSize = Math.min(leftChannel.length - chunkStartIndex, fftSize);
-			
-			System.arraycopy(leftChannel, chunkStartIndex, fftSamplesLeft, 0, chunkSize);
-			System.arraycopy(rightChannel, chunkStartIndex, fftSamplesRight, 0, chunkSize);
-			
-			if (chunkSize < fftSize) {
-				for (int i = chunkSize; i < fftSamplesLeft.length - 1; i++) {
-					fftSamplesLeft[i] = (float) 0.0;
-				}
-				
-				for (int i = chunkSize; i < fftSamplesRight.length - 1; i++) {
-					fftSamplesRight[i] = (float) 0.0;
-				}
-			}
-			
-			fft.forward(fftSamplesLeft);
-			fft.forward(fftSamplesRight);
-			
-			for (int i = 0; i < 512; ++i) {				
-				spectra[chunkIdx][i] = fft.getBand(i);
-			}
-			
-			left.put(fftSamplesLeft);
-			right.put(fftSamplesRight);
-			
-			if (!left.hasRemaining()) {
-				buffers.add(left);
-				buffers.add(right);
-				left = FloatBuffer.allocate(left.capacity());
-				right = FloatBuffer.allocate(right.capacity());				
-			}
-		}
-		
-		float lengthOfBuffers = (float) this.getLength() / (float) buffers.size();
-		int channels = format.getChannels();
-		int length = left.capacity();
-		int totalSamples = (((int) (this.cuts.get(this.cuts.size() - 1).getTo() / lengthOfBuffers)) / channels) * length;
-		
-		FloatSampleBuffer fsb = new FloatSampleBuffer(channels, totalSamples, format.getSampleRate());
-		
-		int l = 0;
-		for (int i = 0; i < this.cuts.size(); i++) {
-			for (int j = 0; j < this.cuts.get(i).getSegments().size(); j++) {
-				int startIndex = (int) ((this.cuts.get(i).getSegment(j).getFrom()) / lengthOfBuffers);
-				
-				if (startIndex % 2 != 0) { // to correctly set as there are two channels
-					startIndex++;
-				}
-				
-				for (int k = startIndex; k < (int) ((cuts.get(i).getSegment(j).getTo()) / lengthOfBuffers) - 1; k += 2) {
-					int offset = (l / 2) * length;
-					FloatBuffer fbL = (FloatBuffer) buffers.get(k);
-					FloatBuffer fbR = (FloatBuffer) buffers.get(k + 1);
-					fbL.rewind(); // perche' rewind?
-					fbL.get(fsb.getChannel(0), offset, length); // come fa la get su fbL ad influenzare fsb?				
-					fbR.rewind();
-					fbR.get(fsb.getChannel(1), offset, length);
-					l += 2;
-				}
-			}
+	public void setSpliceFade(final int frames) {
+		if (frames < 0 || frames > MAX_SPLICE_FADE) {
+			throw new IllegalArgumentException();
 		}
 		
-		int sampleFrames = fsb.getByteArrayBufferSize(format) / format.getFrameSize();
-		ByteArrayInputStream bais = new ByteArrayInputStream(fsb.convertToByteArray(format));
-		AudioInputStream ais = new AudioInputStream(bais, format, sampleFrames);
-		
-		if (AudioSystem.isFileTypeSupported(type, ais)) {
-			File out = new File(exportName);
-			
-		    try {
-		      AudioSystem.write(ais, type, out);
-		    } catch (IOException e) {
-		    	System.out.println("AudioRecorder.save: Error attempting to save buffer to " + exportName + "\n" + e.getMessage());
-		    }
-		    
-		    if (out.length() == 0) {
-		    	System.out.println("AudioRecorder.save: Error attempting to save buffer to " + exportName + ", the output file is empty.");
-		    }
-		} else {
-			System.out.println("AudioRecorder.save: Can't write " + type.toString() + " using format " + format.toString() + ".");
-		} 
-			  
-		System.out.println("Song exported.");
-		  
-		songSample.close(); 		
-	}	
+		this.spliceFade = frames;
+	}
+	
+	@Override
+	public PlaybackSource createPlaybackSource() {
+		return new EditListPlayer(this.cuts, this.source.fork(), this.spliceFade);
+	}
 	
 	@Override
 	public List<Cut> getCuts() {
-		return new ArrayList<Cut>(this.cuts);
+		return this.cuts.toList();
 	}
 	
 	@Override
 	public Cut getCut(int i) {
-		return new CutImpl(this.cuts.get(i).getFrom(), this.cuts.get(i).getTo(), this.cuts.get(i).getSegments());
+		return this.cuts.get(i);
 	}
 	
 	@Override
 	public void printAllCuts() {
-		for (int i = 0; i < cuts.size(); i++) {
-			System.out.println("Cut " + i + ": from " + cuts.get(i).getFrom() + "ms to " + cuts.get(i).getTo() + "ms");
-			for (int j = 0; j < cuts.get(i).getSegments().size(); j++) {
-				System.out.println("    		Segment " + j + ": from " + cuts.get(i).getSegment(j).getFrom() + "ms to " + cuts.get(i).getSegment(j).getTo() + "ms");
+		List<Cut> allCuts = this.cuts.toList();
+		
+		for (int i = 0; i < allCuts.size(); i++) {
+			System.out.println("Cut " + i + ": from " + allCuts.get(i).getFrom() + " to " + allCuts.get(i).getTo());
+			for (int j = 0; j < allCuts.get(i).getSegmentCount(); j++) {
+				System.out.println("    		Segment " + j + ": from " + allCuts.get(i).getSegmentFrom(j) + " to " + allCuts.get(i).getSegmentTo(j));
 			}
 		}
 	}
@@ -0,0 +1,73 @@
+package org.jwave.model.editor;
+
+/**
+ * This interface models a source of the decoded audio of a song, which can
+ * be read a few frames at a time from any position, without having to keep
+ * the whole decoded song in memory.
+ *
+ * Samples are read as floats between -1 and 1, mono sources give the same
+ * samples for both channels.
+ *
+ */
+public interface PcmSource extends AutoCloseable {
+    /**
+     * Gets the sample rate of the source, the number of frames in a second.
+     *
+     * @return
+     * 			the sample rate of the source.
+     */
+	float getSampleRate();
+
+    /**
+     * Gets the number of channels of the source.
+     *
+     * @return
+     * 			the number of channels, 1 or 2.
+     */
+	int getChannels();
+
+    /**
+     * Reads frames from the source into the given arrays.
+     *
+     * @param frame
+     * 			position (in frames) of the first frame to read.
+     *
+     * @param left
+     * 			where to put the samples of the left channel.
+     *
+     * @param right
+     * 			where to put the samples of the right channel.
+     *
+     * @param offset
+     * 			position in the arrays of the first frame read.
+     *
+     * @param frames
+     * 			number of frames to read.
+     *
+     * @return
+     * 			the number of frames read, less than the asked ones only if
+     * 			the end of the source has been reached.
+     *
+     * @throws java.io.UncheckedIOException
+     * 			if the song can't be read or decoded.
+     */
+	int read(int frame, float[] left, float[] right, int offset, int frames);
+
+    /**
+     * Opens another reader of the same source, which can be read at the same
+     * time as this one without waiting for it, and has to be closed on its own.
+     *
+     * @return
+     * 			a new reader of the source.
+     *
+     * @throws java.io.UncheckedIOException
+     * 			if the song can't be opened.
+     */
+	PcmSource fork();
+
+    /**
+     * Releases the resources held by the source.
+     */
+	@Override
+	void close();
+}
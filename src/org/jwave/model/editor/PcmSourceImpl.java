@@ -0,0 +1,448 @@
+package org.jwave.model.editor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * A PcmSource decoding the song through JavaSound (and so any installed
+ * decoder, such as the MP3 one) only when its frames are asked for.
+ *
+ * Frames are decoded in blocks of fixed size, and the most recently used
+ * blocks are kept in a cache of bounded size, so the memory used does not
+ * depend on the length of the song. Reading forward goes on decoding from
+ * where the last block ended. Compressed streams can't be rewound, so every
+ * block decoded is also written once to a scratch file, which then works as
+ * a seek index: reading back only reads the file, and never decodes the song
+ * from its beginning again. A couple of streams are kept open, so that two
+ * readers going through the song (say the waveform analysis and an export)
+ * don't make each other reopen it every time.
+ *
+ * Reads are synchronized, so a reader that must not wait for another one,
+ * such as playback, reads from a fork: it shares the scratch file, but has
+ * its own streams, cache and lock.
+ *
+ */
+public final class PcmSourceImpl implements PcmSource {
+	/** Default number of frames in a block. */
+	public static final int DEFAULT_BLOCK_FRAMES = 1 << 16;
+	/** Default maximum number of blocks kept in memory. */
+	public static final int DEFAULT_CACHED_BLOCKS = 32;
+
+	private static final int BYTES_PER_SAMPLE = 2;
+	private static final int MAX_STREAMS = 2;
+	private static final float SAMPLE_SCALE = 32768f;
+
+	private final File file;
+	private final int blockFrames;
+	private final int cachedBlocks;
+	private final Map<Integer, float[][]> blocks;
+	private final List<Cursor> cursors;				/* open streams, least recently used first */
+	private final Spill spill;						/* blocks decoded so far, shared with the forks */
+	private final FileChannel channel;				/* this reader's own channel to the scratch file */
+	private final byte[] bytes;
+	private final ByteBuffer buffer;				/* wraps bytes */
+
+	private AudioFormat format;
+	private boolean closed;
+
+	/**
+	 * Opens a song with the default block size and cache size.
+	 *
+	 * @param path
+	 * 			absolute path of the song.
+	 *
+	 * @throws UncheckedIOException
+	 * 			if the song can't be opened or decoded.
+	 */
+	public PcmSourceImpl(final String path) {
+		this(path, DEFAULT_BLOCK_FRAMES, DEFAULT_CACHED_BLOCKS);
+	}
+
+	/**
+	 * Opens a song, only its header is read.
+	 *
+	 * @param path
+	 * 			absolute path of the song.
+	 *
+	 * @param blockFrames
+	 * 			number of frames decoded at a time.
+	 *
+	 * @param cachedBlocks
+	 * 			maximum number of decoded blocks kept in memory.
+	 *
+	 * @throws UncheckedIOException
+	 * 			if the song can't be opened or decoded.
+	 */
+	public PcmSourceImpl(final String path, final int blockFrames, final int cachedBlocks) {
+		this(new File(path), blockFrames, cachedBlocks, null, null);
+	}
+
+	/*
+	 * Opens a reader of a song, with the scratch file and format of another
+	 * reader, or with its own if they are null.
+	 */
+	private PcmSourceImpl(final File file, final int blockFrames, final int cachedBlocks,
+						  final Spill spill, final AudioFormat format) {
+		if (blockFrames <= 0 || cachedBlocks <= 0) {
+			throw new IllegalArgumentException();
+		}
+
+		this.file = file;
+		this.blockFrames = blockFrames;
+		this.cachedBlocks = cachedBlocks;
+		this.blocks = new LinkedHashMap<Integer, float[][]>(cachedBlocks, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<Integer, float[][]> eldest) {
+				return this.size() > cachedBlocks;
+			}
+		};
+		this.cursors = new ArrayList<>(MAX_STREAMS);
+
+		if (format == null) {
+			this.cursors.add(this.open());
+		} else {
+			this.format = format;
+		}
+		this.bytes = new byte[blockFrames * this.format.getFrameSize()];
+		this.buffer = ByteBuffer.wrap(this.bytes);
+		this.spill = spill == null ? Spill.create() : spill;
+		this.channel = this.spill.open();
+	}
+
+	@Override
+	public float getSampleRate() {
+		return this.format.getSampleRate();
+	}
+
+	@Override
+	public int getChannels() {
+		return Math.min(this.format.getChannels(), 2);
+	}
+
+	@Override
+	public synchronized int read(final int frame, final float[] left, final float[] right,
+								 final int offset, final int frames) {
+		int read = 0;
+
+		while (read < frames && frame + read < this.spill.endFrame) {
+			final int position = frame + read;
+			final float[][] block = this.getBlock(position / this.blockFrames);
+			final int inBlock = position % this.blockFrames;
+			final int count = Math.min(frames - read, block[0].length - inBlock);
+
+			if (count <= 0) {
+				break;
+			}
+
+			System.arraycopy(block[0], inBlock, left, offset + read, count);
+			System.arraycopy(block[1], inBlock, right, offset + read, count);
+			read += count;
+		}
+
+		return read;
+	}
+
+	@Override
+	public PcmSource fork() {
+		this.spill.users.incrementAndGet();
+
+		return new PcmSourceImpl(this.file, this.blockFrames, this.cachedBlocks, this.spill, this.format);
+	}
+
+	@Override
+	public synchronized void close() {
+		if (this.closed) {
+			return;
+		}
+
+		this.closed = true;
+		this.blocks.clear();
+		this.cursors.forEach(Cursor::close);
+		this.cursors.clear();
+		try {
+			this.channel.close();
+		} catch (IOException e) {
+			/* nothing else to release */
+		}
+		this.spill.release();
+	}
+
+	private float[][] getBlock(final int index) {
+		float[][] block = this.blocks.get(index);
+
+		if (block == null) {
+			block = this.decodeBlock(index);
+			this.blocks.put(index, block);
+		}
+
+		return block;
+	}
+
+	/*
+	 * Reads a block from the scratch file if it has been decoded already,
+	 * otherwise decodes it, moving the stream closest to its beginning there
+	 * first.
+	 */
+	private float[][] decodeBlock(final int index) {
+		final long start = (long) index * this.blockFrames;
+		final int frameSize = this.format.getFrameSize();
+
+		try {
+			if (this.spill.load(this.channel, index, this.buffer)) {
+				return this.toBlock(this.buffer.position() / frameSize);
+			}
+
+			final Cursor cursor = this.getCursor(start);
+
+			/* streams move a whole block at a time, the blocks skipped are stored as well */
+			while (cursor.frame < start) {
+				if (this.decodeNext(cursor) < this.blockFrames) {
+					break;
+				}
+			}
+
+			return this.toBlock(cursor.frame == start ? this.decodeNext(cursor) : 0);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/*
+	 * Decodes the block a stream has reached into the byte buffer, and stores
+	 * it in the scratch file if it is the next one missing there.
+	 */
+	private int decodeNext(final Cursor cursor) throws IOException {
+		final int index = (int) (cursor.frame / this.blockFrames);
+		final int frames = this.readFrames(cursor, this.blockFrames);
+
+		this.spill.store(this.channel, index, this.buffer, frames * this.format.getFrameSize());
+
+		return frames;
+	}
+
+	/*
+	 * Converts the given number of frames in the byte buffer to a block.
+	 */
+	private float[][] toBlock(final int frames) {
+		final int frameSize = this.format.getFrameSize();
+		final float[][] block = new float[2][frames];
+
+		for (int i = 0; i < frames; i++) {
+			block[0][i] = toFloat(this.bytes, i * frameSize);
+			block[1][i] = this.format.getChannels() > 1 ? toFloat(this.bytes, i * frameSize + BYTES_PER_SAMPLE)
+														 : block[0][i];
+		}
+
+		return block;
+	}
+
+	/*
+	 * Gets the open stream that is the closest before the given frame, opening
+	 * a new one (or reopening the least recently used one) if none is before it.
+	 */
+	private Cursor getCursor(final long frame) {
+		Cursor best = null;
+
+		for (final Cursor cursor : this.cursors) {
+			if (cursor.frame <= frame && (best == null || cursor.frame > best.frame)) {
+				best = cursor;
+			}
+		}
+
+		if (best == null) {
+			if (this.cursors.size() >= MAX_STREAMS) {
+				this.cursors.remove(0).close();
+			}
+			best = this.open();
+		} else {
+			this.cursors.remove(best);
+		}
+		this.cursors.add(best);
+
+		return best;
+	}
+
+	/*
+	 * Reads the given number of frames from a stream into the byte buffer,
+	 * remembering where the song ends if it is reached.
+	 */
+	private int readFrames(final Cursor cursor, final int frames) throws IOException {
+		final int frameSize = this.format.getFrameSize();
+		final int wanted = frames * frameSize;
+		int total = 0;
+
+		while (total < wanted) {
+			final int count = cursor.stream.read(this.bytes, total, wanted - total);
+
+			if (count < 0) {
+				break;
+			}
+			total += count;
+		}
+
+		final int read = total / frameSize;
+
+		cursor.frame += read;
+		if (read < frames) {
+			this.spill.endFrame = cursor.frame;
+		}
+
+		return read;
+	}
+
+	private Cursor open() {
+		try {
+			final AudioInputStream encoded = AudioSystem.getAudioInputStream(this.file);
+			final AudioFormat base = encoded.getFormat();
+			final AudioFormat decoded = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, base.getSampleRate(),
+														8 * BYTES_PER_SAMPLE, base.getChannels(),
+														base.getChannels() * BYTES_PER_SAMPLE, base.getSampleRate(),
+														false);
+			final AudioInputStream stream = base.matches(decoded) ? encoded
+																  : AudioSystem.getAudioInputStream(decoded, encoded);
+
+			this.format = stream.getFormat();
+
+			return new Cursor(stream);
+		} catch (UnsupportedAudioFileException e) {
+			throw new UncheckedIOException(new IOException(e));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static float toFloat(final byte[] bytes, final int index) {
+		return ((short) ((bytes[index + 1] << 8) | (bytes[index] & 0xFF))) / SAMPLE_SCALE;
+	}
+
+	/*
+	 * The blocks decoded so far by any reader of a song, each written once to
+	 * a scratch file at its own place. Every stream decodes from the beginning
+	 * of the song, so the blocks stored are always the first ones, and only
+	 * their number is kept. All the readers decode the same bytes for a block,
+	 * so they can store and load blocks through their own channels with no
+	 * lock. The file is deleted once the last reader is closed.
+	 */
+	private static final class Spill {
+		private final Path path;
+		private final AtomicInteger stored;			/* number of blocks in the file */
+		private final AtomicInteger users;
+
+		private volatile long endFrame;				/* number of frames, once the end has been reached */
+
+		private Spill(final Path path) {
+			this.path = path;
+			this.stored = new AtomicInteger();
+			this.users = new AtomicInteger(1);
+			this.endFrame = Long.MAX_VALUE;
+		}
+
+		private static Spill create() {
+			try {
+				final Path path = Files.createTempFile("jwave", ".pcm");
+
+				path.toFile().deleteOnExit();
+				return new Spill(path);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		private FileChannel open() {
+			try {
+				return FileChannel.open(this.path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		/*
+		 * Reads a block into the buffer, leaving its position after the bytes
+		 * read; returns false if the block has not been stored yet.
+		 */
+		private boolean load(final FileChannel channel, final int index, final ByteBuffer buffer) throws IOException {
+			if (index >= this.stored.get()) {
+				return false;
+			}
+
+			final long start = (long) index * buffer.capacity();
+
+			buffer.clear();
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, start + buffer.position()) < 0) {
+					break;
+				}
+			}
+
+			return true;
+		}
+
+		/*
+		 * Writes the given bytes of the buffer as a block, if it is the next
+		 * one missing from the file.
+		 */
+		private void store(final FileChannel channel, final int index, final ByteBuffer buffer,
+						   final int length) throws IOException {
+			if (index != this.stored.get()) {
+				return;
+			}
+
+			final long start = (long) index * buffer.capacity();
+
+			buffer.clear().limit(length);
+			while (buffer.hasRemaining()) {
+				channel.write(buffer, start + buffer.position());
+			}
+			this.stored.compareAndSet(index, index + 1);
+		}
+
+		private void release() {
+			if (this.users.decrementAndGet() == 0) {
+				try {
+					Files.deleteIfExists(this.path);
+				} catch (IOException e) {
+					/* deleted on exit anyway */
+				}
+			}
+		}
+	}
+
+	/*
+	 * An open stream of the song, with the position it has reached.
+	 */
+	private static final class Cursor {
+		private final AudioInputStream stream;
+		private long frame;
+
+		private Cursor(final AudioInputStream stream) {
+			this.stream = stream;
+			this.frame = 0;
+		}
+
+		private void close() {
+			try {
+				this.stream.close();
+			} catch (IOException e) {
+				/* nothing else to release */
+			}
+		}
+	}
+}
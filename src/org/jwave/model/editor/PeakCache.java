@@ -0,0 +1,202 @@
+package org.jwave.model.editor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+/**
+ * An on-disk cache of the waveform pyramids of the songs opened in the editor,
+ * so that their waveform can be shown without decoding them again.
+ *
+ * Every song gets a ".peaks" file in the JWavePeaks directory, next to the
+ * saved playlists, or in the directory named by the jwave.peaks.dir system
+ * property if it is set. The file begins with the key of the song (path, size, last
+ * modification time and a hash of its content), followed by its sample rate
+ * and all the blocks of its pyramid, which are read in one go when loaded.
+ *
+ * Cache files are never left memory mapped: a song shown from its cache
+ * stores it again once analysed, and a mapped file can't be replaced on
+ * Windows.
+ *
+ */
+final class PeakCache {
+	private static final String SAVE_DIR_NAME = "JWavePeaks";
+	private static final String EXTENSION = ".peaks";
+	private static final String HOME = "user.home";
+	private static final String DIR_PROPERTY = "jwave.peaks.dir";
+
+	private static final int MAGIC = 0x4A57504B;		/* "JWPK" */
+	private static final int VERSION = 2;
+	private static final int HASHED_BYTES = 64 * 1024;	/* hashed at both ends of the song */
+
+	private final float sampleRate;
+	private final WaveformPyramid pyramid;
+
+	private PeakCache(final float sampleRate, final WaveformPyramid pyramid) {
+		this.sampleRate = sampleRate;
+		this.pyramid = pyramid;
+	}
+
+    /**
+     * Gets the sample rate of the cached song.
+     *
+     * @return
+     * 			the sample rate of the song.
+     */
+	float getSampleRate() {
+		return this.sampleRate;
+	}
+
+    /**
+     * Gets the pyramid of the cached song, which has no raw samples.
+     *
+     * @return
+     * 			the cached pyramid.
+     */
+	WaveformPyramid getPyramid() {
+		return this.pyramid;
+	}
+
+    /**
+     * Loads the cached pyramid of a song, if one has been stored for the song
+     * as it currently is.
+     *
+     * @param songPath
+     * 			absolute path of the song.
+     *
+     * @return
+     * 			the cached sample rate and pyramid, or nothing if there is no valid
+     * 			cache for the song.
+     */
+	static Optional<PeakCache> load(final String songPath) {
+		final File song = new File(songPath);
+
+		try (FileChannel channel = FileChannel.open(cacheFile(songPath).toPath(), StandardOpenOption.READ)) {
+			final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(channel.size(), Integer.MAX_VALUE));
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer) < 0) {
+					return Optional.empty();
+				}
+			}
+			buffer.flip();
+
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != song.length()
+				|| buffer.getLong() != song.lastModified() || buffer.getLong() != contentHash(song)) {
+				return Optional.empty();
+			}
+
+			final byte[] path = new byte[buffer.getInt()];
+			buffer.get(path);
+			if (!songPath.equals(new String(path, StandardCharsets.UTF_8))) {
+				return Optional.empty();
+			}
+
+			buffer.position(align(buffer.position()));
+			final float sampleRate = buffer.getFloat();
+			final int samples = buffer.getInt();
+			final FloatBuffer data = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+
+			return Optional.of(new PeakCache(sampleRate, new WaveformPyramid(samples, data)));
+		} catch (IOException | RuntimeException e) {
+			/* missing or damaged caches are just computed again */
+			return Optional.empty();
+		}
+	}
+
+    /**
+     * Stores the pyramid of a song, replacing any previous cache of it.
+     * Failures are only logged, as the cache can always be computed again.
+     *
+     * @param songPath
+     * 			absolute path of the song.
+     *
+     * @param sampleRate
+     * 			sample rate of the song.
+     *
+     * @param pyramid
+     * 			the pyramid of the song.
+     */
+	static void store(final String songPath, final float sampleRate, final WaveformPyramid pyramid) {
+		final File song = new File(songPath);
+		final File cache = cacheFile(songPath);
+		File temporary = null;
+
+		try {
+			Files.createDirectories(cache.getParentFile().toPath());
+			temporary = File.createTempFile(cache.getName(), null, cache.getParentFile());
+
+			final FloatBuffer data = pyramid.getData();
+			final byte[] path = songPath.getBytes(StandardCharsets.UTF_8);
+			final int headerSize = align(4 + 4 + 8 + 8 + 8 + 4 + path.length) + 4 + 4;
+			final ByteBuffer buffer = ByteBuffer.allocate(headerSize + 4 * data.remaining());
+
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC).putInt(VERSION).putLong(song.length()).putLong(song.lastModified())
+				  .putLong(contentHash(song)).putInt(path.length).put(path);
+			buffer.position(align(buffer.position()));
+			buffer.putFloat(sampleRate).putInt(pyramid.getLength());
+			buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().put(data);
+			buffer.rewind();
+
+			try (FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.WRITE)) {
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+				channel.force(false);
+			}
+
+			Files.move(temporary.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			/* the song will just be decoded again the next time */
+			System.out.println("Unable to store the waveform of " + songPath + ": " + e);
+		} finally {
+			if (temporary != null) {
+				temporary.delete();
+			}
+		}
+	}
+
+	private static File cacheFile(final String songPath) {
+		final CRC32 crc = new CRC32();
+		crc.update(songPath.getBytes(StandardCharsets.UTF_8));
+
+		return new File(System.getProperty(DIR_PROPERTY, System.getProperty(HOME) + File.separator + SAVE_DIR_NAME),
+						Long.toHexString(crc.getValue()) + EXTENSION);
+	}
+
+	/*
+	 * Hashes the first and last bytes of the song, which is enough to tell
+	 * apart songs rewritten with the same size and time, without reading them.
+	 */
+	private static long contentHash(final File song) throws IOException {
+		final CRC32 crc = new CRC32();
+
+		try (RandomAccessFile file = new RandomAccessFile(song, "r")) {
+			final byte[] bytes = new byte[(int) Math.min(HASHED_BYTES, file.length())];
+
+			file.readFully(bytes);
+			crc.update(bytes);
+			file.seek(file.length() - bytes.length);
+			file.readFully(bytes);
+			crc.update(bytes);
+		}
+
+		return crc.getValue();
+	}
+
+	private static int align(final int position) {
+		return (position + 3) & ~3;
+	}
+}
@@ -8,7 +8,7 @@ package org.jwave.model.editor;
  * 
  * Segments are similiar to cuts but are used for obtaining actual audio.
  * 
- * All "ms" acronyms stand for milliseconds.
+ * All positions and lengths are expressed in sample frames.
  *
  */
 public interface Segment {
@@ -16,7 +16,7 @@ public interface Segment {
      * Gets the position where this segment begins.
      *          
      * @return
-     * 			the position (in ms) of the beginning of the segment.
+     * 			the position (in frames) of the beginning of the segment.
      */	
 	int getFrom();
 	
@@ -24,7 +24,7 @@ public interface Segment {
      * Gets the position where this segment ends.
      *          
      * @return
-     * 			the position (in ms) of the end of the segment.
+     * 			the position (in frames) of the end of the segment.
      */		
 	int getTo();
 	
@@ -32,7 +32,7 @@ public interface Segment {
      * Gets the length of the segment.
      *          
      * @return
-     * 			the length (in ms) of the segment.
+     * 			the length (in frames) of the segment.
      */		
 	int getLength();
 }
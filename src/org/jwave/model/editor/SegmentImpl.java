@@ -1,6 +1,6 @@
 package org.jwave.model.editor;
 
-public class SegmentImpl implements Segment {
+public final class SegmentImpl implements Segment {
 	private final int from;
 	private final int to;
 	
@@ -0,0 +1,245 @@
+package org.jwave.model.editor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A PcmSource reading uncompressed .wav files, which are memory mapped and
+ * decoded on the fly, without going through JavaSound and without keeping
+ * any sample on the heap.
+ *
+ * Files holding 8, 16, 24 or 32 bit integer samples, or 32 bit float samples,
+ * can be read. Files with more than two channels are read as their first two.
+ *
+ */
+public final class WaveFileSource implements PcmSource {
+	private static final int FORMAT_PCM = 1;
+	private static final int FORMAT_FLOAT = 3;
+	private static final int FORMAT_EXTENSIBLE = 0xFFFE;
+	private static final int HEADER_BYTES = 12;
+	private static final int CHUNK_HEADER_BYTES = 8;
+	private static final long MAX_MAPPING_BYTES = 1L << 30;
+
+	private final float sampleRate;
+	private final int channels;
+	private final int format;
+	private final int bytesPerSample;
+	private final int frameSize;
+	private final long frames;
+	private final int framesPerMapping;
+	private final ByteBuffer[] mappings;			/* the data of the file, mapped in pieces of at most 1 GB */
+
+	/**
+	 * Opens and maps a .wav file.
+	 *
+	 * @param path
+	 * 			absolute path of the file.
+	 *
+	 * @throws IllegalArgumentException
+	 * 			if the file is not a .wav file that can be read, see canRead.
+	 *
+	 * @throws UncheckedIOException
+	 * 			if the file can't be read.
+	 */
+	public WaveFileSource(final String path) {
+		try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+			final Header header = Header.read(channel);
+
+			if (header == null) {
+				throw new IllegalArgumentException();
+			}
+
+			this.sampleRate = header.sampleRate;
+			this.channels = header.channels;
+			this.format = header.format;
+			this.bytesPerSample = header.bits / 8;
+			this.frameSize = header.blockAlign;
+			this.frames = header.dataSize / this.frameSize;
+			this.framesPerMapping = (int) (MAX_MAPPING_BYTES / this.frameSize);
+
+			/* mappings stay valid after the channel is closed */
+			this.mappings = new ByteBuffer[(int) ((this.frames + this.framesPerMapping - 1) / this.framesPerMapping)];
+			for (int i = 0; i < this.mappings.length; i++) {
+				final long from = (long) i * this.framesPerMapping;
+				final long size = Math.min(this.framesPerMapping, this.frames - from) * this.frameSize;
+
+				this.mappings[i] = channel.map(FileChannel.MapMode.READ_ONLY, header.dataOffset + from * this.frameSize,
+											   size).order(ByteOrder.LITTLE_ENDIAN);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Checks if a file is a .wav file that can be read by this source,
+	 * reading only its header.
+	 *
+	 * @param path
+	 * 			absolute path of the file.
+	 *
+	 * @return
+	 * 			true if the file can be read, false otherwise.
+	 */
+	public static boolean canRead(final String path) {
+		try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+			return Header.read(channel) != null;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	@Override
+	public float getSampleRate() {
+		return this.sampleRate;
+	}
+
+	@Override
+	public int getChannels() {
+		return Math.min(this.channels, 2);
+	}
+
+    /**
+     * Gets the number of frames of the file.
+     *
+     * @return
+     * 			the number of frames.
+     */
+	public long getFrames() {
+		return this.frames;
+	}
+
+	@Override
+	public int read(final int frame, final float[] left, final float[] right, final int offset, final int frames) {
+		final int count = (int) Math.max(0, Math.min(frames, this.frames - frame));
+		int read = 0;
+
+		/* only absolute reads are used, so that the source can be shared */
+		while (read < count) {
+			final long position = (long) frame + read;
+			final ByteBuffer mapping = this.mappings[(int) (position / this.framesPerMapping)];
+			final int inMapping = (int) (position % this.framesPerMapping);
+			final int piece = Math.min(count - read, this.framesPerMapping - inMapping);
+
+			for (int i = 0; i < piece; i++) {
+				final int index = (inMapping + i) * this.frameSize;
+
+				left[offset + read + i] = this.sample(mapping, index);
+				right[offset + read + i] = this.channels > 1 ? this.sample(mapping, index + this.bytesPerSample)
+															 : left[offset + read + i];
+			}
+			read += piece;
+		}
+
+		return read;
+	}
+
+	@Override
+	public PcmSource fork() {
+		/* reads are lock free and closing releases nothing, so the source is shared as it is */
+		return this;
+	}
+
+	@Override
+	public void close() {
+		/* mapped memory is released when the source is no longer referenced */
+	}
+
+	private float sample(final ByteBuffer mapping, final int index) {
+		switch (this.bytesPerSample) {
+		case 1:
+			return ((mapping.get(index) & 0xFF) - 128) / 128f;
+		case 2:
+			return mapping.getShort(index) / 32768f;
+		case 3:
+			return ((mapping.get(index) & 0xFF) | ((mapping.get(index + 1) & 0xFF) << 8)
+					| (mapping.get(index + 2) << 16)) / 8388608f;
+		default:
+			return this.format == FORMAT_FLOAT ? mapping.getFloat(index) : mapping.getInt(index) / 2147483648f;
+		}
+	}
+
+	/*
+	 * The format of a .wav file and where its data lies.
+	 */
+	private static final class Header {
+		private int format;
+		private int channels;
+		private float sampleRate;
+		private int blockAlign;
+		private int bits;
+		private long dataOffset;
+		private long dataSize;
+
+		/*
+		 * Reads the header of a file, null if it is not a supported .wav file.
+		 */
+		private static Header read(final FileChannel channel) throws IOException {
+			final ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			final Header header = new Header();
+			boolean formatRead = false;
+			long position = HEADER_BYTES;
+
+			if (channel.read(buffer, 0) < HEADER_BYTES || buffer.getInt(0) != 0x46464952 /* RIFF */
+				|| buffer.getInt(8) != 0x45564157 /* WAVE */) {
+				return null;
+			}
+
+			while (position + CHUNK_HEADER_BYTES <= channel.size()) {
+				final ByteBuffer chunk = ByteBuffer.allocate(CHUNK_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+				channel.read(chunk, position);
+
+				final int id = chunk.getInt(0);
+				final long size = chunk.getInt(4) & 0xFFFFFFFFL;
+
+				position += CHUNK_HEADER_BYTES;
+
+				if (id == 0x20746D66 /* fmt */) {
+					final ByteBuffer fmt = ByteBuffer.allocate((int) Math.min(size, 40)).order(ByteOrder.LITTLE_ENDIAN);
+
+					channel.read(fmt, position);
+					if (fmt.capacity() < 16) {
+						return null;
+					}
+
+					header.format = fmt.getShort(0) & 0xFFFF;
+					header.channels = fmt.getShort(2);
+					header.sampleRate = fmt.getInt(4);
+					header.blockAlign = fmt.getShort(12);
+					header.bits = fmt.getShort(14);
+					if (header.format == FORMAT_EXTENSIBLE && fmt.capacity() >= 26) {
+						header.format = fmt.getShort(24) & 0xFFFF;	/* first bytes of the sub format */
+					}
+					formatRead = true;
+				} else if (id == 0x61746164 /* data */) {
+					header.dataOffset = position;
+					header.dataSize = Math.min(size, channel.size() - position);
+					if (size == 0 || size == 0xFFFFFFFFL) {
+						/* streamed files may not know the size of their data */
+						header.dataSize = channel.size() - position;
+					}
+
+					return formatRead && header.isSupported() ? header : null;
+				}
+
+				position += size + (size & 1);
+			}
+
+			return null;
+		}
+
+		private boolean isSupported() {
+			final boolean integer = this.format == FORMAT_PCM
+									&& (this.bits == 8 || this.bits == 16 || this.bits == 24 || this.bits == 32);
+			final boolean floating = this.format == FORMAT_FLOAT && this.bits == 32;
+
+			return (integer || floating) && this.channels > 0 && this.blockAlign == this.channels * this.bits / 8;
+		}
+	}
+}
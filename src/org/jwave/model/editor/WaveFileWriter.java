@@ -0,0 +1,146 @@
+package org.jwave.model.editor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes 16 bit PCM .wav files a few frames at a time, so that songs of any
+ * length can be exported with a constant amount of memory.
+ *
+ * A RIFF header with empty sizes is written when the file is opened, and it
+ * is patched with the actual sizes when the file is closed.
+ *
+ */
+public final class WaveFileWriter implements AutoCloseable {
+	private static final int HEADER_SIZE = 44;
+	private static final int BYTES_PER_SAMPLE = 2;
+	private static final int BUFFER_FRAMES = 4096;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private final int channels;
+	private final int sampleRate;
+	private long dataSize;
+
+	/**
+	 * Creates (or truncates) a .wav file and writes its header.
+	 *
+	 * @param path
+	 * 			absolute path of the file to write.
+	 *
+	 * @param channels
+	 * 			number of channels of the file, either 1 or 2.
+	 *
+	 * @param sampleRate
+	 * 			sample rate of the file.
+	 *
+	 * @throws IOException
+	 * 			if the file can't be opened or written.
+	 */
+	public WaveFileWriter(final String path, final int channels, final int sampleRate) throws IOException {
+		if (channels < 1 || channels > 2) {
+			throw new IllegalArgumentException();
+		}
+
+		this.channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+										StandardOpenOption.TRUNCATE_EXISTING);
+		this.buffer = ByteBuffer.allocateDirect(BUFFER_FRAMES * channels * BYTES_PER_SAMPLE)
+								.order(ByteOrder.LITTLE_ENDIAN);
+		this.channels = channels;
+		this.sampleRate = sampleRate;
+		this.dataSize = 0;
+
+		this.writeHeader();
+	}
+
+	/**
+	 * Appends the samples from (inclusive) to (exclusive) of the given
+	 * channels. Samples out of the channels are written as silence.
+	 *
+	 * @param leftChannel
+	 * 			samples of the left channel, which is the only one written in
+	 * 			mono files.
+	 *
+	 * @param rightChannel
+	 * 			samples of the right channel.
+	 *
+	 * @param from
+	 * 			first sample to write.
+	 *
+	 * @param to
+	 * 			sample after the last one to write.
+	 *
+	 * @throws IOException
+	 * 			if the file can't be written.
+	 */
+	public void write(final float[] leftChannel, final float[] rightChannel,
+					  final int from, final int to) throws IOException {
+		for (int i = from; i < to; i++) {
+			if (this.buffer.remaining() < this.channels * BYTES_PER_SAMPLE) {
+				this.flush();
+			}
+
+			this.buffer.putShort(toPcm(leftChannel, i));
+			if (this.channels == 2) {
+				this.buffer.putShort(toPcm(rightChannel, i));
+			}
+		}
+	}
+
+	/**
+	 * Writes any buffered frame, patches the header and closes the file.
+	 *
+	 * @throws IOException
+	 * 			if the file can't be written.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			this.flush();
+			this.writeHeader();
+		} finally {
+			this.channel.close();
+		}
+	}
+
+	private void flush() throws IOException {
+		this.buffer.flip();
+		while (this.buffer.hasRemaining()) {
+			this.dataSize += this.channel.write(this.buffer);
+		}
+		this.buffer.clear();
+	}
+
+	private void writeHeader() throws IOException {
+		final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		final int blockAlign = this.channels * BYTES_PER_SAMPLE;
+
+		header.put(new byte[] {'R', 'I', 'F', 'F'}).putInt((int) (HEADER_SIZE - 8 + this.dataSize))
+			  .put(new byte[] {'W', 'A', 'V', 'E'})
+			  .put(new byte[] {'f', 'm', 't', ' '}).putInt(16).putShort((short) 1).putShort((short) this.channels)
+			  .putInt(this.sampleRate).putInt(this.sampleRate * blockAlign).putShort((short) blockAlign)
+			  .putShort((short) (8 * BYTES_PER_SAMPLE))
+			  .put(new byte[] {'d', 'a', 't', 'a'}).putInt((int) this.dataSize);
+		header.flip();
+
+		long position = 0;
+		while (header.hasRemaining()) {
+			position += this.channel.write(header, position);
+		}
+		if (this.channel.position() < HEADER_SIZE) {
+			this.channel.position(HEADER_SIZE);
+		}
+	}
+
+	private static short toPcm(final float[] channel, final int index) {
+		if (index < 0 || index >= channel.length) {
+			return 0;
+		}
+
+		return (short) Math.round(Math.max(-1f, Math.min(1f, channel[index])) * Short.MAX_VALUE);
+	}
+}
@@ -0,0 +1,395 @@
+package org.jwave.model.editor;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * A multi-resolution summary (a "peak pyramid") of the audio of a song, used
+ * to compute waveforms without rescanning the raw samples.
+ *
+ * The samples of each channel are grouped into blocks of BASE_BLOCK samples,
+ * and every level of the pyramid groups the blocks of the previous one in
+ * pairs, so that level k holds blocks of BASE_BLOCK * 2^k samples. For each
+ * block the maximum, the minimum, and the sums of the squares of the positive
+ * and of the negative samples are kept.
+ *
+ * Any range of samples can then be summarised by combining at most a couple
+ * of blocks per level, its unaligned edges being approximated with the
+ * smallest blocks containing them. The source of the song is only read while
+ * building the pyramid, so summarising never decodes any audio, whatever the
+ * range and however the edges fall.
+ *
+ * All the blocks are stored in a single buffer, first all the levels of the
+ * left channel and then all the levels of the right one, each level being
+ * made of its maxima, minima, positive and negative squares in turn.
+ *
+ */
+public final class WaveformPyramid {
+	/**
+	 * Number of values accumulated for a range of samples, 4 for each channel:
+	 * maximum, minimum, sum of the squares of the positive samples and sum of
+	 * the squares of the negative samples.
+	 */
+	public static final int VALUES = 8;
+
+	/** Index of the maximum of the left channel in accumulated values. */
+	public static final int LEFT_MAX = 0;
+	/** Index of the minimum of the left channel in accumulated values. */
+	public static final int LEFT_MIN = 1;
+	/** Index of the sum of squares of the positive samples of the left channel. */
+	public static final int LEFT_POSITIVE_SQUARES = 2;
+	/** Index of the sum of squares of the negative samples of the left channel. */
+	public static final int LEFT_NEGATIVE_SQUARES = 3;
+	/** Index of the maximum of the right channel in accumulated values. */
+	public static final int RIGHT_MAX = 4;
+	/** Index of the minimum of the right channel in accumulated values. */
+	public static final int RIGHT_MIN = 5;
+	/** Index of the sum of squares of the positive samples of the right channel. */
+	public static final int RIGHT_POSITIVE_SQUARES = 6;
+	/** Index of the sum of squares of the negative samples of the right channel. */
+	public static final int RIGHT_NEGATIVE_SQUARES = 7;
+
+	private static final int BASE_BLOCK_SHIFT = 8;
+	private static final int BASE_BLOCK = 1 << BASE_BLOCK_SHIFT;
+
+	private final int length;
+	private final FloatBuffer data;
+	private final Level[] leftLevels;
+	private final Level[] rightLevels;
+
+	/**
+	 * Builds the pyramid of a song, reading the whole source once.
+	 *
+	 * @param source
+	 * 			the source of the song.
+	 */
+	public WaveformPyramid(final PcmSource source) {
+		this(new Analysis(source).readAll());
+	}
+
+	private WaveformPyramid(final Analysis analysis) {
+		this.length = analysis.length;
+		this.data = FloatBuffer.allocate(2 * channelSize(this.length));
+		this.leftLevels = levels(this.data, 0, this.length);
+		this.rightLevels = levels(this.data, channelSize(this.length), this.length);
+		build(this.leftLevels, analysis.firstLevel, LEFT_MAX);
+		build(this.rightLevels, analysis.firstLevel, RIGHT_MAX);
+	}
+	
+	/*
+	 * Wraps blocks previously obtained with getData.
+	 */
+	WaveformPyramid(final int length, final FloatBuffer data) {
+		if (data.remaining() != 2 * channelSize(length)) {
+			throw new IllegalArgumentException();
+		}
+		
+		this.length = length;
+		this.data = data.slice();
+		this.leftLevels = levels(this.data, 0, length);
+		this.rightLevels = levels(this.data, channelSize(length), length);
+	}
+	
+	/*
+	 * Gets a read only view of all the blocks of the pyramid.
+	 */
+	FloatBuffer getData() {
+		return this.data.asReadOnlyBuffer();
+	}
+	
+	/*
+	 * Checks if another pyramid summarises the same samples, block by block.
+	 */
+	boolean hasSameBlocks(final WaveformPyramid other) {
+		return this.length == other.length && this.getData().equals(other.getData());
+	}
+
+	/**
+	 * Gets the number of samples (per channel) summarised by the pyramid.
+	 *
+	 * @return
+	 * 			the number of samples.
+	 */
+	public int getLength() {
+		return this.length;
+	}
+
+	/**
+	 * Resets the given values so that they can be used to accumulate ranges.
+	 *
+	 * @param values
+	 * 			an array of at least VALUES values.
+	 */
+	public static void clear(final float[] values) {
+		for (int i = 0; i < VALUES; i++) {
+			values[i] = 0;
+		}
+	}
+
+	/**
+	 * Accumulates the summary of the samples from (inclusive) to (exclusive)
+	 * into the given values, so that more ranges can be combined together.
+	 * The range is clamped to the available samples. An edge that doesn't
+	 * fall on a block takes the peaks of the whole block containing it and
+	 * the share of its squares covered by the range, the last block being
+	 * shorter than the others if the length is not a multiple of theirs.
+	 *
+	 * @param from
+	 * 			the first sample of the range.
+	 *
+	 * @param to
+	 * 			the sample after the last one of the range.
+	 *
+	 * @param values
+	 * 			an array of at least VALUES values, reset with clear before
+	 * 			accumulating the first range.
+	 *
+	 * @return
+	 * 			the number of samples accumulated, once the range is clamped.
+	 */
+	public int accumulate(final int from, final int to, final float[] values) {
+		int position = Math.max(from, 0);
+		final int end = Math.min(to, this.getLength());
+
+		while (position < end) {
+			if ((position & (BASE_BLOCK - 1)) != 0 || end - position < BASE_BLOCK) {
+				/* unaligned edge, approximated up to the next block with the block containing it */
+				final int edgeEnd = Math.min(end, (position | (BASE_BLOCK - 1)) + 1);
+				final int block = position >> BASE_BLOCK_SHIFT;
+				final float fraction = (float) (edgeEnd - position) / this.baseBlockSize(block);
+
+				this.leftLevels[0].accumulate(block, values, LEFT_MAX, fraction);
+				this.rightLevels[0].accumulate(block, values, RIGHT_MAX, fraction);
+				position = edgeEnd;
+			} else {
+				/* take the biggest block that begins here and fits in the range */
+				int level = 0;
+
+				while (level + 1 < this.leftLevels.length
+						&& (position & ((BASE_BLOCK << (level + 1)) - 1)) == 0
+						&& end - position >= BASE_BLOCK << (level + 1)) {
+					level++;
+				}
+
+				final int block = position >> (BASE_BLOCK_SHIFT + level);
+
+				this.leftLevels[level].accumulate(block, values, LEFT_MAX, 1);
+				this.rightLevels[level].accumulate(block, values, RIGHT_MAX, 1);
+				position += BASE_BLOCK << level;
+			}
+		}
+
+		return Math.max(end - Math.max(from, 0), 0);
+	}
+
+	/*
+	 * Number of samples in a block of level 0, fewer for the last one if the
+	 * length is not a multiple of BASE_BLOCK. Blocks of the other levels that
+	 * are accumulated always lie entirely within the length.
+	 */
+	private int baseBlockSize(final int block) {
+		return Math.min(BASE_BLOCK, this.length - (block << BASE_BLOCK_SHIFT));
+	}
+
+	private static void accumulateRaw(final float[] channel, final int from, final int to,
+									  final float[] values, final int offset) {
+		float max = values[offset];
+		float min = values[offset + 1];
+		float positiveSquares = values[offset + 2];
+		float negativeSquares = values[offset + 3];
+
+		/* no branches, so that the loop can be vectorized by the JIT */
+		for (int i = from; i < to; i++) {
+			final float positive = Math.max(channel[i], 0f);
+			final float negative = Math.min(channel[i], 0f);
+
+			max = Math.max(max, positive);
+			min = Math.min(min, negative);
+			positiveSquares += positive * positive;
+			negativeSquares += negative * negative;
+		}
+
+		values[offset] = max;
+		values[offset + 1] = min;
+		values[offset + 2] = positiveSquares;
+		values[offset + 3] = negativeSquares;
+	}
+
+	private static int levelCount(final int length) {
+		int levelCount = 1;
+
+		while ((BASE_BLOCK << levelCount) <= length) {
+			levelCount++;
+		}
+		
+		return levelCount;
+	}
+	
+	private static int blockCount(final int length, final int level) {
+		return (int) ((length + ((long) BASE_BLOCK << level) - 1) >> (BASE_BLOCK_SHIFT + level));
+	}
+	
+	/*
+	 * Number of values needed to store all the levels of a single channel.
+	 */
+	private static int channelSize(final int length) {
+		int size = 0;
+		
+		for (int level = 0; level < levelCount(length); level++) {
+			size += Level.VALUES * blockCount(length, level);
+		}
+		
+		return size;
+	}
+	
+	private static Level[] levels(final FloatBuffer data, final int offset, final int length) {
+		final Level[] levels = new Level[levelCount(length)];
+		int position = offset;
+		
+		for (int level = 0; level < levels.length; level++) {
+			levels[level] = new Level(data, position, blockCount(length, level));
+			position += Level.VALUES * levels[level].size();
+		}
+		
+		return levels;
+	}
+
+	/*
+	 * Fills the levels of a channel, given the values of the blocks of level 0
+	 * of both channels and the offset of those of this channel.
+	 */
+	private static void build(final Level[] levels, final float[] firstLevel, final int offset) {
+		final float[] values = new float[VALUES];
+
+		for (int block = 0; block < levels[0].size(); block++) {
+			System.arraycopy(firstLevel, VALUES * block + offset, values, 0, Level.VALUES);
+			levels[0].set(block, values);
+		}
+
+		for (int level = 1; level < levels.length; level++) {
+			final Level previous = levels[level - 1];
+
+			for (int block = 0; block < levels[level].size(); block++) {
+				clear(values);
+				previous.accumulate(2 * block, values, 0, 1);
+				if (2 * block + 1 < previous.size()) {
+					previous.accumulate(2 * block + 1, values, 0, 1);
+				}
+				levels[level].set(block, values);
+			}
+		}
+	}
+
+	/*
+	 * The reading of a source into the blocks of level 0, which can be done a
+	 * few blocks at a time, so that it can be spread over many short tasks.
+	 */
+	static final class Analysis {
+		private final PcmSource source;
+		private final float[] left;
+		private final float[] right;
+		private final float[] values;
+		private float[] firstLevel;			/* values of every block of level 0, in turn */
+		private int length;
+		private boolean done;
+
+		Analysis(final PcmSource source) {
+			this.source = source;
+			this.left = new float[BASE_BLOCK];
+			this.right = new float[BASE_BLOCK];
+			this.values = new float[VALUES];
+			this.firstLevel = new float[VALUES * 1024];
+		}
+
+		/*
+		 * Reads at least the given number of frames, unless the end of the
+		 * source comes first. Returns true once the whole source has been read.
+		 */
+		boolean read(final int frames) {
+			final long stop = (long) this.length + frames;
+
+			while (!this.done && this.length < stop) {
+				final int read = this.source.read(this.length, this.left, this.right, 0, BASE_BLOCK);
+
+				if (read > 0) {
+					final int block = this.length >> BASE_BLOCK_SHIFT;
+
+					if (VALUES * (block + 1) > this.firstLevel.length) {
+						this.firstLevel = Arrays.copyOf(this.firstLevel, 2 * this.firstLevel.length);
+					}
+					clear(this.values);
+					accumulateRaw(this.left, 0, read, this.values, LEFT_MAX);
+					accumulateRaw(this.right, 0, read, this.values, RIGHT_MAX);
+					System.arraycopy(this.values, 0, this.firstLevel, VALUES * block, VALUES);
+					this.length += read;
+				}
+				this.done = read < BASE_BLOCK;
+			}
+
+			return this.done;
+		}
+
+		/*
+		 * Reads the rest of the source.
+		 */
+		Analysis readAll() {
+			this.read(Integer.MAX_VALUE);
+			return this;
+		}
+
+		/*
+		 * Builds the pyramid of the source, once it has been read entirely.
+		 */
+		WaveformPyramid toPyramid() {
+			if (!this.done) {
+				throw new IllegalStateException();
+			}
+
+			return new WaveformPyramid(this);
+		}
+	}
+
+	/*
+	 * The blocks of a single level of the pyramid of a single channel.
+	 */
+	private static final class Level {
+		private static final int VALUES = 4;
+		
+		private final FloatBuffer data;
+		private final int max;
+		private final int min;
+		private final int positiveSquares;
+		private final int negativeSquares;
+		private final int blocks;
+
+		private Level(final FloatBuffer data, final int offset, final int blocks) {
+			this.data = data;
+			this.max = offset;
+			this.min = offset + blocks;
+			this.positiveSquares = offset + 2 * blocks;
+			this.negativeSquares = offset + 3 * blocks;
+			this.blocks = blocks;
+		}
+
+		private int size() {
+			return this.blocks;
+		}
+
+		private void set(final int block, final float[] values) {
+			this.data.put(this.max + block, values[0]);
+			this.data.put(this.min + block, values[1]);
+			this.data.put(this.positiveSquares + block, values[2]);
+			this.data.put(this.negativeSquares + block, values[3]);
+		}
+
+		/*
+		 * Only the given fraction of the sums of squares of the block is added.
+		 */
+		private void accumulate(final int block, final float[] values, final int offset, final float fraction) {
+			values[offset] = Math.max(values[offset], this.data.get(this.max + block));
+			values[offset + 1] = Math.min(values[offset + 1], this.data.get(this.min + block));
+			values[offset + 2] += fraction * this.data.get(this.positiveSquares + block);
+			values[offset + 3] += fraction * this.data.get(this.negativeSquares + block);
+		}
+	}
+}
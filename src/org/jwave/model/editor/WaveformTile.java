@@ -0,0 +1,85 @@
+package org.jwave.model.editor;
+
+/**
+ * A piece of the waveform of a modified song, at a given zoom level.
+ *
+ * The modified song is divided, for every zoom level, into tiles of a fixed
+ * number of groups, each group covering a power of two of frames, so that the
+ * tiles of the same level never overlap and can be cached and reused while
+ * the song is scrolled or edited. Tiles are shared, their waveform must not
+ * be modified.
+ *
+ */
+public final class WaveformTile {
+	private final int index;
+	private final int zoom;
+	private final GroupedWaveform waveform;
+	private final int[] pieces;			/* ranges of the original song the tile was computed from */
+
+	WaveformTile(final int index, final int zoom, final GroupedWaveform waveform, final int[] pieces) {
+		this.index = index;
+		this.zoom = zoom;
+		this.waveform = waveform;
+		this.pieces = pieces;
+	}
+
+    /**
+     * Gets the index of the tile among the ones of its zoom level.
+     *
+     * @return
+     * 			the index of the tile.
+     */
+	public int getIndex() {
+		return this.index;
+	}
+
+    /**
+     * Gets where the tile begins in the modified song.
+     *
+     * @return
+     * 			the position (in frames) of the first group of the tile.
+     */
+	public int getFrom() {
+		return this.index * WaveformTiles.TILE_GROUPS * this.getFramesPerGroup();
+	}
+
+    /**
+     * Gets where the tile ends in the modified song, even if the song ends
+     * before it.
+     *
+     * @return
+     * 			the position (in frames) after the last group of the tile.
+     */
+	public long getTo() {
+		return (this.index + 1L) * WaveformTiles.TILE_GROUPS * this.getFramesPerGroup();
+	}
+
+    /**
+     * Gets the number of frames summarised by every group of the tile.
+     *
+     * @return
+     * 			the frames of a group, a power of two.
+     */
+	public int getFramesPerGroup() {
+		return 1 << this.zoom;
+	}
+
+    /**
+     * Gets the values of the groups of the tile. Groups past the end of the
+     * modified song are left out, so the last tile may be shorter.
+     *
+     * @return
+     * 			the waveform of the tile.
+     */
+	public GroupedWaveform getWaveform() {
+		return this.waveform;
+	}
+
+	int getZoom() {
+		return this.zoom;
+	}
+
+	int[] getPieces() {
+		return this.pieces;
+	}
+}
@@ -0,0 +1,258 @@
+package org.jwave.model.editor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A cache of the waveform tiles of a modified song, so that only the visible
+ * part of the song is summarised, and only once for every version of the
+ * cuts and zoom level.
+ *
+ * Tiles are keyed by the version of the cuts they were computed for (the
+ * CutTree itself, which is immutable), their zoom level and their index, and
+ * the least recently used ones are dropped first. When the cuts change, the
+ * tiles of the previous version that are made of the same pieces of the
+ * original song in the new one are carried over, so an edit only invalidates
+ * the tiles it overlaps (and the ones after it, unless the length it added
+ * or removed is a whole number of tiles).
+ *
+ */
+final class WaveformTiles {
+	/** Number of groups in a tile. */
+	static final int TILE_GROUPS = 256;
+
+	private static final int MAX_TILES = 512;
+	private static final int MAX_ZOOM = 22;			/* keeps the frames of a tile within an int */
+
+	private final Map<Key, WaveformTile> tiles;
+	private WaveformPyramid pyramid;				/* the pyramid the cached tiles were computed with */
+
+	WaveformTiles() {
+		this.tiles = new LinkedHashMap<Key, WaveformTile>(MAX_TILES, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<Key, WaveformTile> eldest) {
+				return this.size() > MAX_TILES;
+			}
+		};
+	}
+
+	/**
+	 * Gets the tiles covering the modified frames from (inclusive) to
+	 * (exclusive), at the zoom level giving at least one group per pixel.
+	 *
+	 * @param cuts
+	 * 			the current version of the cuts.
+	 *
+	 * @param currentPyramid
+	 * 			the current pyramid of the song, tiles computed with another
+	 * 			pyramid are dropped.
+	 *
+	 * @param from
+	 * 			first visible frame.
+	 *
+	 * @param to
+	 * 			frame after the last visible one.
+	 *
+	 * @param pixels
+	 * 			width of the visible range, in pixels.
+	 *
+	 * @return
+	 * 			the tiles in order.
+	 */
+	synchronized List<WaveformTile> getTiles(final CutTree cuts, final WaveformPyramid currentPyramid,
+											 final int from, final int to, final int pixels) {
+		if (from < 0 || to < from || pixels <= 0) {
+			throw new IllegalArgumentException();
+		}
+
+		if (this.pyramid != currentPyramid) {
+			this.tiles.clear();
+			this.pyramid = currentPyramid;
+		}
+
+		final int zoom = zoomFor(to - from, pixels);
+		final int tileFrames = TILE_GROUPS << zoom;
+		final int end = Math.min(to, cuts.getFrames());
+		final List<WaveformTile> visible = new ArrayList<>();
+
+		for (int index = from / tileFrames; index * (long) tileFrames < end; index++) {
+			final Key key = new Key(cuts, zoom, index);
+			WaveformTile tile = this.tiles.get(key);
+
+			if (tile == null) {
+				tile = compute(cuts, currentPyramid, zoom, index);
+				this.tiles.put(key, tile);
+			}
+			visible.add(tile);
+		}
+
+		return visible;
+	}
+
+	/**
+	 * Carries the tiles of a version of the cuts that are still valid over to
+	 * another version.
+	 *
+	 * @param previous
+	 * 			the version the tiles were computed for.
+	 *
+	 * @param next
+	 * 			the version replacing it.
+	 */
+	synchronized void migrate(final CutTree previous, final CutTree next) {
+		final int delta = next.getFrames() - previous.getFrames();
+		final List<WaveformTile> candidates = new ArrayList<>();
+
+		this.tiles.forEach((key, tile) -> {
+			if (key.cuts == previous) {
+				candidates.add(tile);
+			}
+		});
+
+		for (final WaveformTile tile : candidates) {
+			final int tileFrames = TILE_GROUPS << tile.getZoom();
+
+			this.reuse(next, tile, tile.getIndex());
+			if (delta != 0 && delta % tileFrames == 0) {
+				this.reuse(next, tile, tile.getIndex() + delta / tileFrames);
+			}
+		}
+	}
+
+	/*
+	 * Caches the tile at the given index of a version, if that part of the
+	 * version is made of exactly the same pieces of the original song.
+	 */
+	private void reuse(final CutTree cuts, final WaveformTile tile, final int index) {
+		final int tileFrames = TILE_GROUPS << tile.getZoom();
+		final Key key = new Key(cuts, tile.getZoom(), index);
+
+		if (index >= 0 && !this.tiles.containsKey(key)
+			&& Arrays.equals(tile.getPieces(), pieces(cuts, index * tileFrames, end(index, tileFrames)))) {
+			this.tiles.put(key, tile.getIndex() == index ? tile
+								: new WaveformTile(index, tile.getZoom(), tile.getWaveform(), tile.getPieces()));
+		}
+	}
+
+	private static int end(final int index, final int tileFrames) {
+		return (int) Math.min((index + 1L) * tileFrames, Integer.MAX_VALUE);
+	}
+
+	private static int zoomFor(final int frames, final int pixels) {
+		final int framesPerPixel = Math.max(frames / pixels, 1);
+
+		return Math.min(31 - Integer.numberOfLeadingZeros(framesPerPixel), MAX_ZOOM);
+	}
+
+	/*
+	 * Summarises a tile group by group, every group combining the pieces of
+	 * the original song that fall in it.
+	 */
+	private static WaveformTile compute(final CutTree cuts, final WaveformPyramid pyramid,
+										final int zoom, final int index) {
+		final int frames = 1 << zoom;
+		final int from = index * (TILE_GROUPS << zoom);
+		final int[] pieces = pieces(cuts, from, end(index, TILE_GROUPS << zoom));
+		final GroupedWaveform waveform = new GroupedWaveform(TILE_GROUPS);
+		final float[] values = waveform.getScratch();
+		int position = from;
+		int groupEnd = from;
+		int summarised = 0;				/* frames summarised by the current group */
+
+		for (int i = 0; i < pieces.length; i += 2) {
+			int origin = pieces[i];
+
+			while (origin < pieces[i + 1]) {
+				if (position == groupEnd) {
+					if (waveform.getSize() > 0) {
+						waveform.set(waveform.getSize() - 1, values, summarised);
+					}
+					WaveformPyramid.clear(values);
+					summarised = 0;
+					waveform.addGroup(position);
+					groupEnd += frames;
+				}
+
+				final int count = Math.min(pieces[i + 1] - origin, groupEnd - position);
+
+				summarised += pyramid.accumulate(origin, origin + count, values);
+				origin += count;
+				position += count;
+			}
+		}
+
+		if (waveform.getSize() > 0) {
+			waveform.set(waveform.getSize() - 1, values, summarised);
+		}
+		waveform.toRMS();
+
+		return new WaveformTile(index, zoom, waveform, pieces);
+	}
+
+	/*
+	 * Collects the ranges of the original song making up the modified frames
+	 * from (inclusive) to (exclusive), as pairs of first frame and frame after
+	 * the last one, which identify what a tile was computed from.
+	 */
+	private static int[] pieces(final CutTree cuts, final int from, final int to) {
+		final Pieces pieces = new Pieces();
+
+		cuts.walk(from, to, pieces);
+
+		return Arrays.copyOf(pieces.ranges, pieces.count);
+	}
+
+	/*
+	 * The ranges of the pieces walked, as pairs of first frame and frame
+	 * after the last one.
+	 */
+	private static final class Pieces implements CutTree.PieceVisitor {
+		private int[] ranges = new int[8];
+		private int count;
+
+		@Override
+		public void visit(final int position, final int origin, final int frames) {
+			if (this.count == this.ranges.length) {
+				this.ranges = Arrays.copyOf(this.ranges, 2 * this.count);
+			}
+			this.ranges[this.count++] = origin;
+			this.ranges[this.count++] = origin + frames;
+		}
+	}
+
+	/*
+	 * A version of the cuts, compared by identity, a zoom level and a tile.
+	 */
+	private static final class Key {
+		private final CutTree cuts;
+		private final int zoom;
+		private final int index;
+
+		private Key(final CutTree cuts, final int zoom, final int index) {
+			this.cuts = cuts;
+			this.zoom = zoom;
+			this.index = index;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+
+			final Key other = (Key) obj;
+
+			return this.cuts == other.cuts && this.zoom == other.zoom && this.index == other.index;
+		}
+
+		@Override
+		public int hashCode() {
+			return (System.identityHashCode(this.cuts) * 31 + this.zoom) * 31 + this.index;
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package org.jwave.model.player;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+
+import com.mpatric.mp3agic.NotSupportedException;
+
+/**
+ * This class is a {@link MetaDataManager} answering from tags saved along with a playlist, so that loading it
+ * doesn't parse the audio files again. The file is only parsed when something more than the saved values is
+ * needed, as the artwork or a change of the tags.
+ */
+final class CachedMetaDataManager implements MetaDataManager {
+
+    private final Path filePath;
+    private final Map<MetaData, String> datas;
+    private MetaDataManager parsed;
+
+    /**
+     * Creates a new CachedMetaDataManager.
+     *
+     * @param absolutePath
+     *          path of the file the tags were read from.
+     * @param tags
+     *          the saved values of the tags, missing ones being empty.
+     */
+    CachedMetaDataManager(final Path absolutePath, final Map<MetaData, String> tags) {
+        this.filePath = absolutePath;
+        this.datas = new EnumMap<>(MetaData.class);
+        this.datas.putAll(tags);
+    }
+
+    @Override
+    public synchronized String retrieve(final MetaData metaDataValue) {
+        if (this.parsed != null) {
+            return this.parsed.retrieve(metaDataValue);
+        }
+        return this.datas.getOrDefault(metaDataValue, "");
+    }
+
+    @Override
+    public Optional<InputStream> getAlbumArtwork() {
+        return this.fromFile().getAlbumArtwork();
+    }
+
+    @Override
+    public void setData(final MetaData metaDataValue, final String newValue) throws IllegalAccessException,
+            IllegalArgumentException, InvocationTargetException, NoSuchMethodException, SecurityException {
+        this.fromFile().setData(metaDataValue, newValue);
+    }
+
+    @Override
+    public void writeMetaDataToFile() throws NotSupportedException, IOException {
+        this.fromFile().writeMetaDataToFile();
+    }
+
+    private synchronized MetaDataManager fromFile() {
+        if (this.parsed == null) {
+            this.parsed = new MetaDataManagerImpl(this.filePath);
+        }
+        return this.parsed;
+    }
+}
@@ -61,6 +61,16 @@ public interface DynamicPlayer {
      */
     int getPosition() throws IllegalStateException;
 
+    /**
+     * @return
+     *          the position in frames reached by the audio output, with the time it was reached, to be
+     *          interpolated between the buffers rendered.
+     *          
+     * @throws IllegalStateException
+     *          when no {@link Song} is loaded.          
+     */
+    PlaybackPosition getFramePosition() throws IllegalStateException;
+
     /**
      * 
      * @return
@@ -108,7 +118,34 @@ public interface DynamicPlayer {
      *                           
      */
     void setVolume(float amount);
-    
+
+    /**
+     * Sets how long the loaded song and the one opened with {@link #setNextPlayer(Optional)} overlap: the next song
+     * starts that long before the end of the loaded one, fading in as the loaded one fades out.
+     * 
+     * @param millis
+     *          the length of the overlap in milliseconds, 0 for the next song to start right where the loaded one ends.
+     * @throws IllegalArgumentException
+     *          if millis < 0.
+     */
+    void setCrossfade(int millis);
+
+    /**
+     * Registers a listener notified as the audio is rendered, for every song loaded from now on.
+     *
+     * @param listener
+     *          the listener to be added.
+     */
+    void addPlaybackListener(PlaybackListener listener);
+
+    /**
+     * Unregisters a listener.
+     *
+     * @param listener
+     *          the listener to be removed.
+     */
+    void removePlaybackListener(PlaybackListener listener);
+
     /**
      * Sets the player by loading a song.
      * 
@@ -117,6 +154,22 @@ public interface DynamicPlayer {
      */
     void setPlayer(Song song);
     
+    /**
+     * Opens a song to be played right after the loaded one ends, with no gap between the two: the song is decoded
+     * ahead while the loaded one plays, converted to the sample rate of the loaded one if they differ. Loading
+     * another song with {@link #setPlayer(Song)} forgets it.
+     * 
+     * @param song
+     *          the song to be played next, empty to play nothing after the loaded one.
+     *          
+     * @return
+     *          whether a song will follow the loaded one.
+     *          
+     * @throws IllegalStateException
+     *          when no {@link Song} is loaded.
+     */
+    boolean setNextPlayer(Optional<Song> song) throws IllegalStateException;
+    
     /**
      * resets this player.
      */
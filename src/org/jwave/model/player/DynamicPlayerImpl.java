@@ -1,17 +1,43 @@
 package org.jwave.model.player;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 import org.jwave.model.FileSystemHandler;
 
+import ddf.minim.AudioListener;
 import ddf.minim.AudioOutput;
-import ddf.minim.AudioPlayer;
 import ddf.minim.Minim;
-import ddf.minim.ugens.FilePlayer;
+import ddf.minim.UGen;
 import ddf.minim.ugens.Gain;
 
 /**
  * This class is an implementation of {@link}DynamicPlayer.
+ * 
+ * The position is counted in frames actually handed to the audio output since the last cue, stamped with the time
+ * of the buffer that reached it, and {@link PlaybackListener}s are notified after every output buffer, so nobody has to poll the player.
+ * A {@link RenderedSong} is played from the source it provides, any other song is decoded as it is.
+ * 
+ * The next song can be opened ahead while the loaded one plays: the source of the loaded song is replaced by the
+ * source of the next one inside the audio callback, on the very frame it ends, so the two play with no gap.
+ * With a crossfade set, the next song starts that long before the end instead, and the two are mixed along
+ * equal-power curves until the loaded one fades out.
+ * 
+ * Output lines are kept open across songs, one for every sample rate met. A song played on a line of another rate,
+ * as the next song does, is resampled inside the audio callback.
+ * 
+ * The audio callback itself neither allocates nor calls code outside the player: it only raises the events for a
+ * thread of the player, which notifies the listeners and closes the sources the output no longer reads.
  */
 public class DynamicPlayerImpl implements DynamicPlayer {
 
@@ -22,12 +48,29 @@ public class DynamicPlayerImpl implements DynamicPlayer {
     private static final float NORMALIZER = 60f;
     
     private final Minim minim; 
-    private FilePlayer player;
+    private volatile PlaybackSource player;
     private final Gain volumeControl;
+    private final OutputLinePool lines;
     private AudioOutput out;
-    private boolean started;
-    private boolean paused;
-    private Optional<Song> loaded;
+    private volatile boolean started;
+    private volatile boolean paused;
+    private volatile Optional<Song> loaded;
+    private final Set<PlaybackListener> listeners;
+    private final OutputClock clock;
+    private final Notifier notifier;
+    private final SourceSwitch sourceSwitch;
+    private final AtomicReference<NextSong> next;
+    private final Queue<PlaybackSource> retired;
+    private volatile boolean switched;
+    private final Object positionLock;
+    private long frame;
+    private long timestamp;
+    private float sampleRate;
+    private volatile boolean ended;
+    private volatile int crossfade;
+    private volatile boolean fadeRequested;
+    private volatile int fadeOverlap;           /* ms the songs overlap by, set before fadeRequested */
+    private volatile boolean fadeCancelled;
     
     /**
      * Creates a new DynamicPlayerImpl.
@@ -36,9 +79,18 @@ public class DynamicPlayerImpl implements DynamicPlayer {
         this.minim = new Minim(new FileSystemHandler());
         this.volumeControl = new Gain();
         this.volumeControl.setValue(10f);
+        this.lines = new OutputLinePool(this.minim, BUFFER_SIZE, OUT_BIT_DEPTH);
         this.started = false;
         this.paused = false;
         this.loaded = Optional.empty();
+        this.listeners = new CopyOnWriteArraySet<>();
+        this.clock = new OutputClock();
+        this.notifier = new Notifier();
+        this.sourceSwitch = new SourceSwitch();
+        this.next = new AtomicReference<>();
+        this.retired = new ConcurrentLinkedQueue<>();
+        this.sourceSwitch.patch(this.volumeControl);
+        this.positionLock = new Object();
     }
     
     
@@ -46,6 +98,7 @@ public class DynamicPlayerImpl implements DynamicPlayer {
     public void play() {
         this.checkPlayerLoaded();
         this.player.play();
+        this.ended = false;
         if (this.isPaused()) {
             this.setPaused(false);
         }
@@ -65,14 +118,18 @@ public class DynamicPlayerImpl implements DynamicPlayer {
     public void stop() {
         this.checkPlayerLoaded();
         this.pause();
+        this.cancelFade();
         this.player.rewind();
+        this.setAnchor(0);
     }
 
     @Override
     public void cue(final int millis) {
         this.checkPlayerLoaded();
         this.setPaused(true);
+        this.cancelFade();
         this.player.cue(millis);
+        this.setAnchor(Math.max(0, Math.min(millis, this.player.length())));
         this.setPaused(false);
     }
 
@@ -85,7 +142,16 @@ public class DynamicPlayerImpl implements DynamicPlayer {
     @Override
     public int getPosition() {
        this.checkPlayerLoaded();
-       return this.player.position();
+       return this.toMillis(this.getFramePosition().getFrame());
+    }
+
+    @Override
+    public PlaybackPosition getFramePosition() {
+        this.checkPlayerLoaded();
+        final boolean moving = this.started && !this.paused && this.player.isPlaying();
+        synchronized (this.positionLock) {
+            return new PlaybackPosition(this.frame, this.timestamp, this.sampleRate, moving, BUFFER_SIZE);
+        }
     }
 
     @Override
@@ -129,21 +195,51 @@ public class DynamicPlayerImpl implements DynamicPlayer {
         }
         this.volumeControl.setValue(amount - NORMALIZER);
     }
+
+    @Override
+    public void setCrossfade(final int millis) throws IllegalArgumentException {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Value not allowed");
+        }
+        this.crossfade = millis;
+    }
+
+    @Override
+    public void addPlaybackListener(final PlaybackListener listener) {
+        this.listeners.add(listener);
+    }
+
+    @Override
+    public void removePlaybackListener(final PlaybackListener listener) {
+        this.listeners.remove(listener);
+    }
     
     @Override
     public synchronized void setPlayer(final Song song) {
-        final AudioPlayer sampleRateRetriever = minim.loadFile(song.getAbsolutePath());
         this.clearPlayer();
-        this.player = new FilePlayer(this.minim.loadFileStream(song.getAbsolutePath(), BUFFER_SIZE, false));
-        this.player.pause();
+        final PlaybackSource source = this.openSource(song);
         
-        this.out = this.createAudioOut(sampleRateRetriever.sampleRate());
-        this.player.patch(this.volumeControl);
-        this.volumeControl.patch(this.out);
-        sampleRateRetriever.close();
+        if (!this.useLine(source.getSampleRate())) {
+            source.close();
+            throw new IllegalStateException("No output line available");
+        }
+        this.sampleRate = this.out.sampleRate();
+        this.setAnchor(0);
+        this.player = this.fitToLine(source);
         this.loaded = Optional.of(song);
     }
     
+    @Override
+    public synchronized boolean setNextPlayer(final Optional<Song> song) {
+        this.checkPlayerLoaded();
+        this.clearNext();
+        if (song.isPresent()) {
+            this.next.set(new NextSong(this.fitToLine(this.openSource(song.get())), song.get()));
+            return true;
+        }
+        return false;
+    }
+    
     @Override
     public void resetPlayer() {
         this.clearPlayer();
@@ -153,33 +249,398 @@ public class DynamicPlayerImpl implements DynamicPlayer {
         this.paused = value;
     }
     
+    private void cancelFade() {
+        this.fadeRequested = false;
+        this.fadeCancelled = true;
+    }
+    
     @Override
-    public void releasePlayerResources() {
-        if (this.clearPlayer()) {
+    public synchronized void releasePlayerResources() {
+        this.clearPlayer();
+        if (this.out != null) {
+            this.volumeControl.unpatch(this.out);
+            this.out.removeListener(this.clock);
+            this.out = null;
+        }
+        if (this.lines.closeAll()) {
+            this.sourceSwitch.endFade();
+            this.notifier.closeAll();
             this.minim.stop();
         }
     }  
     
-    private AudioOutput createAudioOut(final float sampleRate) {
-        return this.minim.getLineOut(Minim.STEREO, BUFFER_SIZE, sampleRate, OUT_BIT_DEPTH);
+    /*
+     * Opens the source of a song, paused at its beginning: decoding starts at once, so it is ready to be played.
+     */
+    private PlaybackSource openSource(final Song song) {
+        final PlaybackSource source;
+        if (song instanceof RenderedSong) {
+            source = ((RenderedSong) song).createPlaybackSource();
+        } else {
+            source = new FilePlaybackSource(this.minim.loadFileStream(song.getAbsolutePath(), BUFFER_SIZE, false));
+        }
+        source.pause();
+        return source;
+    }
+    
+    private void clearNext() {
+        final NextSong queued = this.next.getAndSet(null);
+        if (queued != null) {
+            queued.source.close();
+        }
     }
     
+    /*
+     * Moves the output to the pooled line of a sample rate, or keeps the current one if the device can't open it.
+     * Returns false if no line is available at all.
+     */
+    private boolean useLine(final float rate) {
+        final Optional<AudioOutput> line = this.lines.get(rate, Minim.STEREO);
+
+        if (line.isPresent() && line.get() != this.out) {
+            if (this.out != null) {
+                this.volumeControl.unpatch(this.out);
+                this.out.removeListener(this.clock);
+            }
+            this.out = line.get();
+            this.volumeControl.patch(this.out);
+            this.out.addListener(this.clock);
+        }
+        return this.out != null;
+    }
+    
+    private PlaybackSource fitToLine(final PlaybackSource source) {
+        if (source.getSampleRate() == this.sampleRate) {
+            return source;
+        }
+        return new ResampledSource(source, this.sampleRate);
+    }
+    
+    private int toMillis(final long frames) {
+        return (int) Math.round(frames * 1000.0 / this.sampleRate);
+    }
+    
+    private void setAnchor(final int millis) {
+        synchronized (this.positionLock) {
+            this.frame = Math.round(millis * (double) this.sampleRate / 1000);
+            this.timestamp = System.nanoTime();
+        }
+    }
+
     private void checkPlayerLoaded() {
         if (this.isEmpty()) {
             throw new IllegalStateException("No song has been loaded");
         }
     }
 
-    private boolean clearPlayer() {
+    private void clearPlayer() {
         if (this.player != null) {
             this.stop();
-            this.player.unpatch(this.volumeControl);
-            this.volumeControl.unpatch(this.out);
-            this.out.close();
-            this.player.close();
+            this.clearNext();
+            this.retired.add(this.player);
+            this.player = null;
+            this.switched = false;
             this.started = false;
-            return true;
         }
-        return false;
+    }
+
+    /*
+     * Called by the audio output after every buffer it renders: counts the frames of the song that went out and
+     * raises the events for the listeners, or the end of the song once, unless a queued song is about to follow it
+     * (the source may end on the last frame of a buffer, the switch then comes with the next one). While paused
+     * only the buffer is counted.
+     */
+    private final class OutputClock implements AudioListener {
+
+        @Override
+        public void samples(final float[] samples) {
+            this.rendered(samples.length);
+        }
+
+        @Override
+        public void samples(final float[] left, final float[] right) {
+            this.rendered(left.length);
+        }
+
+        private void rendered(final int frames) {
+            final PlaybackSource current = DynamicPlayerImpl.this.player;
+
+            DynamicPlayerImpl.this.notifier.rendered();
+            if (current == null || DynamicPlayerImpl.this.paused) {
+                return;
+            }
+            if (DynamicPlayerImpl.this.switched) {
+                DynamicPlayerImpl.this.switched = false;
+                synchronized (DynamicPlayerImpl.this.positionLock) {
+                    DynamicPlayerImpl.this.frame = DynamicPlayerImpl.this.sourceSwitch.framesSinceSwitch;
+                    DynamicPlayerImpl.this.timestamp = System.nanoTime();
+                }
+                DynamicPlayerImpl.this.notifier.raise(Notifier.NEXT_TRACK_STARTED);
+            } else if (current.isPlaying()) {
+                final long position;
+                synchronized (DynamicPlayerImpl.this.positionLock) {
+                    DynamicPlayerImpl.this.frame += frames;
+                    DynamicPlayerImpl.this.timestamp = System.nanoTime();
+                    position = DynamicPlayerImpl.this.frame;
+                }
+                this.checkCrossfade(current, DynamicPlayerImpl.this.toMillis(position));
+                DynamicPlayerImpl.this.notifier.raise(Notifier.POSITION_CHANGED);
+            } else if (DynamicPlayerImpl.this.started && !DynamicPlayerImpl.this.ended
+                    && DynamicPlayerImpl.this.next.get() == null) {
+                DynamicPlayerImpl.this.ended = true;
+                DynamicPlayerImpl.this.notifier.raise(Notifier.TRACK_ENDED);
+            }
+        }
+
+        /*
+         * Asks the switch to start the next song once the loaded one is within the crossfade of its end, the
+         * overlap being at most half of the song. The fade lasts as long as the loaded song has left, so that it
+         * is silent by the time it ends.
+         */
+        private void checkCrossfade(final PlaybackSource current, final int position) {
+            final int overlap = Math.min(DynamicPlayerImpl.this.crossfade, current.length() / 2);
+
+            if (overlap > 0 && position >= current.length() - overlap && DynamicPlayerImpl.this.next.get() != null) {
+                DynamicPlayerImpl.this.fadeOverlap = current.length() - position;
+                DynamicPlayerImpl.this.fadeRequested = true;
+            }
+        }
+    }
+
+    /*
+     * A thread of the player woken by the audio callback after every buffer, which notifies the listeners of the
+     * events raised meanwhile, in the order they come in a song, and closes the sources the player let go once a
+     * whole buffer has been rendered since, so the output can't be reading them anymore. Raising an event only sets
+     * a bit and waking the thread only unparks it, so the callback never allocates nor waits; position changes
+     * raised again before being notified are notified once.
+     */
+    private final class Notifier implements Runnable {
+        private static final int NEXT_TRACK_STARTED = 1;
+        private static final int POSITION_CHANGED = 2;
+        private static final int TRACK_ENDED = 4;
+
+        private final AtomicInteger events = new AtomicInteger();
+        private final List<Settling> settling = new ArrayList<>();     /* guarded by this */
+        private final Thread thread;
+        private volatile long buffers;                                  /* only written by the audio callback */
+
+        private Notifier() {
+            this.thread = new Thread(this, "Playback notifier");
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        private void raise(final int event) {
+            this.events.getAndAccumulate(event, (pending, raised) -> pending | raised);
+        }
+
+        private void rendered() {
+            this.buffers++;
+            LockSupport.unpark(this.thread);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                LockSupport.park(this);
+
+                final int raised = this.events.getAndSet(0);
+
+                this.notifyListeners(raised, NEXT_TRACK_STARTED);
+                this.notifyListeners(raised, POSITION_CHANGED);
+                this.notifyListeners(raised, TRACK_ENDED);
+                this.closeSettled();
+            }
+        }
+
+        private void notifyListeners(final int raised, final int event) {
+            if ((raised & event) == 0) {
+                return;
+            }
+            for (final PlaybackListener listener : DynamicPlayerImpl.this.listeners) {
+                try {
+                    if (event == NEXT_TRACK_STARTED) {
+                        listener.nextTrackStarted();
+                    } else if (event == POSITION_CHANGED) {
+                        listener.positionChanged();
+                    } else {
+                        listener.trackEnded();
+                    }
+                } catch (RuntimeException e) {
+                    /* a failing listener is reported, but doesn't stop the others from being notified */
+                    this.thread.getUncaughtExceptionHandler().uncaughtException(this.thread, e);
+                }
+            }
+        }
+
+        /*
+         * Closes the sources let go before the last buffer started, taking the newly retired ones.
+         */
+        private synchronized void closeSettled() {
+            final long rendered = this.buffers;
+            final Iterator<Settling> iterator = this.settling.iterator();
+
+            while (iterator.hasNext()) {
+                final Settling next = iterator.next();
+
+                if (rendered >= next.buffer) {
+                    next.source.close();
+                    iterator.remove();
+                }
+            }
+
+            PlaybackSource source = DynamicPlayerImpl.this.retired.poll();
+            while (source != null) {
+                this.settling.add(new Settling(source, rendered + 2));
+                source = DynamicPlayerImpl.this.retired.poll();
+            }
+        }
+
+        /*
+         * Closes every source let go, once the output is closed.
+         */
+        private synchronized void closeAll() {
+            this.settling.forEach(settled -> settled.source.close());
+            this.settling.clear();
+
+            PlaybackSource source = DynamicPlayerImpl.this.retired.poll();
+            while (source != null) {
+                source.close();
+                source = DynamicPlayerImpl.this.retired.poll();
+            }
+        }
+    }
+
+    /*
+     * A source let go by the player, with the number of buffers after which the output is done with it.
+     */
+    private static final class Settling {
+        private final PlaybackSource source;
+        private final long buffer;
+
+        private Settling(final PlaybackSource source, final long buffer) {
+            this.source = source;
+            this.buffer = buffer;
+        }
+    }
+
+    /*
+     * Sits between the source of the loaded song and the volume control, replacing it with the source of the next
+     * song on the frame it ends, or when asked to by the clock, unless paused or stopped. A source replaced while
+     * still playing keeps being read through the crossfade, with the gains of both sources following equal-power
+     * curves, into a frame allocated once.
+     * 
+     * It is a single UGen rather than two sources patched through two Gain stages into a Summer: patching happens
+     * between buffers and a Gain is set in decibels once per buffer, while the switch has to happen on the exact
+     * frame a song ends and the gains have to follow the curves frame by frame. The curves are stepped by rotating
+     * their sine and cosine by a fixed angle every frame, so no trigonometric function is called per frame.
+     */
+    private final class SourceSwitch extends UGen {
+        private int framesSinceSwitch;
+        private PlaybackSource outgoing;
+        private int fadeFrame;
+        private int fadeFrames;
+        private double fadeIn;                  /* gains of the two sources, sine and cosine of the fade angle */
+        private double fadeOut;
+        private double stepSin;                 /* sine and cosine of the angle the fade moves by every frame */
+        private double stepCos;
+        private float[] outgoingFrame = new float[Minim.STEREO];
+
+        @Override
+        protected void uGenerate(final float[] channels) {
+            PlaybackSource current = DynamicPlayerImpl.this.player;
+
+            if (DynamicPlayerImpl.this.fadeCancelled) {
+                DynamicPlayerImpl.this.fadeCancelled = false;
+                this.endFade();
+            }
+            if (current != null && DynamicPlayerImpl.this.started && !DynamicPlayerImpl.this.paused
+                    && (!current.isPlaying() || DynamicPlayerImpl.this.fadeRequested && this.outgoing == null)) {
+                final NextSong queued = DynamicPlayerImpl.this.next.getAndSet(null);
+
+                DynamicPlayerImpl.this.fadeRequested = false;
+                if (queued != null) {
+                    queued.source.play();
+                    if (current.isPlaying()) {
+                        this.startFade(current, Math.max(1,
+                                (int) (DynamicPlayerImpl.this.fadeOverlap * DynamicPlayerImpl.this.sampleRate / 1000)));
+                    } else {
+                        DynamicPlayerImpl.this.retired.add(current);
+                    }
+                    DynamicPlayerImpl.this.player = queued.source;
+                    DynamicPlayerImpl.this.loaded = queued.song;
+                    DynamicPlayerImpl.this.switched = true;
+                    this.framesSinceSwitch = 0;
+                    current = queued.source;
+                }
+            }
+            if (current == null) {
+                Arrays.fill(channels, 0f);
+                return;
+            }
+            current.getOutput().tick(channels);
+            this.framesSinceSwitch++;
+            if (this.outgoing != null && !DynamicPlayerImpl.this.paused) {
+                this.mixOutgoing(channels);
+            }
+        }
+
+        /*
+         * Starts fading out a source over the given frames, the curves being taken at the middle of every frame.
+         */
+        private void startFade(final PlaybackSource source, final int frames) {
+            final double step = Math.PI / 2 / frames;
+
+            this.outgoing = source;
+            this.fadeFrame = 0;
+            this.fadeFrames = frames;
+            this.stepSin = Math.sin(step);
+            this.stepCos = Math.cos(step);
+            this.fadeIn = Math.sin(step / 2);
+            this.fadeOut = Math.cos(step / 2);
+        }
+
+        private void mixOutgoing(final float[] channels) {
+            if (this.fadeFrame >= this.fadeFrames || !this.outgoing.isPlaying()) {
+                this.endFade();
+                return;
+            }
+            if (this.outgoingFrame.length != channels.length) {
+                this.outgoingFrame = new float[channels.length];
+            }
+            this.outgoing.getOutput().tick(this.outgoingFrame);
+
+            final float in = (float) this.fadeIn;
+            final float out = (float) this.fadeOut;
+
+            for (int i = 0; i < channels.length; i++) {
+                channels[i] = channels[i] * in + this.outgoingFrame[i] * out;
+            }
+            final double sin = this.fadeIn;
+
+            this.fadeIn = sin * this.stepCos + this.fadeOut * this.stepSin;
+            this.fadeOut = this.fadeOut * this.stepCos - sin * this.stepSin;
+            this.fadeFrame++;
+        }
+
+        private void endFade() {
+            if (this.outgoing != null) {
+                DynamicPlayerImpl.this.retired.add(this.outgoing);
+                this.outgoing = null;
+            }
+        }
+    }
+
+    /*
+     * The source opened for the song to be played next.
+     */
+    private static final class NextSong {
+        private final PlaybackSource source;
+        private final Optional<Song> song;
+
+        private NextSong(final PlaybackSource source, final Song song) {
+            this.source = source;
+            this.song = Optional.of(song);
+        }
     }
 }
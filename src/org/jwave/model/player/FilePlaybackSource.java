@@ -0,0 +1,71 @@
+package org.jwave.model.player;
+
+import ddf.minim.UGen;
+import ddf.minim.spi.AudioRecordingStream;
+import ddf.minim.ugens.FilePlayer;
+
+/**
+ * This class is a {@link PlaybackSource} decoding a file as it is, through a Minim {@link FilePlayer}.
+ */
+final class FilePlaybackSource implements PlaybackSource {
+
+    private final FilePlayer player;
+    private final float sampleRate;
+
+    /**
+     * Creates a source playing a stream, paused at its beginning.
+     *
+     * @param stream
+     *          the stream of the file to be played.
+     */
+    FilePlaybackSource(final AudioRecordingStream stream) {
+        this.player = new FilePlayer(stream);
+        this.player.pause();
+        this.sampleRate = stream.getFormat().getSampleRate();
+    }
+
+    @Override
+    public UGen getOutput() {
+        return this.player;
+    }
+
+    @Override
+    public void play() {
+        this.player.play();
+    }
+
+    @Override
+    public void pause() {
+        this.player.pause();
+    }
+
+    @Override
+    public void rewind() {
+        this.player.rewind();
+    }
+
+    @Override
+    public void cue(final int millis) {
+        this.player.cue(millis);
+    }
+
+    @Override
+    public int length() {
+        return this.player.length();
+    }
+
+    @Override
+    public boolean isPlaying() {
+        return this.player.isPlaying();
+    }
+
+    @Override
+    public float getSampleRate() {
+        return this.sampleRate;
+    }
+
+    @Override
+    public void close() {
+        this.player.close();
+    }
+}
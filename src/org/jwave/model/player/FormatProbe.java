@@ -0,0 +1,26 @@
+package org.jwave.model.player;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * This interface represents a service recognizing audio files from their header alone, with no decoder and no
+ * audio device involved.
+ */
+public interface FormatProbe {
+
+    /**
+     * Reads the header of a file.
+     *
+     * @param file
+     *          the file to be probed.
+     *
+     * @return
+     *          the format of the audio of the file, empty if the file isn't a supported audio file.
+     *
+     * @throws IOException
+     *          if the file can't be read.
+     */
+    Optional<ProbedFormat> probe(File file) throws IOException;
+}
@@ -0,0 +1,326 @@
+package org.jwave.model.player;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+/**
+ * This class is an implementation of {@link FormatProbe}, recognizing MP3 (MPEG audio, with or without ID3 tags),
+ * WAVE, AIFF and AU files.
+ *
+ * Only a few KB at the beginning of a file are read: the chunks of WAVE and AIFF files are walked by their
+ * headers, while the first frame of an MPEG stream must be followed by a second one to be trusted. The duration
+ * of an MPEG stream comes from its Xing header if it has one, otherwise from the bitrate of its first frame.
+ */
+public final class FormatProbeImpl implements FormatProbe {
+
+    private static final int MPEG_SEARCH = 16 * 1024;
+    private static final int ID3V2_HEADER = 10;
+    private static final int ID3V1_TAG = 128;
+    private static final int CHUNK_HEADER = 8;
+    private static final long UNSIGNED_INT = 0xFFFFFFFFL;
+    private static final long MILLIS = 1000L;
+
+    /* kbps, by MPEG-1 layer I, II, III and MPEG-2 layer I, II and III, by bitrate index */
+    private static final int[][] BITRATES = {
+        {0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448},
+        {0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},
+        {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320},
+        {0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256},
+        {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160},
+        {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160},
+    };
+    private static final int[] MPEG1_RATES = {44100, 48000, 32000};
+
+    @Override
+    public Optional<ProbedFormat> probe(final File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final ByteBuffer head = read(channel, 0, 12, ByteOrder.BIG_ENDIAN);
+
+            if (head.limit() < 4) {
+                return Optional.empty();
+            }
+            final String magic = ascii(head, 0);
+            final String form = head.limit() < 12 ? "" : ascii(head, 8);
+
+            if (magic.equals("RIFF") && form.equals("WAVE")) {
+                return this.probeWave(channel);
+            } else if (magic.equals("FORM") && (form.equals("AIFF") || form.equals("AIFC"))) {
+                return this.probeAiff(channel);
+            } else if (magic.equals(".snd")) {
+                return this.probeAu(channel);
+            }
+            return this.probeMpeg(channel);
+        }
+    }
+
+    /*
+     * Walks the chunks of a WAVE file up to its "data" chunk, reading its "fmt " chunk on the way.
+     */
+    private Optional<ProbedFormat> probeWave(final FileChannel channel) throws IOException {
+        final long size = channel.size();
+        long position = 12;
+        ByteBuffer format = null;
+
+        while (position + CHUNK_HEADER <= size) {
+            final ByteBuffer chunk = read(channel, position, CHUNK_HEADER, ByteOrder.LITTLE_ENDIAN);
+            final long length = chunk.getInt(4) & UNSIGNED_INT;
+
+            if (ascii(chunk, 0).equals("fmt ")) {
+                format = read(channel, position + CHUNK_HEADER, 16, ByteOrder.LITTLE_ENDIAN);
+            } else if (ascii(chunk, 0).equals("data") && format != null && format.limit() == 16) {
+                final int channels = format.getShort(2);
+                final int sampleRate = format.getInt(4);
+                final long byteRate = format.getInt(8) & UNSIGNED_INT;
+                final long data = Math.min(length, size - position - CHUNK_HEADER);
+
+                if (channels <= 0 || sampleRate <= 0 || byteRate == 0) {
+                    return Optional.empty();
+                }
+                return Optional.of(new ProbedFormat("WAVE", sampleRate, channels, data * MILLIS / byteRate));
+            }
+            position += CHUNK_HEADER + length + (length & 1);
+        }
+        return Optional.empty();
+    }
+
+    /*
+     * Walks the chunks of an AIFF file up to its "COMM" chunk.
+     */
+    private Optional<ProbedFormat> probeAiff(final FileChannel channel) throws IOException {
+        final long size = channel.size();
+        long position = 12;
+
+        while (position + CHUNK_HEADER <= size) {
+            final ByteBuffer chunk = read(channel, position, CHUNK_HEADER, ByteOrder.BIG_ENDIAN);
+            final long length = chunk.getInt(4) & UNSIGNED_INT;
+
+            if (ascii(chunk, 0).equals("COMM")) {
+                final ByteBuffer common = read(channel, position + CHUNK_HEADER, 18, ByteOrder.BIG_ENDIAN);
+
+                if (common.limit() < 18) {
+                    return Optional.empty();
+                }
+                final int channels = common.getShort(0);
+                final long frames = common.getInt(2) & UNSIGNED_INT;
+                final double sampleRate = extended(common, 8);
+
+                if (channels <= 0 || sampleRate <= 0) {
+                    return Optional.empty();
+                }
+                return Optional.of(new ProbedFormat("AIFF", (float) sampleRate, channels,
+                        (long) (frames * MILLIS / sampleRate)));
+            }
+            position += CHUNK_HEADER + length + (length & 1);
+        }
+        return Optional.empty();
+    }
+
+    /*
+     * Reads the fixed header of an AU file.
+     */
+    private Optional<ProbedFormat> probeAu(final FileChannel channel) throws IOException {
+        final ByteBuffer header = read(channel, 0, 24, ByteOrder.BIG_ENDIAN);
+
+        if (header.limit() < 24) {
+            return Optional.empty();
+        }
+        final long offset = header.getInt(4) & UNSIGNED_INT;
+        final long declared = header.getInt(8) & UNSIGNED_INT;
+        final int bytesPerSample = auSampleSize(header.getInt(12));
+        final int sampleRate = header.getInt(16);
+        final int channels = header.getInt(20);
+        final long data = declared == UNSIGNED_INT ? channel.size() - offset : declared;
+
+        if (bytesPerSample == 0 || sampleRate <= 0 || channels <= 0) {
+            return Optional.empty();
+        }
+        return Optional.of(new ProbedFormat("AU", sampleRate, channels,
+                data * MILLIS / ((long) bytesPerSample * channels * sampleRate)));
+    }
+
+    private static int auSampleSize(final int encoding) {
+        switch (encoding) {
+        case 1:
+        case 2:
+        case 27:
+            return 1;
+        case 3:
+            return 2;
+        case 4:
+            return 3;
+        case 5:
+        case 6:
+            return 4;
+        case 7:
+            return 8;
+        default:
+            return 0;
+        }
+    }
+
+    /*
+     * Skips an ID3v2 tag, then looks for two consecutive MPEG audio frames.
+     */
+    private Optional<ProbedFormat> probeMpeg(final FileChannel channel) throws IOException {
+        final long size = channel.size();
+        final ByteBuffer tag = read(channel, 0, ID3V2_HEADER, ByteOrder.BIG_ENDIAN);
+        long start = 0;
+
+        if (tag.limit() == ID3V2_HEADER && ascii(tag, 0).startsWith("ID3")) {
+            final int tagSize = (tag.get(6) & 0x7F) << 21 | (tag.get(7) & 0x7F) << 14
+                    | (tag.get(8) & 0x7F) << 7 | tag.get(9) & 0x7F;
+            final boolean footer = (tag.get(5) & 0x10) != 0;
+            start = ID3V2_HEADER + tagSize + (footer ? ID3V2_HEADER : 0);
+        }
+
+        final ByteBuffer data = read(channel, start, MPEG_SEARCH, ByteOrder.BIG_ENDIAN);
+        for (int i = 0; i + 4 <= data.limit(); i++) {
+            final MpegFrame frame = MpegFrame.parse(data.getInt(i));
+
+            if (frame != null && this.isFollowed(frame, data, i, start, size)) {
+                final long end = this.hasId3v1(channel) ? size - ID3V1_TAG : size;
+                final long frames = this.xingFrames(frame, data, i);
+                final long duration = frames > 0
+                        ? frames * frame.samples * MILLIS / frame.sampleRate
+                        : (end - start - i) * 8 / frame.bitrate;
+
+                return Optional.of(new ProbedFormat("MP3", frame.sampleRate, frame.channels, duration));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /*
+     * Tells whether a frame is followed by another of the same stream, or by the end of the file.
+     */
+    private boolean isFollowed(final MpegFrame frame, final ByteBuffer data, final int at, final long start,
+            final long size) {
+        final int next = at + frame.length;
+
+        if (start + next >= size) {
+            return start + next == size;
+        }
+        if (next + 4 > data.limit()) {
+            return false;
+        }
+        final MpegFrame following = MpegFrame.parse(data.getInt(next));
+        return following != null && following.sampleRate == frame.sampleRate && following.layer == frame.layer;
+    }
+
+    /*
+     * Reads the number of frames of a variable bitrate stream from the Xing or Info header of its first frame,
+     * 0 if it has none.
+     */
+    private long xingFrames(final MpegFrame frame, final ByteBuffer data, final int at) {
+        final int offset = at + 4 + frame.sideInfo;
+
+        if (offset + 12 > data.limit()) {
+            return 0;
+        }
+        final String id = ascii(data, offset);
+        if ((id.equals("Xing") || id.equals("Info")) && (data.getInt(offset + 4) & 1) != 0) {
+            return data.getInt(offset + 8) & UNSIGNED_INT;
+        }
+        return 0;
+    }
+
+    private boolean hasId3v1(final FileChannel channel) throws IOException {
+        final long size = channel.size();
+        return size >= ID3V1_TAG
+                && ascii(read(channel, size - ID3V1_TAG, 4, ByteOrder.BIG_ENDIAN), 0).startsWith("TAG");
+    }
+
+    /*
+     * Reads up to length bytes at a position, fewer at the end of the file.
+     */
+    private static ByteBuffer read(final FileChannel channel, final long position, final int length,
+            final ByteOrder order) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        int n = 0;
+
+        while (buffer.hasRemaining() && n >= 0) {
+            n = channel.read(buffer, position + buffer.position());
+        }
+        buffer.flip();
+        return buffer.order(order);
+    }
+
+    private static String ascii(final ByteBuffer buffer, final int at) {
+        if (at + 4 > buffer.limit()) {
+            return "";
+        }
+        final byte[] bytes = new byte[4];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(at + i);
+        }
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    /*
+     * Converts an 80 bit IEEE 754 extended precision number, as AIFF sample rates are stored.
+     */
+    private static double extended(final ByteBuffer buffer, final int at) {
+        final int exponent = (buffer.getShort(at) & 0x7FFF) - 16383;
+        final long mantissa = buffer.getLong(at + 2);
+        return (mantissa >>> 1) * Math.pow(2, exponent - 62);
+    }
+
+    /*
+     * The header of an MPEG audio frame.
+     */
+    private static final class MpegFrame {
+        private final int layer;
+        private final int sampleRate;
+        private final int bitrate;          /* kbps, that is bits per millisecond */
+        private final int channels;
+        private final int samples;
+        private final int sideInfo;
+        private final int length;
+
+        private MpegFrame(final int layer, final int sampleRate, final int bitrate, final int channels,
+                final int samples, final int sideInfo, final int length) {
+            this.layer = layer;
+            this.sampleRate = sampleRate;
+            this.bitrate = bitrate;
+            this.channels = channels;
+            this.samples = samples;
+            this.sideInfo = sideInfo;
+            this.length = length;
+        }
+
+        /*
+         * Parses a frame header, null if it isn't a valid one.
+         */
+        private static MpegFrame parse(final int header) {
+            if ((header >>> 21) != 0x7FF) {
+                return null;
+            }
+            final int version = header >>> 19 & 3;      /* 0: MPEG-2.5, 2: MPEG-2, 3: MPEG-1 */
+            final int layer = 4 - (header >>> 17 & 3);
+            final int bitrateIndex = header >>> 12 & 0xF;
+            final int rateIndex = header >>> 10 & 3;
+            final int padding = header >>> 9 & 1;
+            final int channels = (header >>> 6 & 3) == 3 ? 1 : 2;
+
+            if (version == 1 || layer == 4 || bitrateIndex == 0 || bitrateIndex == 0xF || rateIndex == 3) {
+                return null;
+            }
+            final boolean mpeg1 = version == 3;
+            final int bitrate = BITRATES[(mpeg1 ? 0 : 3) + layer - 1][bitrateIndex];
+            final int sampleRate = MPEG1_RATES[rateIndex] >> (mpeg1 ? 0 : version == 2 ? 1 : 2);
+            final int samples = layer == 1 ? 384 : layer == 3 && !mpeg1 ? 576 : 1152;
+            final int length = layer == 1
+                    ? (12 * bitrate * 1000 / sampleRate + padding) * 4
+                    : samples / 8 * bitrate * 1000 / sampleRate + padding;
+            final int sideInfo = layer != 3 ? 0 : mpeg1 ? (channels == 1 ? 17 : 32) : (channels == 1 ? 9 : 17);
+
+            return new MpegFrame(layer, sampleRate, bitrate, channels, samples, sideInfo, length);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package org.jwave.model.player;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import ddf.minim.AudioOutput;
+import ddf.minim.Minim;
+
+/**
+ * This class keeps the output lines opened by a {@link DynamicPlayer}, one for every sample rate and channel count
+ * asked for, so that they stay open across songs: opening a line of the audio device takes far longer than patching
+ * a song to a line already running.
+ */
+final class OutputLinePool {
+
+    private final Minim minim;
+    private final int bufferSize;
+    private final int bitDepth;
+    private final Map<LineFormat, AudioOutput> lines;
+
+    /**
+     * Creates an empty pool.
+     *
+     * @param minim
+     *          the Minim instance opening the lines.
+     * @param bufferSize
+     *          the size of the buffer of every line, in frames.
+     * @param bitDepth
+     *          the bit depth of every line.
+     */
+    OutputLinePool(final Minim minim, final int bufferSize, final int bitDepth) {
+        this.minim = minim;
+        this.bufferSize = bufferSize;
+        this.bitDepth = bitDepth;
+        this.lines = new HashMap<>();
+    }
+
+    /**
+     * Gives the line of a format, opening it the first time it is asked for.
+     *
+     * @param sampleRate
+     *          the sample rate of the line.
+     * @param channels
+     *          the channel count of the line, {@link Minim#MONO} or {@link Minim#STEREO}.
+     * @return
+     *          the line, empty if the audio device can't open a line of that format.
+     */
+    synchronized Optional<AudioOutput> get(final float sampleRate, final int channels) {
+        final LineFormat format = new LineFormat(sampleRate, channels);
+        AudioOutput line = this.lines.get(format);
+
+        if (line == null) {
+            line = this.minim.getLineOut(channels, this.bufferSize, sampleRate, this.bitDepth);
+            if (line != null) {
+                this.lines.put(format, line);
+            }
+        }
+        return Optional.ofNullable(line);
+    }
+
+    /**
+     * Closes all the lines of the pool.
+     *
+     * @return
+     *          whether any line was open.
+     */
+    synchronized boolean closeAll() {
+        final boolean open = !this.lines.isEmpty();
+
+        this.lines.values().forEach(AudioOutput::close);
+        this.lines.clear();
+        return open;
+    }
+
+    /*
+     * The format a line is opened with.
+     */
+    private static final class LineFormat {
+        private final float sampleRate;
+        private final int channels;
+
+        private LineFormat(final float sampleRate, final int channels) {
+            this.sampleRate = sampleRate;
+            this.channels = channels;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof LineFormat)) {
+                return false;
+            }
+
+            final LineFormat other = (LineFormat) obj;
+
+            return Float.compare(this.sampleRate, other.sampleRate) == 0 && this.channels == other.channels;
+        }
+
+        @Override
+        public int hashCode() {
+            return Float.floatToIntBits(this.sampleRate) * 31 + this.channels;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package org.jwave.model.player;
+
+/**
+ * This interface represents an object notified by a {@link DynamicPlayer} about its reproduction.
+ *
+ * Notifications come from a thread of the player, in order, after the buffers of audio rendered: implementations
+ * should return quickly, as the next notifications wait for them.
+ */
+public interface PlaybackListener {
+
+    /**
+     * Called after a buffer of the loaded song has been rendered, so the position of the player has moved.
+     * Buffers rendered before the previous call returned are notified once. Not raised while the player is paused
+     * or stopped.
+     */
+    void positionChanged();
+
+    /**
+     * Called once when the loaded song reaches its end by itself, not when the player is paused or stopped.
+     */
+    void trackEnded();
+
+    /**
+     * Called when the song opened with {@link DynamicPlayer#setNextPlayer(java.util.Optional)} has replaced the
+     * loaded one, right where it ended. No {@link #trackEnded()} is called then.
+     */
+    void nextTrackStarted();
+}
@@ -0,0 +1,100 @@
+package org.jwave.model.player;
+
+/**
+ * This class represents the position of a {@link DynamicPlayer} as counted by its audio output: the frame of the
+ * loaded song reached by the last buffer rendered, and when that buffer was rendered. Between two buffers the
+ * position can be interpolated from the sample rate, with no need to ask the player again.
+ */
+public final class PlaybackPosition {
+
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final long frame;
+    private final long timestamp;
+    private final float sampleRate;
+    private final boolean moving;
+    private final int maxAdvance;
+
+    /**
+     * Creates a new PlaybackPosition.
+     *
+     * @param frame
+     *          the frame of the song reached.
+     * @param timestamp
+     *          the time the frame was reached, as given by {@link System#nanoTime()}.
+     * @param sampleRate
+     *          the rate the frames are rendered at.
+     * @param moving
+     *          whether the song is playing, so the position moves on from the frame.
+     * @param maxAdvance
+     *          how many frames the position may move on before the next buffer is rendered.
+     */
+    PlaybackPosition(final long frame, final long timestamp, final float sampleRate, final boolean moving,
+            final int maxAdvance) {
+        this.frame = frame;
+        this.timestamp = timestamp;
+        this.sampleRate = sampleRate;
+        this.moving = moving;
+        this.maxAdvance = maxAdvance;
+    }
+
+    /**
+     * @return
+     *          the frame of the song reached by the last buffer rendered.
+     */
+    public long getFrame() {
+        return this.frame;
+    }
+
+    /**
+     * @return
+     *          the time the frame was reached, as given by {@link System#nanoTime()}.
+     */
+    public long getTimestamp() {
+        return this.timestamp;
+    }
+
+    /**
+     * @return
+     *          the rate the frames are rendered at.
+     */
+    public float getSampleRate() {
+        return this.sampleRate;
+    }
+
+    /**
+     * @return
+     *          whether the song is playing, so the position moves on from the frame.
+     */
+    public boolean isMoving() {
+        return this.moving;
+    }
+
+    /**
+     * Interpolates the frame being played at a given time, never further than the next buffer can move it.
+     *
+     * @param nanoTime
+     *          the time, as given by {@link System#nanoTime()}.
+     * @return
+     *          the frame of the song played at that time.
+     */
+    public long frameAt(final long nanoTime) {
+        if (!this.moving || nanoTime <= this.timestamp) {
+            return this.frame;
+        }
+        final long advance = (long) ((nanoTime - this.timestamp) * (double) this.sampleRate / NANOS_PER_SECOND);
+        return this.frame + Math.min(advance, this.maxAdvance);
+    }
+
+    /**
+     * Interpolates the position at a given time.
+     *
+     * @param nanoTime
+     *          the time, as given by {@link System#nanoTime()}.
+     * @return
+     *          the position in milliseconds of the song played at that time.
+     */
+    public int millisAt(final long nanoTime) {
+        return (int) Math.round(this.frameAt(nanoTime) * 1000.0 / this.sampleRate);
+    }
+}
@@ -0,0 +1,63 @@
+package org.jwave.model.player;
+
+import ddf.minim.UGen;
+
+/**
+ * This interface represents where a {@link DynamicPlayer} takes the audio of the loaded song from.
+ *
+ * Positions and lengths are in milliseconds, as in {@link DynamicPlayer}.
+ */
+public interface PlaybackSource {
+
+    /**
+     * @return
+     *          the unit generator producing the audio, to be patched to the output.
+     */
+    UGen getOutput();
+
+    /**
+     * Starts producing the audio of the song.
+     */
+    void play();
+
+    /**
+     * Stops producing audio, keeping the position.
+     */
+    void pause();
+
+    /**
+     * Moves back to the beginning of the song.
+     */
+    void rewind();
+
+    /**
+     * Moves to a position of the song.
+     *
+     * @param millis
+     *          the position to move to, clamped to the length of the song.
+     */
+    void cue(int millis);
+
+    /**
+     * @return
+     *          the length of the song in milliseconds.
+     */
+    int length();
+
+    /**
+     * @return
+     *          whether audio of the song is being produced, false once its end has been reached.
+     */
+    boolean isPlaying();
+
+    /**
+     * @return
+     *          the sample rate of the audio produced.
+     */
+    float getSampleRate();
+
+    /**
+     * Releases the resources held by the source.
+     */
+    void close();
+}
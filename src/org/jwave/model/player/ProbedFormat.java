@@ -0,0 +1,64 @@
+package org.jwave.model.player;
+
+/**
+ * This class represents the format of an audio file as told by its header, read by a {@link FormatProbe}.
+ */
+public final class ProbedFormat {
+
+    private final String encoding;
+    private final float sampleRate;
+    private final int channels;
+    private final long duration;
+
+    /**
+     * Creates a new ProbedFormat.
+     *
+     * @param encoding
+     *          the name of the encoding of the file.
+     * @param sampleRate
+     *          the sample rate of the audio.
+     * @param channels
+     *          the number of channels of the audio.
+     * @param duration
+     *          the estimated duration of the audio in milliseconds.
+     */
+    ProbedFormat(final String encoding, final float sampleRate, final int channels, final long duration) {
+        this.encoding = encoding;
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.duration = duration;
+    }
+
+    /**
+     * @return
+     *          the name of the encoding of the file, as MP3 or WAVE.
+     */
+    public String getEncoding() {
+        return this.encoding;
+    }
+
+    /**
+     * @return
+     *          the sample rate of the audio.
+     */
+    public float getSampleRate() {
+        return this.sampleRate;
+    }
+
+    /**
+     * @return
+     *          the number of channels of the audio.
+     */
+    public int getChannels() {
+        return this.channels;
+    }
+
+    /**
+     * @return
+     *          the duration of the audio in milliseconds, estimated from the size of the file when the header
+     *          doesn't tell it.
+     */
+    public long getDuration() {
+        return this.duration;
+    }
+}
@@ -0,0 +1,17 @@
+package org.jwave.model.player;
+
+/**
+ * A song whose audio is not just its file decoded from the beginning to the end, so it provides the
+ * {@link PlaybackSource} a {@link DynamicPlayer} has to play it from.
+ *
+ */
+public interface RenderedSong extends Song {
+
+    /**
+     * Creates a new source producing the audio of the song, paused at its beginning.
+     *
+     * @return
+     *          the new source, to be closed by the caller.
+     */
+    PlaybackSource createPlaybackSource();
+}
@@ -0,0 +1,114 @@
+package org.jwave.model.player;
+
+import java.util.Arrays;
+
+import ddf.minim.UGen;
+
+/**
+ * This class is a {@link PlaybackSource} converting the audio of another source to the sample rate of the output
+ * line, inside the audio callback, by linear interpolation between its frames. It lets a song be played on a line
+ * already open at another rate.
+ */
+final class ResampledSource extends UGen implements PlaybackSource {
+
+    private static final int CHANNELS = 2;
+
+    private final PlaybackSource source;
+    private final float sampleRate;
+    private final double step;
+    private float[] previous;
+    private float[] following;
+    private double phase;
+    private volatile boolean primed;
+
+    /**
+     * Creates a source playing another one at a given sample rate.
+     *
+     * @param source
+     *          the source to be converted, closed along with this one.
+     * @param sampleRate
+     *          the sample rate of the line the audio goes to.
+     */
+    ResampledSource(final PlaybackSource source, final float sampleRate) {
+        this.source = source;
+        this.sampleRate = sampleRate;
+        this.step = source.getSampleRate() / sampleRate;
+        this.previous = new float[CHANNELS];
+        this.following = new float[CHANNELS];
+        this.setChannelCount(CHANNELS);
+    }
+
+    @Override
+    public UGen getOutput() {
+        return this;
+    }
+
+    @Override
+    public void play() {
+        this.source.play();
+    }
+
+    @Override
+    public void pause() {
+        this.source.pause();
+    }
+
+    @Override
+    public void rewind() {
+        this.source.rewind();
+        this.primed = false;
+    }
+
+    @Override
+    public void cue(final int millis) {
+        this.source.cue(millis);
+        this.primed = false;
+    }
+
+    @Override
+    public int length() {
+        return this.source.length();
+    }
+
+    @Override
+    public boolean isPlaying() {
+        return this.source.isPlaying();
+    }
+
+    @Override
+    public float getSampleRate() {
+        return this.sampleRate;
+    }
+
+    @Override
+    public void close() {
+        this.source.close();
+    }
+
+    @Override
+    protected void uGenerate(final float[] channels) {
+        if (!this.source.isPlaying()) {
+            Arrays.fill(channels, 0f);
+            return;
+        }
+        if (!this.primed) {
+            this.source.getOutput().tick(this.previous);
+            this.source.getOutput().tick(this.following);
+            this.phase = 0;
+            this.primed = true;
+        }
+        while (this.phase >= 1) {
+            final float[] swap = this.previous;
+            this.previous = this.following;
+            this.following = swap;
+            this.source.getOutput().tick(this.following);
+            this.phase -= 1;
+        }
+        for (int i = 0; i < channels.length; i++) {
+            final int channel = Math.min(i, CHANNELS - 1);
+            channels[i] = this.previous[channel]
+                    + (float) ((this.following[channel] - this.previous[channel]) * this.phase);
+        }
+        this.phase += this.step;
+    }
+}
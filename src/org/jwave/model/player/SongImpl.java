@@ -6,6 +6,7 @@ import java.io.Serializable;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Map;
 import java.util.UUID;
 
 import com.mpatric.mp3agic.InvalidDataException;
@@ -24,6 +25,7 @@ public class SongImpl implements Song, Serializable {
     private final File decorated;
     private final UUID songID;
     private transient MetaDataManager metaData;
+    private transient long metaDataTimestamp;
     
     /**
      * Creates a new song object.
@@ -40,10 +42,41 @@ public class SongImpl implements Song, Serializable {
      * @throws UnsupportedTagException 
      */
     public SongImpl(final File audioFile) {
+        this(audioFile, UUID.randomUUID());
+    }
+    
+    /**
+     * Creates a song object already known by an identifier, reading its metadata.
+     * 
+     * @param audioFile
+     *          the audio file that will become a song.
+     * @param id
+     *          the identifier of the song.
+     */
+    public SongImpl(final File audioFile, final UUID id) {
         this.decorated = audioFile;   
-        this.songID = UUID.randomUUID();
-        final Path pathForMetaData = Paths.get(this.decorated.getAbsolutePath());
-        this.metaData = new MetaDataManagerImpl(pathForMetaData);  
+        this.songID = id;
+        this.refreshMetaData();
+    }
+    
+    /**
+     * Creates a song object already known by an identifier, with the metadata saved for it: the file is not
+     * parsed unless more than these values is needed.
+     * 
+     * @param audioFile
+     *          the audio file that will become a song.
+     * @param id
+     *          the identifier of the song.
+     * @param tags
+     *          the saved values of the metadata.
+     * @param timestamp
+     *          the last modification time of the file when the metadata were read.
+     */
+    public SongImpl(final File audioFile, final UUID id, final Map<MetaData, String> tags, final long timestamp) {
+        this.decorated = audioFile;   
+        this.songID = id;
+        this.metaData = new CachedMetaDataManager(Paths.get(this.decorated.getAbsolutePath()), tags);
+        this.metaDataTimestamp = timestamp;
     }
     
     @Override
@@ -69,6 +102,15 @@ public class SongImpl implements Song, Serializable {
     @Override
     public void refreshMetaData() {
         final Path pathForMetaData = Paths.get(this.decorated.getAbsolutePath());
+        this.metaDataTimestamp = this.decorated.lastModified();
         this.metaData = new MetaDataManagerImpl(pathForMetaData); 
     }
+    
+    /**
+     * @return
+     *          the last modification time of the file when its metadata were read, 0 if unknown.
+     */
+    public long getMetaDataTimestamp() {
+        return this.metaDataTimestamp;
+    }
 }
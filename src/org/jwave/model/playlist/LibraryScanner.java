@@ -0,0 +1,33 @@
+package org.jwave.model.playlist;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.jwave.model.player.Song;
+
+/**
+ * Interface that models a scanner importing whole folders of audio files in background. Files are validated and
+ * their tags are read in parallel, so that the songs found can be added to a playlist all at once.
+ */
+public interface LibraryScanner {
+
+    /**
+     * Looks for audio files among some files and through the folders among them, at any depth.
+     *
+     * @param roots
+     *          the files and folders to be scanned.
+     *
+     * @return
+     *          a future completed with the songs of the audio files found, in the order they were met, files that
+     *          don't contain audio data being skipped, or completed exceptionally with an
+     *          {@link java.io.UncheckedIOException} if one of the roots can't be read.
+     */
+    CompletableFuture<List<Song>> scan(Collection<File> roots);
+
+    /**
+     * Stops the threads of the scanner, once the scans already started are over.
+     */
+    void shutdown();
+}
@@ -0,0 +1,124 @@
+package org.jwave.model.playlist;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import org.jwave.model.player.FormatProbe;
+import org.jwave.model.player.FormatProbeImpl;
+import org.jwave.model.player.Song;
+import org.jwave.model.player.SongImpl;
+
+/**
+ * This is an implementation of {@link LibraryScanner}.
+ *
+ * Folders are walked by one task, every file with a known extension then gets its own task on a pool of a few
+ * threads: a file is validated by a {@link FormatProbe} reading its header, with no decoder or audio line opened,
+ * and the tags of the valid ones are read in the same task.
+ */
+public class LibraryScannerImpl implements LibraryScanner {
+
+    private static final int MAX_WORKERS = 4;
+    private static final List<String> EXTENSIONS = Arrays.asList(".mp3", ".wav", ".aif", ".aiff", ".au");
+
+    private final ExecutorService workers;
+    private final FormatProbe probe;
+
+    /**
+     * Creates a new LibraryScannerImpl.
+     */
+    public LibraryScannerImpl() {
+        this.probe = new FormatProbeImpl();
+        final int count = Math.max(1, Math.min(MAX_WORKERS, Runtime.getRuntime().availableProcessors()));
+        this.workers = Executors.newFixedThreadPool(count, r -> {
+            final Thread thread = new Thread(r, "Library scanner");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<Song>> scan(final Collection<File> roots) {
+        return CompletableFuture.supplyAsync(() -> this.walk(roots), this.workers).thenCompose(files -> {
+            final List<CompletableFuture<Optional<Song>>> songs = files.stream()
+                    .map(f -> CompletableFuture.supplyAsync(() -> this.read(f), this.workers))
+                    .collect(Collectors.toList());
+
+            return CompletableFuture.allOf(songs.toArray(new CompletableFuture<?>[songs.size()]))
+                    .thenApply(done -> songs.stream()
+                            .map(CompletableFuture::join)
+                            .filter(Optional::isPresent)
+                            .map(Optional::get)
+                            .collect(Collectors.toList()));
+        });
+    }
+
+    @Override
+    public void shutdown() {
+        this.workers.shutdown();
+    }
+
+    /*
+     * Lists the files with a known extension, skipping the files and folders inside the roots that can't be read.
+     * A root that can't be read itself fails the scan.
+     */
+    private List<File> walk(final Collection<File> roots) {
+        final List<File> out = new ArrayList<>();
+
+        for (final File root : roots) {
+            try {
+                Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                        if (attrs.isRegularFile() && hasAudioExtension(file)) {
+                            out.add(file.toFile());
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(final Path file, final IOException exc) throws IOException {
+                        if (file.equals(root.toPath())) {
+                            throw exc;
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to scan " + root.getName(), e);
+            }
+        }
+        return out;
+    }
+
+    private static boolean hasAudioExtension(final Path file) {
+        final String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return EXTENSIONS.stream().anyMatch(name::endsWith);
+    }
+
+    /*
+     * Creates the song of a file, reading its tags, if its header is one of an audio file.
+     */
+    private Optional<Song> read(final File file) {
+        try {
+            return this.probe.probe(file).isPresent() ? Optional.of(new SongImpl(file)) : Optional.empty();
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+}
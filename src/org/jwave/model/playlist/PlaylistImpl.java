@@ -37,8 +37,20 @@ public class PlaylistImpl implements Playlist, Serializable {
      *          the name of the playlist.
      */
     public PlaylistImpl(final String name) {
+        this(name, UUID.randomUUID());
+    }
+    
+    /**
+     * Creates a new empty playlist already known by an identifier.
+     * 
+     * @param name
+     *          the name of the playlist.
+     * @param id
+     *          the identifier of the playlist.
+     */
+    public PlaylistImpl(final String name, final UUID id) {
         this.playlistName = name;
-        this.playlistID = UUID.randomUUID();
+        this.playlistID = id;
         this.idList = new LinkedList<>();
         this.map = new HashMap<>();
         this.set = new HashSet<>();
@@ -31,6 +31,14 @@ public interface PlaylistManager {
      */
     Song addAudioFile(File audioFile) throws IllegalArgumentException;
     
+    /**
+     * Adds songs already validated, as the ones found by a {@link LibraryScanner}, to the default playlist.
+     * 
+     * @param songs
+     *          the songs to be added, in order.
+     */
+    void addSongs(Collection<? extends Song> songs);
+    
     /**
      * Creates a new playlist and adds it to the collection of available playlists.
      * 
@@ -88,6 +96,13 @@ public interface PlaylistManager {
      */
     Optional<Song> next();
     
+    /**
+     * 
+     * @return
+     *          the song next() will return, without moving the playing queue to it, or empty if it is not known yet.
+     */
+    Optional<Song> peekNext();
+    
     /**
      * 
      * @return
@@ -152,6 +167,13 @@ public interface PlaylistManager {
      */
     PlayMode getPlayMode();
     
+    /**
+     * @return
+     *          how long (in milliseconds) the songs of the playing queue overlap, fading one into the next
+     *          (default is 0, no crossfade).
+     */
+    int getCrossfade();
+    
     /**
      * Sets the available playlists.
      * 
@@ -167,6 +189,16 @@ public interface PlaylistManager {
      */
     void setPlayMode(PlayMode newPlayMode);
     
+    /**
+     * Sets how long the songs of the playing queue overlap, the next one fading in as the current one fades out.
+     * 
+     * @param millis
+     *          the length of the overlap in milliseconds, 0 for the songs to follow each other with no gap.
+     * @throws IllegalArgumentException
+     *          if millis < 0.
+     */
+    void setCrossfade(int millis);
+    
     
     /**
      * Sets the current playing queue.
@@ -1,6 +1,7 @@
 package org.jwave.model.playlist;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -11,8 +12,8 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 
-import org.jwave.model.player.DynamicPlayer;
-import org.jwave.model.player.DynamicPlayerImpl;
+import org.jwave.model.player.FormatProbe;
+import org.jwave.model.player.FormatProbeImpl;
 import org.jwave.model.player.Song;
 import org.jwave.model.player.SongImpl;
 import org.jwave.model.playlist.navigator.PlaylistNavigatorFactory;
@@ -28,7 +29,9 @@ public class PlaylistManagerImpl implements PlaylistManager {
     private Optional<Integer> currentIndex;
     private PlaylistNavigator navigator;
     private PlayMode playMode;
+    private volatile int crossfade;
     private final PlaylistNavigatorFactory navFactory;
+    private final FormatProbe probe;
     
     /**
      * Creates a new PlaylistManagerImpl.
@@ -38,6 +41,7 @@ public class PlaylistManagerImpl implements PlaylistManager {
      */
     public PlaylistManagerImpl(final Playlist newDefaultQueue) {
         this.navFactory = new PlaylistNavigatorFactory();
+        this.probe = new FormatProbeImpl();
         this.defaultQueue = newDefaultQueue;
         this.availablePlaylists = new HashSet<>();
         this.currentIndex = Optional.empty();
@@ -50,18 +54,22 @@ public class PlaylistManagerImpl implements PlaylistManager {
 
     @Override
     public Song addAudioFile(final File audioFile) throws IllegalArgumentException {
-        final Song out = new SongImpl(audioFile);
-        final DynamicPlayer tester = new DynamicPlayerImpl();
         try {
-            tester.setPlayer(out);
-        } catch (Exception e) {
-            throw new IllegalArgumentException();
-        } finally {
-            tester.releasePlayerResources();
+            if (!this.probe.probe(audioFile).isPresent()) {
+                throw new IllegalArgumentException();
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
         }
+        final Song out = new SongImpl(audioFile);
         this.defaultQueue.addSong(out);
         return out;
     }  
+
+    @Override
+    public void addSongs(final Collection<? extends Song> songs) {
+        songs.forEach(this.defaultQueue::addSong);
+    }
     
     @Override
     public Playlist createNewPlaylist(final String name) {
@@ -76,11 +84,7 @@ public class PlaylistManagerImpl implements PlaylistManager {
 
     @Override
     public void deletePlaylist(final UUID playlistID) {
-        this.availablePlaylists.forEach(p -> {
-            if (p.getPlaylistID().equals(playlistID)) {
-                this.availablePlaylists.remove(p);
-            }
-        });
+        this.availablePlaylists.removeIf(p -> p.getPlaylistID().equals(playlistID));
     }
     
     @Override
@@ -102,6 +106,11 @@ public class PlaylistManagerImpl implements PlaylistManager {
         return this.retrieveSong(this.navigator.next());
     }
 
+    @Override
+    public Optional<Song> peekNext() {
+        return this.retrieveSong(this.navigator.peekNext());
+    }
+
     @Override
     public Optional<Song> prev() {
         return this.retrieveSong(this.navigator.prev());
@@ -159,6 +168,19 @@ public class PlaylistManagerImpl implements PlaylistManager {
         this.playMode = newPlayMode;
         this.setNavigator(newPlayMode);
     }
+
+    @Override
+    public int getCrossfade() {
+        return this.crossfade;
+    }
+
+    @Override
+    public void setCrossfade(final int millis) throws IllegalArgumentException {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Value not allowed");
+        }
+        this.crossfade = millis;
+    }
     
     @Override
     public void setQueue(final Playlist playlist) {
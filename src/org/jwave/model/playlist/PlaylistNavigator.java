@@ -17,6 +17,13 @@ public interface PlaylistNavigator extends EObserver<Integer> {
      */
     Optional<Integer> next();
     
+    /**
+     * 
+     * @return
+     *          the index next() will return, without moving to it, or empty if it is not known yet.
+     */
+    Optional<Integer> peekNext();
+    
     /**
      * 
      * @return
@@ -35,6 +35,12 @@ public abstract class AbstractPlaylistNavigator implements PlaylistNavigator {
      */
     public abstract Optional<Integer> next();
 
+    /**
+     * @return 
+     *          the next index that has to be selected in playlist, which is not selected yet.
+     */
+    public abstract Optional<Integer> peekNext();
+
     /**
      * @return 
      *          the previous index that has to be selected in playlist.
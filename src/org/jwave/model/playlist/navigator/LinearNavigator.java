@@ -37,6 +37,15 @@ public class LinearNavigator extends AbstractPlaylistNavigator {
         return this.getCurrentIndex();
     }
 
+    @Override
+    public Optional<Integer> peekNext() {
+        if (this.getCurrentIndex().isPresent()) {
+            return Optional.of(this.getCurrentIndex().get() < (this.getPlaylistDimension() - 1) 
+                    ? this.getCurrentIndex().get() + 1 : 0);
+        }
+        return this.getPlaylistDimension() > 0 ? Optional.of(0) : Optional.empty();
+    }
+
     @Override
     public Optional<Integer> prev() {
         if (this.getCurrentIndex().isPresent()) {
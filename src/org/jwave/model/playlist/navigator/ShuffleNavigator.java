@@ -45,6 +45,19 @@ public final class ShuffleNavigator extends AbstractPlaylistNavigator {
        return Optional.of(this.shuffledList.get(this.getCurrentIndex().get()));
     }
 
+    @Override
+    public Optional<Integer> peekNext() {
+        if (!this.getCurrentIndex().isPresent() || this.getPlaylistDimension() == 0) {
+            return Optional.empty();
+        }
+        final int next = this.getCurrentIndex().get() + 1;
+        /* past the end of the order next() shuffles again, so the next song is not known yet */
+        if (next >= this.shuffledList.size() || this.shuffledList.get(next) >= this.getPlaylistDimension()) {
+            return Optional.empty();
+        }
+        return Optional.of(this.shuffledList.get(next));
+    }
+
     @Override
     public Optional<Integer> prev() {
        if (this.getCurrentIndex().equals(Optional.empty())) {
@@ -2,13 +2,48 @@ package org.jwave.test.editor;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.jwave.controller.editor.Editor;
 import org.jwave.controller.editor.EditorImpl;
+import org.jwave.model.editor.Cut;
+import org.jwave.model.editor.CutImpl;
+import org.jwave.model.editor.CutTree;
+import org.jwave.model.editor.GroupedWaveform;
+import org.jwave.model.editor.ModifiableSong;
+import org.jwave.model.editor.ModifiableSongImpl;
+import org.jwave.model.editor.PcmSource;
+import org.jwave.model.editor.PcmSourceImpl;
+import org.jwave.model.editor.SegmentImpl;
+import org.jwave.model.editor.WaveFileSource;
+import org.jwave.model.editor.WaveFileWriter;
+import org.jwave.model.editor.WaveformPyramid;
+import org.jwave.model.editor.WaveformTile;
+import org.jwave.model.player.PlaybackSource;
 import org.jwave.model.player.SongImpl;
 
 /**
@@ -18,9 +53,18 @@ import org.jwave.model.player.SongImpl;
  */
 public class TestEditorImpl {
 	private static final Editor songEditor = new EditorImpl();
+	private static final String PEAKS_DIR = "jwave.peaks.dir";
+	
+	@ClassRule
+	public static final TemporaryFolder PEAKS = new TemporaryFolder();
+	
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
 	
     @BeforeClass
     public static void oneTimeSetUp() {
+    	/* the waveform caches of the songs are written to a folder removed afterwards */
+    	System.setProperty(PEAKS_DIR, PEAKS.getRoot().getAbsolutePath());
         songEditor.loadSongToEdit(new SongImpl(
         						new File(System.getProperty("user.dir") + 
         								System.getProperty("file.separator") + "res" 
@@ -28,6 +72,11 @@ public class TestEditorImpl {
         								+System.getProperty("file.separator") + "Snow Time.mp3")));
     }
     
+    @AfterClass
+    public static void oneTimeTearDown() {
+    	System.clearProperty(PEAKS_DIR);
+    }
+    
     @Before
     public void setUp() {
     	songEditor.resetSong();
@@ -385,4 +434,797 @@ public class TestEditorImpl {
 		assertTrue(songEditor.getSong().getCut(1).getSegments().size() == 1);
 		assertTrue(songEditor.getSong().getCut(1).getSegment(0).getFrom() == 250000 && songEditor.getSong().getCut(1).getSegment(0).getTo() == songEditor.getOriginalSongLength());			
 	}		
+	
+	@Test
+	public void testUndoAndRedo() {
+		songEditor.setSelectionFrom(10000);
+		songEditor.setSelectionTo(100000);
+		songEditor.cutSelection();
+		songEditor.deselectSelection();
+		songEditor.setSelectionFrom(50000);
+		songEditor.pasteCopiedSelection();
+		
+		assertTrue(songEditor.getSong().getCuts().size() == 4);
+		assertTrue(songEditor.canUndo());
+		assertFalse(songEditor.canRedo());
+		
+		songEditor.undo();
+		
+		assertTrue(songEditor.getSong().getCuts().size() == 2);	
+		assertTrue(songEditor.getModifiedSongLength() == songEditor.getOriginalSongLength() - 90001);
+		assertTrue(songEditor.getSong().getCut(1).getSegment(0).getFrom() == 100001);
+		assertTrue(songEditor.canRedo());
+		
+		songEditor.undo();
+		
+		assertTrue(songEditor.getSong().getCuts().size() == 1);
+		assertTrue(songEditor.getModifiedSongLength() == songEditor.getOriginalSongLength());
+		
+		songEditor.redo();
+		songEditor.redo();
+		
+		assertTrue(songEditor.getSong().getCuts().size() == 4);
+		assertTrue(songEditor.getModifiedSongLength() == songEditor.getOriginalSongLength());
+		assertFalse(songEditor.canRedo());
+		
+		songEditor.undo();
+		songEditor.setSelectionFrom(0);
+		songEditor.setSelectionTo(1000);
+		songEditor.cutSelection();
+		
+		assertFalse(songEditor.canRedo());
+	}	
+	
+	@Test
+	public void testStoredCutsWalkedWithoutCopies() {
+		songEditor.setSelectionFrom(10000);
+		songEditor.setSelectionTo(100000);
+		songEditor.cutSelection();
+		songEditor.deselectSelection();
+		songEditor.setSelectionFrom(50000);
+		songEditor.pasteCopiedSelection();
+		
+		CutTree cuts = CutTree.of(songEditor.getSong().getCuts()).remove(0);
+		
+		for (int i = 0; i < cuts.size(); i++) {
+			/* the stored cut is returned as it is, its position is derived on its own */
+			assertSame(cuts.getStored(i), cuts.getStored(i));
+			assertSame(cuts.getStored(i).getSegments(), cuts.get(i).getSegments());
+			assertEquals(cuts.get(i).getFrom(), cuts.spanBefore(i));
+		}
+		assertEquals(cuts.getSpan(), cuts.spanBefore(cuts.size()));
+	}
+	
+	@Test
+	public void testCutTreeMatchesList() {
+		Random random = new Random(42);
+		List<Cut> expected = new ArrayList<>();
+		CutTree cuts = CutTree.empty();
+		
+		for (int step = 0; step < 500; step++) {
+			int length = 1 + random.nextInt(1000);
+			int origin = random.nextInt(100000);
+			Cut cut = new CutImpl(0, length, Arrays.asList(new SegmentImpl(origin, origin + length)));
+			CutTree before = cuts;
+			int beforeSize = before.size();
+			int beforeSpan = before.getSpan();
+			
+			if (expected.isEmpty() || random.nextInt(3) == 0) {
+				int index = random.nextInt(expected.size() + 1);
+				cuts = cuts.insert(index, cut);
+				expected.add(index, cut);
+			} else if (random.nextBoolean()) {
+				int index = random.nextInt(expected.size());
+				cuts = cuts.remove(index);
+				expected.remove(index);
+			} else {
+				int index = random.nextInt(expected.size());
+				cuts = cuts.set(index, cut);
+				expected.set(index, cut);
+			}
+			
+			/* the tree is persistent, an edit leaves the previous one as it was */
+			assertEquals(beforeSize, before.size());
+			assertEquals(beforeSpan, before.getSpan());
+			
+			assertEquals(expected.size(), cuts.size());
+			int position = 0;
+			for (int i = 0; i < expected.size(); i++) {
+				Cut stored = expected.get(i);
+				assertEquals(position, cuts.spanBefore(i));
+				assertEquals(position, cuts.get(i).getFrom());
+				assertEquals(stored.getLength(), cuts.get(i).getLength());
+				assertSame(stored.getSegments(), cuts.get(i).getSegments());
+				assertEquals(i, cuts.indexAt(position));
+				assertEquals(i, cuts.indexAt(position + stored.getLength()));
+				position += stored.getLength() + 1;
+			}
+			assertEquals(position, cuts.getSpan());
+			assertEquals(position, cuts.spanBefore(cuts.size()));
+			assertEquals(Math.max(position - 1, 0), cuts.getFrames());
+			assertEquals(-1, cuts.indexAt(position));
+			assertEquals(expected.size(), cuts.toList().size());
+		}
+	}
+	
+	@Test
+	public void testWaveformTilesReusedBeforeEdit() {
+		List<WaveformTile> before = songEditor.getWaveformTiles(0, 2000000, 1000);
+		
+		assertTrue(before.size() > 4);
+		assertTrue(before.get(0).getFrom() == 0);
+		
+		songEditor.setSelectionFrom(1000000);
+		songEditor.setSelectionTo(1100000);
+		songEditor.cutSelection();
+		
+		List<WaveformTile> after = songEditor.getWaveformTiles(0, 2000000, 1000);
+		int tileFrames = before.get(1).getFrom();
+		
+		for (int i = 0; (i + 1) * tileFrames <= 1000000; i++) {
+			assertSame(before.get(i), after.get(i));
+		}
+		assertNotSame(before.get(1000000 / tileFrames), after.get(1000000 / tileFrames));
+		
+		songEditor.undo();
+		
+		assertSame(before.get(1000000 / tileFrames), songEditor.getWaveformTiles(0, 2000000, 1000).get(1000000 / tileFrames));
+	}
+	
+	@Test
+	public void testWaveformTilesReusedAroundUnalignedEdit() {
+		List<WaveformTile> before = songEditor.getWaveformTiles(0, 2000000, 1000);
+		int tileFrames = before.get(1).getFrom();
+		int edited = 1000003 / tileFrames;
+		
+		assertTrue(before.size() > edited + 2);
+		
+		/* a whole tile is removed from an unaligned frame, so only the tile containing it changes */
+		songEditor.setSelectionFrom(1000003);
+		songEditor.setSelectionTo(1000003 + tileFrames - 1);
+		songEditor.cutSelection();
+		
+		List<WaveformTile> after = songEditor.getWaveformTiles(0, 2000000, 1000);
+		
+		for (int i = 0; i < edited; i++) {
+			assertSame(before.get(i), after.get(i));
+		}
+		assertNotSame(before.get(edited).getWaveform(), after.get(edited).getWaveform());
+		assertTrue(after.get(edited).getWaveform().getSize() > 0);
+		for (int i = edited + 1; i + 1 < before.size() && i < after.size(); i++) {
+			assertSame(before.get(i + 1).getWaveform(), after.get(i).getWaveform());
+			assertEquals(i * tileFrames, after.get(i).getFrom());
+		}
+		
+		/* once computed, the tiles are served from the cache */
+		assertSame(after.get(edited), songEditor.getWaveformTiles(0, 2000000, 1000).get(edited));
+	}
+	
+	@Test
+	public void testWaveformTilesCoverTheDrawnRange() throws IOException {
+		ModifiableSong song = new ModifiableSongImpl(new SongImpl(writeRamp(folder.newFile("ramp.wav"), 1000000)));
+		int length = song.getModifiedLength();
+		
+		for (int pixels : new int[] {100, 1000, 5000}) {
+			for (int[] range : new int[][] {{0, length}, {12345, 678901}, {length - 1000, length}}) {
+				List<WaveformTile> tiles = song.getWaveformTiles(range[0], range[1], pixels);
+				
+				/* the canvas draws a column per group, so tiles follow each other with no gap */
+				assertFalse(tiles.isEmpty());
+				assertTrue(tiles.get(0).getFrom() <= range[0]);
+				assertTrue(tiles.get(tiles.size() - 1).getTo() >= range[1]);
+				for (int i = 0; i < tiles.size(); i++) {
+					WaveformTile tile = tiles.get(i);
+					
+					assertEquals(tiles.get(0).getFramesPerGroup(), tile.getFramesPerGroup());
+					assertTrue(tile.getFramesPerGroup() <= Math.max((range[1] - range[0]) / pixels, 1));
+					assertEquals(tile.getTo() - tile.getFrom(), 256L * tile.getFramesPerGroup());
+					assertTrue(tile.getWaveform().getSize() <= 256);
+					if (i > 0) {
+						assertEquals(tiles.get(i - 1).getTo(), tile.getFrom());
+					}
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testWaveformTilesComputedWhileEditing() throws IOException, InterruptedException {
+		Editor editor = new EditorImpl();
+		AtomicBoolean editing = new AtomicBoolean(true);
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		
+		editor.loadSongToEdit(new SongImpl(writeRamp(folder.newFile("ramp.wav"), 1000000)));
+		
+		/* a worker keeps computing tiles from whatever song it sees while the edits replace it */
+		Thread worker = new Thread(() -> {
+			try {
+				while (editing.get()) {
+					List<WaveformTile> tiles = editor.getWaveformTiles(0, 900000, 1000);
+					
+					for (int i = 1; i < tiles.size(); i++) {
+						assertEquals(tiles.get(i - 1).getTo(), tiles.get(i).getFrom());
+					}
+				}
+			} catch (Throwable e) {
+				failure.set(e);
+			}
+		});
+		
+		worker.start();
+		for (int i = 0; i < 200; i++) {
+			editor.setSelectionFrom(1000 * i);
+			editor.setSelectionTo(1000 * i + 5000);
+			editor.cutSelection();
+			editor.deselectSelection();
+			if (i % 3 == 0) {
+				editor.undo();
+			}
+		}
+		editing.set(false);
+		worker.join(10000);
+		
+		assertFalse(worker.isAlive());
+		assertNull(failure.get());
+	}
+	
+	@Test
+	public void testCachedWaveformAnalysedInSteps() {
+		File file = new File(System.getProperty("user.dir") + System.getProperty("file.separator") + "res" 
+							 + System.getProperty("file.separator") + "songs" 
+							 + System.getProperty("file.separator") + "Mistery.mp3");
+		
+		/* the first song stores the cache, the second one is shown from it and analysed on demand */
+		new ModifiableSongImpl(new SongImpl(file));
+		String[] cached = PEAKS.getRoot().list();
+		ModifiableSong song = new ModifiableSongImpl(new SongImpl(file));
+		
+		assertTrue(cached.length > 0);
+		assertEquals(cached.length, PEAKS.getRoot().list().length);		/* nothing new is stored */
+		List<WaveformTile> before = song.getWaveformTiles(0, 2000000, 1000);
+		
+		assertFalse(song.analyse(1000));
+		while (!song.analyse(1 << 20)) {
+			assertSame(before.get(0), song.getWaveformTiles(0, 2000000, 1000).get(0));
+		}
+		
+		/* the cache was right, so the tiles computed from it are kept */
+		assertSame(before.get(0), song.getWaveformTiles(0, 2000000, 1000).get(0));
+		assertTrue(song.analyse(1000));
+	}
+	
+	@Test
+	public void testPlaybackJoinsSegmentsAtExactFrames() throws InterruptedException {
+		ModifiableSong song = new ModifiableSongImpl(new SongImpl(new File(System.getProperty("user.dir") 
+							  + System.getProperty("file.separator") + "res" 
+							  + System.getProperty("file.separator") + "songs" 
+							  + System.getProperty("file.separator") + "Mistery.mp3")));
+		
+		song.pasteSelectionAt(100000, 150000, 300000);
+		song.deleteSelection(50000, 60000);
+		song.deleteSelection(700000, 800000);
+		
+		PcmSource original = new PcmSourceImpl(song.getAbsolutePath());
+		float[] left = new float[12000];
+		float[] right = new float[12000];
+		float[] frame = new float[2];
+		int exported = song.getModifiedLength();
+		
+		PlaybackSource playback = song.createPlaybackSource();
+		
+		assertEquals(song.framesToMs(exported), playback.length());
+		
+		/* every join is played from a few chunks before it, as it is exported */
+		int join = 0;
+		
+		for (Cut cut : song.getCuts()) {
+			for (int j = 0; j < cut.getSegmentCount(); j++) {
+				int millis = song.framesToMs(Math.max(join - 6000, 0));
+				int start = song.msToFrames(millis);
+				
+				readExported(song, original, start, left, right);
+				playback.pause();
+				playback.cue(millis);
+				Thread.sleep(500);
+				playback.play();
+				
+				for (int i = 0; i < left.length && start + i < exported; i++) {
+					playback.getOutput().tick(frame);
+					assertEquals(left[i], frame[0], 0f);
+					assertEquals(right[i], frame[1], 0f);
+				}
+				join += cut.getSegmentTo(j) - cut.getSegmentFrom(j) + 1;
+			}
+		}
+		
+		playback.close();
+		original.close();
+	}
+	
+	@Test
+	public void testForkReadsBackWithoutWaiting() throws InterruptedException {
+		String path = System.getProperty("user.dir") + System.getProperty("file.separator") + "res" 
+					  + System.getProperty("file.separator") + "songs" 
+					  + System.getProperty("file.separator") + "Mistery.mp3";
+		PcmSource source = new PcmSourceImpl(path, 4096, 4);
+		PcmSource reference = new PcmSourceImpl(path, 4096, 4);
+		float[][] expected = new float[2][1000];
+		float[][] read = new float[2][1000];
+		
+		/* the blocks decoded are read back without decoding from the beginning again */
+		assertEquals(1000, source.read(200000, read[0], read[1], 0, 1000));
+		assertEquals(1000, source.read(50000, read[0], read[1], 0, 1000));
+		assertEquals(1000, reference.read(50000, expected[0], expected[1], 0, 1000));
+		assertArrayEquals(expected[0], read[0], 0f);
+		assertArrayEquals(expected[1], read[1], 0f);
+		
+		/* and a fork reads them while the source is busy */
+		PcmSource fork = source.fork();
+		float[][] forked = new float[2][1000];
+		Thread reader = new Thread(() -> fork.read(50000, forked[0], forked[1], 0, 1000));
+		
+		synchronized (source) {
+			reader.start();
+			reader.join(10000);
+			assertFalse(reader.isAlive());
+		}
+		assertArrayEquals(expected[0], forked[0], 0f);
+		assertArrayEquals(expected[1], forked[1], 0f);
+		
+		fork.close();
+		assertEquals(1000, source.read(100000, read[0], read[1], 0, 1000));
+		source.close();
+		reference.close();
+	}
+	
+	@Test
+	public void testRandomReadsMatchSequentialOnes() throws IOException {
+		Random random = new Random(3);
+		int frames = 50000;
+		float[] left = new float[frames];
+		float[] right = new float[frames];
+		
+		for (int i = 0; i < frames; i++) {
+			left[i] = random.nextFloat() * 2 - 1;
+			right[i] = random.nextFloat() * 2 - 1;
+		}
+		String path = writeWave(folder.newFile("noise.wav"), left, right).getAbsolutePath();
+		
+		/* few small blocks, so that reads in any order cross them and drop them from the cache */
+		PcmSource source = new PcmSourceImpl(path, 1000, 3);
+		PcmSource reference = new PcmSourceImpl(path);
+		float[][] expected = new float[2][frames];
+		float[][] read = new float[2][5000];
+		
+		assertEquals(frames, reference.read(0, expected[0], expected[1], 0, frames));
+		for (int i = 0; i < 300; i++) {
+			int from = random.nextInt(frames);
+			int count = 1 + random.nextInt(read[0].length);
+			int available = Math.min(count, frames - from);
+			
+			assertEquals(available, source.read(from, read[0], read[1], 0, count));
+			assertArrayEquals(Arrays.copyOfRange(expected[0], from, from + available), Arrays.copyOf(read[0], available), 0f);
+			assertArrayEquals(Arrays.copyOfRange(expected[1], from, from + available), Arrays.copyOf(read[1], available), 0f);
+		}
+		
+		/* and backwards, block after block */
+		for (int from = frames - 700; from >= 0; from -= 700) {
+			assertEquals(700, source.read(from, read[0], read[1], 0, 700));
+			assertArrayEquals(Arrays.copyOfRange(expected[0], from, from + 700), Arrays.copyOf(read[0], 700), 0f);
+		}
+		source.close();
+		reference.close();
+	}
+	
+	@Test
+	public void testWaveFileReadAsDecoded() throws IOException {
+		Random random = new Random(5);
+		int frames = 20000;
+		
+		for (int bits : new int[] {8, 16, 24}) {
+			for (int channels = 1; channels <= 2; channels++) {
+				byte[] data = new byte[frames * channels * bits / 8];
+				random.nextBytes(data);
+				
+				AudioFormat format = new AudioFormat(44100, bits, channels, bits > 8, false);
+				File file = folder.newFile("noise" + bits + "x" + channels + ".wav");
+				AudioSystem.write(new AudioInputStream(new ByteArrayInputStream(data), format, frames), AudioFileFormat.Type.WAVE, file);
+				
+				/* the mapped file reads what the decoder does, to within the rounding of the coarser of the two */
+				WaveFileSource source = new WaveFileSource(file.getAbsolutePath());
+				PcmSource reference = new PcmSourceImpl(file.getAbsolutePath());
+				float[][] expected = new float[2][frames];
+				float[][] read = new float[2][frames];
+				float tolerance = 2f / (1 << (Math.min(bits, 16) - 1));
+				
+				assertEquals(frames, source.getFrames());
+				assertEquals(44100f, source.getSampleRate(), 0f);
+				assertEquals(channels, source.getChannels());
+				assertEquals(frames, reference.read(0, expected[0], expected[1], 0, frames));
+				assertEquals(frames, source.read(0, read[0], read[1], 0, frames));
+				assertArrayEquals(expected[0], read[0], tolerance);
+				assertArrayEquals(expected[1], read[1], tolerance);
+				assertEquals(0, source.read(frames, read[0], read[1], 0, 1));
+				reference.close();
+			}
+		}
+	}
+	
+	@Test
+	public void testModifiedLengthExportedAndPlayed() throws IOException, InterruptedException {
+		ModifiableSong song = new ModifiableSongImpl(new SongImpl(writeRamp(folder.newFile("ramp.wav"), 200000)));
+		
+		/* a paste after a deletion pastes the deleted frames, as the editor does after a cut */
+		song.deleteSelection(1000, 1999);
+		song.pasteSelectionAt(20000, 20999, 30000);
+		song.resetPreviousCopy();
+		song.pasteSelectionAt(5000, 7000, 20000);
+		song.deleteSelection(50000, 50000);
+		song.resetPreviousCopy();
+		song.pasteSelectionAt(0, 99, -1);
+		song.deleteSelection(19990, 20010);
+		
+		int length = song.getModifiedLength();
+		
+		assertEquals(200000 - 1000 + 1000 + 2001 - 1 + 100 - 21, length);
+		
+		/* the exported file has exactly the frames of the modified song */
+		String exportPath = folder.getRoot().getAbsolutePath() + System.getProperty("file.separator") + "exported.wav";
+		song.exportSong(exportPath);
+		WaveFileSource exported = new WaveFileSource(exportPath);
+		assertEquals(length, exported.getFrames());
+		
+		/* and so are the frames played, none of which is silent */
+		float[] left = new float[length];
+		float[] right = new float[length];
+		float[] frame = new float[2];
+		PlaybackSource playback = song.createPlaybackSource();
+		int played = 0;
+		long deadline = System.currentTimeMillis() + 10000;
+		
+		assertEquals(length, exported.read(0, left, right, 0, length));
+		playback.play();
+		while (playback.isPlaying() && System.currentTimeMillis() < deadline) {
+			playback.getOutput().tick(frame);
+			if (frame[0] == 0f) {
+				Thread.sleep(1);		/* underrun, the prefetcher is behind */
+			} else {
+				assertTrue(played < length);
+				assertEquals(left[played], frame[0], 1e-4f);
+				assertEquals(right[played], frame[1], 1e-4f);
+				played++;
+			}
+		}
+		assertEquals(length, played);
+		
+		playback.close();
+		exported.close();
+	}
+	
+	@Test
+	public void testExportedFileHasHeaderAndEveryFrame() throws IOException {
+		File ramp = writeRamp(folder.newFile("ramp.wav"), 100000);
+		ModifiableSong song = new ModifiableSongImpl(new SongImpl(ramp));
+		
+		song.deleteSelection(10000, 19999);
+		song.resetPreviousCopy();
+		song.pasteSelectionAt(30000, 30999, 500);
+		
+		String exportPath = folder.getRoot().getAbsolutePath() + System.getProperty("file.separator") + "exported.wav";
+		song.exportSong(exportPath);
+		
+		/* a canonical 44 byte header for 16 bit stereo samples */
+		int frames = song.getModifiedLength();
+		ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(Paths.get(exportPath))).order(ByteOrder.LITTLE_ENDIAN);
+		
+		assertEquals(44 + frames * 4, header.capacity());
+		assertEquals(0x46464952, header.getInt(0));			/* "RIFF" */
+		assertEquals(36 + frames * 4, header.getInt(4));
+		assertEquals(0x45564157, header.getInt(8));			/* "WAVE" */
+		assertEquals(1, header.getShort(20));
+		assertEquals(2, header.getShort(22));
+		assertEquals(44100, header.getInt(24));
+		assertEquals(44100 * 4, header.getInt(28));
+		assertEquals(4, header.getShort(32));
+		assertEquals(16, header.getShort(34));
+		assertEquals(0x61746164, header.getInt(36));		/* "data" */
+		assertEquals(frames * 4, header.getInt(40));
+		
+		/* every frame of every segment is exported, the last ones included */
+		PcmSource original = new WaveFileSource(ramp.getAbsolutePath());
+		WaveFileSource exported = new WaveFileSource(exportPath);
+		float[][] expected = new float[2][frames];
+		float[][] read = new float[2][frames];
+		
+		readExported(song, original, 0, expected[0], expected[1]);
+		assertEquals(frames, exported.read(0, read[0], read[1], 0, frames));
+		assertArrayEquals(expected[0], read[0], 1e-4f);
+		assertArrayEquals(expected[1], read[1], 1e-4f);
+	}
+	
+	@Test
+	public void testUneditedSongExportedUnchanged() throws IOException {
+		File ramp = writeRamp(folder.newFile("ramp.wav"), 100000);
+		ModifiableSong song = new ModifiableSongImpl(new SongImpl(ramp));
+		String exportPath = folder.getRoot().getAbsolutePath() + System.getProperty("file.separator") + "exported.wav";
+		
+		song.exportSong(exportPath);
+		
+		/* the samples written are those read, 16 bit ones are not altered by the conversions */
+		int frames = song.getModifiedLength();
+		byte[] original = Files.readAllBytes(ramp.toPath());
+		byte[] exported = Files.readAllBytes(Paths.get(exportPath));
+		
+		assertEquals(44 + frames * 4, exported.length);
+		assertArrayEquals(Arrays.copyOfRange(original, 44, 44 + frames * 4), Arrays.copyOfRange(exported, 44, exported.length));
+	}
+	
+	@Test
+	public void testMillisecondsAndFramesRoundTrip() throws IOException {
+		ModifiableSong song = new ModifiableSongImpl(new SongImpl(writeRamp(folder.newFile("ramp.wav"), 1000)));
+		
+		assertEquals(0, song.msToFrames(0));
+		assertEquals(44100, song.msToFrames(1000));
+		assertEquals(1000, song.framesToMs(44100));
+		assertEquals(158760000, song.msToFrames(3600000));
+		
+		/* a millisecond is more than a frame, so it survives the round trip */
+		for (int ms = 0; ms < 100000; ms += 7) {
+			assertEquals(ms, song.framesToMs(song.msToFrames(ms)));
+		}
+		
+		/* a frame only comes back to within half a millisecond */
+		for (int frames = 0; frames < 1000000; frames += 13) {
+			assertEquals(frames, song.msToFrames(song.framesToMs(frames)), 44100 / 2000 + 1);
+		}
+	}
+	
+	@Test(expected = IOException.class)
+	public void testExportFailureReported() throws IOException {
+		ModifiableSong song = new ModifiableSongImpl(new SongImpl(writeRamp(folder.newFile("ramp.wav"), 1000)));
+		
+		song.exportSong(folder.getRoot().getAbsolutePath() + System.getProperty("file.separator") + "missing"
+						+ System.getProperty("file.separator") + "exported.wav");
+	}
+	
+	@Test
+	public void testRmsOfPartialLastBlock() throws IOException {
+		float[] left = new float[1000];
+		float[] right = new float[1000];
+		float[] values = new float[WaveformPyramid.VALUES];
+		
+		Arrays.fill(left, 0.5f);
+		Arrays.fill(right, -0.25f);
+		File file = writeWave(folder.newFile("constant.wav"), left, right);
+		
+		/* 1000 frames are 3 blocks of 256 and one of 232, which is not averaged over 256 */
+		WaveformPyramid pyramid = new WaveformPyramid(new WaveFileSource(file.getAbsolutePath()));
+		
+		for (int from : new int[] {0, 700, 768, 900, 999}) {
+			WaveformPyramid.clear(values);
+			int frames = pyramid.accumulate(from, 1200, values);
+			
+			assertEquals(1000 - from, frames);
+			assertEquals(0.5f, (float) Math.sqrt(values[WaveformPyramid.LEFT_POSITIVE_SQUARES] / frames), 1e-3f);
+			assertEquals(0.25f, (float) Math.sqrt(values[WaveformPyramid.RIGHT_NEGATIVE_SQUARES] / frames), 1e-3f);
+		}
+		
+		/* and the last group of a waveform only averages the frames it has */
+		ModifiableSong song = new ModifiableSongImpl(new SongImpl(file));
+		GroupedWaveform waveform = song.getWaveformTiles(0, song.getModifiedLength(), 3).get(0).getWaveform();
+		
+		assertTrue(waveform.getSize() > 1);
+		for (int i = 0; i < waveform.getSize(); i++) {
+			assertEquals(0.5f, waveform.getLeftChannelPositiveRMS()[i], 1e-3f);
+			assertEquals(-0.25f, waveform.getRightChannelNegativeRMS()[i], 1e-3f);
+		}
+	}
+	
+	@Test
+	public void testAggregatedWaveformMatchesGroupByGroupSummary() throws IOException {
+		Random random = new Random(11);
+		int frames = 300000;
+		float[] left = new float[frames];
+		float[] right = new float[frames];
+		
+		for (int i = 0; i < frames; i++) {
+			left[i] = random.nextFloat() * 2 - 1;
+			right[i] = random.nextFloat() * 2 - 1;
+		}
+		File file = writeWave(folder.newFile("noise.wav"), left, right);
+		ModifiableSong song = new ModifiableSongImpl(new SongImpl(file));
+		WaveformPyramid pyramid = new WaveformPyramid(new WaveFileSource(file.getAbsolutePath()));
+		float[] values = new float[WaveformPyramid.VALUES];
+		
+		/* a single run on the calling thread, and as many runs as there are processors */
+		for (int samples : new int[] {100, 8192}) {
+			GroupedWaveform waveform = new GroupedWaveform(samples);
+			int sampleSize = song.getModifiedLength() / samples;
+			
+			song.getAggregatedWaveform(0, song.getModifiedLength(), samples, waveform);
+			
+			/* however the groups are split, each is summarised as it would be on its own */
+			assertEquals(song.getModifiedLength() / sampleSize, waveform.getSize());
+			for (int i = 0; i < waveform.getSize(); i++) {
+				WaveformPyramid.clear(values);
+				float scale = 1f / pyramid.accumulate(i * sampleSize, (i + 1) * sampleSize, values);
+				
+				assertEquals(values[WaveformPyramid.LEFT_MAX], waveform.getLeftChannelMax()[i], 0f);
+				assertEquals(values[WaveformPyramid.LEFT_MIN], waveform.getLeftChannelMin()[i], 0f);
+				assertEquals((float) Math.sqrt(values[WaveformPyramid.LEFT_POSITIVE_SQUARES] * scale), 
+							 waveform.getLeftChannelPositiveRMS()[i], 0f);
+				assertEquals(-(float) Math.sqrt(values[WaveformPyramid.LEFT_NEGATIVE_SQUARES] * scale), 
+							 waveform.getLeftChannelNegativeRMS()[i], 0f);
+				assertEquals(values[WaveformPyramid.RIGHT_MAX], waveform.getRightChannelMax()[i], 0f);
+				assertEquals(values[WaveformPyramid.RIGHT_MIN], waveform.getRightChannelMin()[i], 0f);
+				assertEquals((float) Math.sqrt(values[WaveformPyramid.RIGHT_POSITIVE_SQUARES] * scale), 
+							 waveform.getRightChannelPositiveRMS()[i], 0f);
+				assertEquals(-(float) Math.sqrt(values[WaveformPyramid.RIGHT_NEGATIVE_SQUARES] * scale), 
+							 waveform.getRightChannelNegativeRMS()[i], 0f);
+			}
+		}
+	}
+	
+	@Test
+	public void testGroupedWaveformFilledAgainInPlace() throws IOException {
+		ModifiableSong song = new ModifiableSongImpl(new SongImpl(writeRamp(folder.newFile("ramp.wav"), 100000)));
+		GroupedWaveform waveform = new GroupedWaveform(500);
+		
+		song.getAggregatedWaveform(0, song.getModifiedLength(), 500, waveform);
+		float[] leftMax = waveform.getLeftChannelMax();
+		float[] rightRMS = waveform.getRightChannelNegativeRMS();
+		List<Float> first = valuesOf(waveform);
+		
+		/* filling it again, with as many groups or fewer, writes over the same arrays */
+		song.getAggregatedWaveform(0, song.getModifiedLength(), 200, waveform);
+		song.getAggregatedWaveform(0, song.getModifiedLength(), 500, waveform);
+		
+		assertSame(leftMax, waveform.getLeftChannelMax());
+		assertSame(rightRMS, waveform.getRightChannelNegativeRMS());
+		assertEquals(first, valuesOf(waveform));
+		
+		/* and more groups than it can hold grow it */
+		song.getAggregatedWaveform(0, song.getModifiedLength(), 1000, waveform);
+		
+		assertTrue(waveform.getCapacity() >= waveform.getSize());
+		assertTrue(waveform.getSize() >= 1000);
+		assertNotSame(leftMax, waveform.getLeftChannelMax());
+	}
+	
+	@Test
+	public void testPyramidMatchesBruteForce() throws IOException {
+		Random random = new Random(7);
+		int frames = 100000;
+		float[] left = new float[frames];
+		float[] right = new float[frames];
+		
+		for (int i = 0; i < frames; i++) {
+			left[i] = random.nextFloat() * 2 - 1;
+			right[i] = random.nextFloat() * 2 - 1;
+		}
+		PcmSource source = new WaveFileSource(writeWave(folder.newFile("noise.wav"), left, right).getAbsolutePath());
+		/* the frames as they were quantized in the file */
+		assertEquals(frames, source.read(0, left, right, 0, frames));
+		
+		WaveformPyramid pyramid = new WaveformPyramid(source);
+		float[] values = new float[WaveformPyramid.VALUES];
+		
+		for (int i = 0; i < 200; i++) {
+			boolean aligned = i % 2 == 0;
+			int from = random.nextInt(frames - 4096);
+			int to = from + 4096 + random.nextInt(frames - from - 4096 + 1);
+			if (aligned) {
+				from &= ~255;
+				to = to == frames ? to : to & ~255;
+			}
+			
+			WaveformPyramid.clear(values);
+			assertEquals(to - from, pyramid.accumulate(from, to, values));
+			
+			/* peaks are exact on blocks, and those of the whole edge blocks otherwise */
+			int peaksFrom = from & ~255;
+			int peaksTo = Math.min((to + 255) & ~255, frames);
+			assertEquals(max(left, peaksFrom, peaksTo), values[WaveformPyramid.LEFT_MAX], 0f);
+			assertEquals(min(left, peaksFrom, peaksTo), values[WaveformPyramid.LEFT_MIN], 0f);
+			assertEquals(max(right, peaksFrom, peaksTo), values[WaveformPyramid.RIGHT_MAX], 0f);
+			assertEquals(min(right, peaksFrom, peaksTo), values[WaveformPyramid.RIGHT_MIN], 0f);
+			
+			/* squares are exact on blocks, and a share of those of the edge blocks otherwise */
+			double tolerance = aligned ? 1e-4 : 2e-2;
+			assertEquals(1, values[WaveformPyramid.LEFT_POSITIVE_SQUARES] / squares(left, from, to, 1), tolerance);
+			assertEquals(1, values[WaveformPyramid.LEFT_NEGATIVE_SQUARES] / squares(left, from, to, -1), tolerance);
+			assertEquals(1, values[WaveformPyramid.RIGHT_POSITIVE_SQUARES] / squares(right, from, to, 1), tolerance);
+			assertEquals(1, values[WaveformPyramid.RIGHT_NEGATIVE_SQUARES] / squares(right, from, to, -1), tolerance);
+		}
+	}
+	
+	/*
+	 * Writes a stereo .wav file none of whose frames is silent, so that the
+	 * frames played can be told from the silence of an underrun.
+	 */
+	private static File writeRamp(File file, int frames) throws IOException {
+		float[] left = new float[frames];
+		float[] right = new float[frames];
+		
+		for (int i = 0; i < frames; i++) {
+			left[i] = (1 + i % 1000) / 32768f;
+			right[i] = -left[i];
+		}
+		return writeWave(file, left, right);
+	}
+	
+	private static File writeWave(File file, float[] left, float[] right) throws IOException {
+		try (WaveFileWriter writer = new WaveFileWriter(file.getAbsolutePath(), 2, 44100)) {
+			writer.write(left, right, 0, left.length);
+		}
+		return file;
+	}
+	
+	private static List<Float> valuesOf(GroupedWaveform waveform) {
+		List<Float> values = new ArrayList<>();
+		
+		for (int i = 0; i < waveform.getSize(); i++) {
+			values.add(waveform.getLeftChannelMax()[i]);
+			values.add(waveform.getLeftChannelMin()[i]);
+			values.add(waveform.getLeftChannelPositiveRMS()[i]);
+			values.add(waveform.getLeftChannelNegativeRMS()[i]);
+			values.add(waveform.getRightChannelMax()[i]);
+			values.add(waveform.getRightChannelMin()[i]);
+			values.add(waveform.getRightChannelPositiveRMS()[i]);
+			values.add(waveform.getRightChannelNegativeRMS()[i]);
+		}
+		return values;
+	}
+	
+	private static float max(float[] samples, int from, int to) {
+		float max = 0;
+		
+		for (int i = from; i < to; i++) {
+			max = Math.max(max, samples[i]);
+		}
+		return max;
+	}
+	
+	private static float min(float[] samples, int from, int to) {
+		float min = 0;
+		
+		for (int i = from; i < to; i++) {
+			min = Math.min(min, samples[i]);
+		}
+		return min;
+	}
+	
+	/*
+	 * Sums the squares of the samples of the given sign.
+	 */
+	private static double squares(float[] samples, int from, int to, int sign) {
+		double squares = 0;
+		
+		for (int i = from; i < to; i++) {
+			if (samples[i] * sign > 0) {
+				squares += samples[i] * samples[i];
+			}
+		}
+		return squares;
+	}
+	
+	/*
+	 * Reads the frames of a modified song as they are exported, from the given frame on.
+	 */
+	private static void readExported(ModifiableSong song, PcmSource original, int from, float[] left, float[] right) {
+		int position = 0;
+		int read = 0;
+		
+		for (Cut cut : song.getCuts()) {
+			for (int j = 0; j < cut.getSegmentCount() && read < left.length; j++) {
+				int first = Math.max(cut.getSegmentFrom(j), cut.getSegmentFrom(j) + from + read - position);
+				
+				/* segments are inclusive of both their ends */
+				if (first <= cut.getSegmentTo(j)) {
+					read += original.read(first, left, right, read, Math.min(cut.getSegmentTo(j) + 1 - first, left.length - read));
+				}
+				position += cut.getSegmentTo(j) - cut.getSegmentFrom(j) + 1;
+			}
+		}
+	}
 }
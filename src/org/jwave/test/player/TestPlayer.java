@@ -6,20 +6,47 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.jwave.controller.player.PlaylistController;
 import org.jwave.model.player.DynamicPlayer;
 import org.jwave.model.player.DynamicPlayerImpl;
+import org.jwave.model.player.FormatProbe;
+import org.jwave.model.player.FormatProbeImpl;
+import org.jwave.model.player.MetaData;
+import org.jwave.model.player.PlaybackListener;
+import org.jwave.model.player.PlaybackPosition;
+import org.jwave.model.player.ProbedFormat;
 import org.jwave.model.player.Song;
 import org.jwave.model.player.SongImpl;
+import org.jwave.model.playlist.LibraryScanner;
+import org.jwave.model.playlist.LibraryScannerImpl;
 import org.jwave.model.playlist.PlayMode;
 import org.jwave.model.playlist.Playlist;
 import org.jwave.model.playlist.PlaylistImpl;
 import org.jwave.model.playlist.PlaylistManager;
 import org.jwave.model.playlist.PlaylistManagerImpl;
+import org.jwave.model.playlist.navigator.ShuffleNavigator;
 
 /**
  * This class is an automated test for testing some features of DynamicPLayer and PlaylistManager.
@@ -159,6 +186,144 @@ public final class TestPlayer {
         assertTrue("Player should be in pause", player.isPaused());
     }
     
+    @Test
+    public void testPlaybackEvents() throws InterruptedException {
+        final AtomicInteger updates = new AtomicInteger();
+        final CountDownLatch ended = new CountDownLatch(1);
+        
+        player.addPlaybackListener(new PlaybackListener() {
+            @Override
+            public void positionChanged() {
+                updates.incrementAndGet();
+            }
+
+            @Override
+            public void trackEnded() {
+                ended.countDown();
+            }
+
+            @Override
+            public void nextTrackStarted() {
+                fail("No song has been queued");
+            }
+        });
+        player.setPlayer(songOne);
+        player.play();
+        Thread.sleep(200L);
+        player.pause();
+        assertTrue("Expected the position to be notified while playing", updates.get() > 0);
+        assertTrue("Expected the position to move while playing", player.getPosition() > 0);
+        
+        final int paused = updates.get();
+        Thread.sleep(200L);
+        assertEquals("Expected no notification while paused", paused, updates.get());
+        
+        player.cue(player.getLength() - 100);
+        player.play();
+        assertTrue("Expected the end of the song to be notified", ended.await(5, TimeUnit.SECONDS));
+        player.releasePlayerResources();
+    }
+    
+    @Test
+    public void testGaplessNextSong() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        
+        player.addPlaybackListener(new PlaybackListener() {
+            @Override
+            public void positionChanged() { }
+
+            @Override
+            public void trackEnded() {
+                fail("The queued song should have followed");
+            }
+
+            @Override
+            public void nextTrackStarted() {
+                started.countDown();
+            }
+        });
+        player.setPlayer(songOne);
+        assertTrue("Expected the same song to be able to follow itself", 
+                player.setNextPlayer(Optional.of(songOne)));
+        player.cue(player.getLength() - 100);
+        player.play();
+        assertTrue("Expected the queued song to start", started.await(5, TimeUnit.SECONDS));
+        assertTrue("Player should be playing the queued song", player.isPlaying());
+        assertTrue("Expected the position to start again", player.getPosition() < player.getLength() / 2);
+        player.releasePlayerResources();
+    }
+
+    @Test
+    public void testCrossfadeStartsBeforeTheEnd() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+
+        player.addPlaybackListener(new PlaybackListener() {
+            @Override
+            public void positionChanged() { }
+
+            @Override
+            public void trackEnded() {
+                fail("The queued song should have followed");
+            }
+
+            @Override
+            public void nextTrackStarted() {
+                started.countDown();
+            }
+        });
+        player.setCrossfade(1000);
+        player.setPlayer(songOne);
+        player.setNextPlayer(Optional.of(songTwo));
+        player.cue(player.getLength() - 1500);
+        player.play();
+        assertFalse("The queued song shouldn't start before the crossfade",
+                started.await(300, TimeUnit.MILLISECONDS));
+        assertTrue("Expected the queued song to start within the crossfade", started.await(900, TimeUnit.MILLISECONDS));
+        assertEquals("Expected the queued song to be loaded", Optional.of(songTwo), player.getLoaded());
+        player.setCrossfade(0);
+        player.releasePlayerResources();
+    }
+
+    @Test
+    public void testFramePosition() throws InterruptedException {
+        player.setPlayer(songOne);
+        player.play();
+        Thread.sleep(200L);
+        
+        final PlaybackPosition playing = player.getFramePosition();
+        assertTrue("Expected the position to move while playing", playing.isMoving());
+        assertTrue("Expected frames to be rendered", playing.getFrame() > 0);
+        assertTrue("Expected the position to be interpolated after the last buffer",
+                playing.frameAt(playing.getTimestamp() + 10_000_000L) > playing.getFrame());
+        assertEquals("Expected no interpolation before the last buffer", playing.getFrame(),
+                playing.frameAt(playing.getTimestamp() - 10_000_000L));
+        
+        player.pause();
+        final PlaybackPosition paused = player.getFramePosition();
+        assertFalse("Expected the position to stand still while paused", paused.isMoving());
+        assertEquals("Expected no interpolation while paused", paused.getFrame(),
+                paused.frameAt(paused.getTimestamp() + 1_000_000_000L));
+        assertEquals("Expected the position in milliseconds to follow the frames", player.getPosition(),
+                paused.millisAt(System.nanoTime()));
+        player.releasePlayerResources();
+    }
+
+    @Test
+    public void testSongChangeOnOpenLine()throws InterruptedException {
+        player.setPlayer(songOne);
+        player.play();
+        Thread.sleep(200L);
+        player.setPlayer(songTwo);
+        assertEquals("Changing song should start from the beginning", 0, player.getPosition());
+        assertFalse("A new song shouldn't play before asked to", player.isPlaying());
+        player.play();
+        Thread.sleep(200L);
+        assertTrue("Expected the new song to play", player.isPlaying());
+        assertTrue("Expected the position of the new song to move", player.getPosition() > 0);
+        assertEquals("Expected the new song to be loaded", Optional.of(songTwo), player.getLoaded());
+        player.releasePlayerResources();
+    }
+    
     @Test
     public void testPlaylistManagerInitialization() {
         assertEquals("No song should have been loaded in the default playlsit", 
@@ -169,6 +334,13 @@ public final class TestPlayer {
             manager.selectSongFromPlayingQueueAtIndex(0);
             fail("Expected IllegalStateException to be thrown");
         } catch (IllegalArgumentException ex) { }
+        assertEquals("No crossfade should be set by default", 0, manager.getCrossfade());
+        manager.setCrossfade(3000);
+        assertEquals("Expected the crossfade to be kept", 3000, manager.getCrossfade());
+        try {
+            manager.setCrossfade(-1);
+            fail("Expected IllegalArgumentException to be thrown");
+        } catch (IllegalArgumentException ex) { }
     }
     
     @Test
@@ -214,4 +386,246 @@ public final class TestPlayer {
                 manager.getPlayingQueue());
         assertEquals("Expected current play mode to be NO_LOOP", manager.getPlayMode(), PlayMode.NO_LOOP);
     }
+    
+    @Test
+    public void testShufflePeekNext() {
+        final ShuffleNavigator navigator = new ShuffleNavigator(4);
+        navigator.next();
+        for (int i = 0; i < 2; i++) {
+            final Optional<Integer> peeked = navigator.peekNext();
+            assertTrue("Expected the next index of the order", peeked.isPresent());
+            assertEquals("Peeking shouldn't change the order", peeked, navigator.peekNext());
+            assertEquals("Expected next() to move to the peeked index", peeked, navigator.next());
+        }
+        assertEquals("The order after the last song isn't drawn yet", Optional.empty(), navigator.peekNext());
+        navigator.update(null, 0);
+        assertEquals("Expected nothing to peek in an empty playlist", Optional.empty(), navigator.peekNext());
+    }
+    
+    @Test
+    public void testFormatProbe() throws Exception {
+        final FormatProbe probe = new FormatProbeImpl();
+        
+        final ProbedFormat mp3 = probe.probe(new File(songOne.getAbsolutePath())).get();
+        player.setPlayer(songOne);
+        assertEquals("Expected an MP3 file", "MP3", mp3.getEncoding());
+        assertEquals("Expected the sample rate of the song", 44100f, mp3.getSampleRate(), 0f);
+        assertEquals("Expected the duration of the song to be estimated", player.getLength(), mp3.getDuration(),
+                player.getLength() / 50);
+        player.releasePlayerResources();
+        
+        final Path wave = Files.createTempFile("jwave", ".wav");
+        final ByteBuffer header = ByteBuffer.allocate(44).order(ByteOrder.LITTLE_ENDIAN);
+        header.put("RIFF".getBytes(StandardCharsets.US_ASCII)).putInt(36 + 16000)
+                .put("WAVEfmt ".getBytes(StandardCharsets.US_ASCII)).putInt(16).putShort((short) 1).putShort((short) 1)
+                .putInt(8000).putInt(16000).putShort((short) 2).putShort((short) 16)
+                .put("data".getBytes(StandardCharsets.US_ASCII)).putInt(16000);
+        final byte[] bytes = Arrays.copyOf(header.array(), 44 + 16000);
+        Files.write(wave, bytes);
+        final Path text = Files.createTempFile("jwave", ".mp3");
+        Files.write(text, "not an audio file".getBytes(StandardCharsets.US_ASCII));
+        try {
+            final ProbedFormat wav = probe.probe(wave.toFile()).get();
+            assertEquals("Expected a WAVE file", "WAVE", wav.getEncoding());
+            assertEquals("Expected a mono file", 1, wav.getChannels());
+            assertEquals("Expected the sample rate of the header", 8000f, wav.getSampleRate(), 0f);
+            assertEquals("Expected the duration of the data chunk", 1000L, wav.getDuration());
+            assertFalse("Expected a text file not to be recognized", probe.probe(text.toFile()).isPresent());
+            try {
+                manager.addAudioFile(text.toFile());
+                fail("Expected an IllegalArgumentException to be thrown");
+            } catch (IllegalArgumentException ex) { }
+        } finally {
+            Files.delete(wave);
+            Files.delete(text);
+        }
+    }
+    
+    @Test
+    public void testPlaylistPersistence() throws Exception {
+        final String home = System.getProperty("user.home");
+        final Path folder = Files.createTempDirectory("jwave");
+        final Path saveDir = folder.resolve(PlaylistController.SAVE_DIR_NAME);
+        System.setProperty("user.home", folder.toString());
+        try {
+            PlaylistController.checkDefaultDir();
+            final Playlist saved = new PlaylistImpl("saved");
+            saved.addSong(songOne);
+            saved.addSong(songTwo);
+            saved.addSong(songOne);
+            PlaylistController.savePlaylistToFile(saved, saved.getName());
+            
+            final Playlist legacy = new PlaylistImpl("legacy");
+            legacy.addSong(new SongImpl(new File(songTwo.getAbsolutePath())));
+            try (ObjectOutputStream oos = new ObjectOutputStream(Files.newOutputStream(saveDir.resolve("legacy.jwo")))) {
+                oos.writeObject(legacy);
+            }
+            
+            final Collection<Playlist> reloaded = PlaylistController.reloadAvailablePlaylists();
+            assertEquals("Expected both playlists to be reloaded", 2, reloaded.size());
+            final Playlist loaded = reloaded.stream().filter(p -> p.getName().equals("saved")).findAny().get();
+            assertEquals("Expected the same playlist", saved.getPlaylistID(), loaded.getPlaylistID());
+            assertEquals("Expected the same songs", 3, loaded.getDimension());
+            for (int i = 0; i < saved.getDimension(); i++) {
+                final Song expected = saved.getSongAtIndex(i);
+                final Song actual = loaded.getSongAtIndex(i);
+                assertEquals("Expected the songs in the same order", expected.getSongID(), actual.getSongID());
+                assertEquals("Expected the same file", expected.getAbsolutePath(), actual.getAbsolutePath());
+                for (final MetaData tag : MetaData.values()) {
+                    assertEquals("Expected the saved tags", expected.getMetaData().retrieve(tag), 
+                            actual.getMetaData().retrieve(tag));
+                }
+            }
+            assertTrue("Expected the playlist in the older format to be reloaded", 
+                    reloaded.stream().anyMatch(p -> p.getName().equals("legacy") && p.getDimension() == 1));
+        } finally {
+            System.setProperty("user.home", home);
+            Files.delete(saveDir.resolve("saved.jwo"));
+            Files.delete(saveDir.resolve("legacy.jwo"));
+            Files.delete(saveDir);
+            Files.delete(folder);
+        }
+    }
+    
+    @Test
+    public void testPlaylistJournal() throws Exception {
+        final String home = System.getProperty("user.home");
+        final Path folder = Files.createTempDirectory("jwave");
+        final Path saveDir = folder.resolve(PlaylistController.SAVE_DIR_NAME);
+        final Path log = saveDir.resolve("edited.jwo.log");
+        System.setProperty("user.home", folder.toString());
+        try {
+            PlaylistController.checkDefaultDir();
+            final Playlist edited = new PlaylistImpl("edited");
+            edited.addSong(songOne);
+            PlaylistController.savePlaylistToFile(edited, edited.getName());
+            
+            edited.addSong(songTwo);
+            PlaylistController.songAdded(edited, songTwo);
+            edited.moveSongToPosition(1, 0);
+            PlaylistController.songMoved(edited, 1, 0);
+            edited.setName("renamed");
+            PlaylistController.playlistRenamed(edited);
+            PlaylistController.closeJournals();
+            assertTrue("Expected the edits to be appended to the journal", Files.size(log) > 0);
+            
+            Files.write(log, new byte[] {0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+            Playlist loaded = PlaylistController.reloadAvailablePlaylists().iterator().next();
+            assertEquals("Expected the rename to be replayed", "renamed", loaded.getName());
+            assertEquals("Expected the moved song first", songTwo.getSongID(), loaded.getSongAtIndex(0).getSongID());
+            assertEquals("Expected the moved song second", songOne.getSongID(), loaded.getSongAtIndex(1).getSongID());
+            
+            loaded.removeFromPlaylist(songTwo.getSongID());
+            PlaylistController.songRemoved(loaded, songTwo.getSongID());
+            PlaylistController.closeJournals();
+            loaded = PlaylistController.reloadAvailablePlaylists().iterator().next();
+            assertEquals("Expected the torn record to be dropped and the removal replayed", 1, loaded.getDimension());
+            
+            PlaylistController.savePlaylistToFile(loaded, loaded.getName());
+            assertFalse("Expected the journal to be compacted into the snapshot", Files.exists(log));
+            assertFalse("Expected the renamed playlist to leave its old file", 
+                    Files.exists(saveDir.resolve("edited.jwo")));
+            final Collection<Playlist> compacted = PlaylistController.reloadAvailablePlaylists();
+            assertEquals("Expected the playlist to be reloaded once", 1, compacted.size());
+            loaded = compacted.iterator().next();
+            assertEquals("Expected the compacted playlist", songOne.getSongID(), loaded.getSongAtIndex(0).getSongID());
+        } finally {
+            PlaylistController.closeJournals();
+            System.setProperty("user.home", home);
+            Files.deleteIfExists(log);
+            Files.deleteIfExists(saveDir.resolve("edited.jwo"));
+            Files.deleteIfExists(saveDir.resolve("renamed.jwo"));
+            Files.delete(saveDir);
+            Files.delete(folder);
+        }
+    }
+    
+    @Test
+    public void testLazyPlaylistLoading() throws Exception {
+        final String home = System.getProperty("user.home");
+        final Path folder = Files.createTempDirectory("jwave");
+        final Path saveDir = folder.resolve(PlaylistController.SAVE_DIR_NAME);
+        final Path file = saveDir.resolve("lazy.jwo");
+        System.setProperty("user.home", folder.toString());
+        try {
+            PlaylistController.checkDefaultDir();
+            final Playlist lazy = new PlaylistImpl("lazy");
+            lazy.addSong(songOne);
+            lazy.addSong(songTwo);
+            PlaylistController.savePlaylistToFile(lazy, lazy.getName());
+            lazy.addSong(songOne);
+            PlaylistController.songAdded(lazy, songOne);
+            PlaylistController.closeJournals();
+            
+            final Playlist listed = PlaylistController.reloadAvailablePlaylists().iterator().next();
+            final Path away = saveDir.resolve("lazy.away");
+            Files.move(file, away);
+            assertEquals("Expected the name from the header", "lazy", listed.getName());
+            assertEquals("Expected the playlist", lazy.getPlaylistID(), listed.getPlaylistID());
+            assertEquals("Expected the dimension from the header and the journal", 3, listed.getDimension());
+            
+            /* the songs are only read now, from the file put back */
+            Files.move(away, file);
+            assertEquals("Expected the songs and the journal to be loaded", 3, listed.getPlaylistContent().size());
+            assertEquals("Expected the song added", songOne.getSongID(), listed.getSongAtIndex(2).getSongID());
+            PlaylistController.closeJournals();
+            
+            /* removing by name is only journaled, without reading the songs */
+            final Playlist unloaded = PlaylistController.reloadAvailablePlaylists().iterator().next();
+            Files.move(file, away);
+            PlaylistController.removeSongsNamed(unloaded, songOne.getName());
+            Files.move(away, file);
+            assertEquals("Expected the removal to be replayed on loading", 1, unloaded.getDimension());
+            assertEquals("Expected the song left", songTwo.getSongID(), unloaded.getSongAtIndex(0).getSongID());
+        } finally {
+            PlaylistController.closeJournals();
+            System.setProperty("user.home", home);
+            Files.deleteIfExists(saveDir.resolve("lazy.jwo.log"));
+            Files.delete(file);
+            Files.delete(saveDir);
+            Files.delete(folder);
+        }
+    }
+    
+    @Test
+    public void testLibraryScan() throws Exception {
+        final Path folder = Files.createTempDirectory("jwave");
+        final Path nested = Files.createDirectory(folder.resolve("nested"));
+        Files.copy(Paths.get(songOne.getAbsolutePath()), nested.resolve("one.mp3"));
+        Files.write(folder.resolve("broken.mp3"), "not an audio file".getBytes(StandardCharsets.US_ASCII));
+        Files.write(folder.resolve("notes.txt"), "not an audio file".getBytes(StandardCharsets.US_ASCII));
+        
+        final LibraryScanner scanner = new LibraryScannerImpl();
+        try {
+            final List<Song> found = scanner.scan(Arrays.asList(folder.toFile(), new File(songTwo.getAbsolutePath())))
+                    .get(30, TimeUnit.SECONDS);
+            assertEquals("Expected the two audio files to be found", 2, found.size());
+            assertEquals("Expected the songs in the order they were met", "one.mp3", found.get(0).getName());
+            assertEquals("Expected the songs in the order they were met", songTwo.getName(), found.get(1).getName());
+            
+            manager.addSongs(found);
+            assertEquals("Expected the songs to be added to the default playlist", 2, 
+                    manager.getDefaultPlaylist().getDimension());
+        } finally {
+            scanner.shutdown();
+            Files.delete(nested.resolve("one.mp3"));
+            Files.delete(nested);
+            Files.delete(folder.resolve("broken.mp3"));
+            Files.delete(folder.resolve("notes.txt"));
+            Files.delete(folder);
+        }
+    }
+    
+    @Test
+    public void testLibraryScanOfMissingFolder() throws Exception {
+        final LibraryScanner scanner = new LibraryScannerImpl();
+        try {
+            scanner.scan(Arrays.asList(new File(songTwo.getAbsolutePath() + ".missing"))).get(30, TimeUnit.SECONDS);
+            fail("Expected the scan to fail");
+        } catch (ExecutionException e) {
+            assertTrue("Expected the scan error to be reported", e.getCause() instanceof UncheckedIOException);
+        } finally {
+            scanner.shutdown();
+        }
+    }
 }
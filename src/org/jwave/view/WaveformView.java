@@ -0,0 +1,328 @@
+package org.jwave.view;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.jwave.model.editor.GroupedWaveform;
+import org.jwave.model.editor.WaveformTile;
+import javafx.application.Platform;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+
+/**
+ * A component drawing one channel of the waveform of a song on a Canvas,
+ * straight from the primitive arrays of the waveform tiles, instead of adding
+ * a chart node for every point.
+ *
+ * The component can be as wide as the whole song, but its canvas only covers
+ * a few screens around the visible part: scrolling within the canvas draws
+ * nothing, and the canvas is moved and drawn again only when the visible part
+ * gets near its edges or when the scale changes. After an edit only the
+ * columns of the tiles that changed are drawn again.
+ *
+ * Tiles are asked for in background, and the canvas is only touched on the
+ * JavaFX thread once they are ready. A newer request (after an edit, a scroll
+ * or a zoom) cancels the previous one if it has not started yet, and makes
+ * its result be discarded otherwise.
+ */
+public class WaveformView extends Region {
+
+    private static final double CANVAS_SCREENS = 3;
+    private static final int MAX_CANVAS_WIDTH = 8192;
+    private static final Color PEAK_COLOR = Color.web("#f3622d");
+    private static final Color RMS_COLOR = Color.web("#b3401a");
+    private static final Color AXIS_COLOR = Color.web("#d0d0d0");
+
+    /**
+     * Where the tiles of the waveform come from.
+     */
+    @FunctionalInterface
+    public interface TileSource {
+        /**
+         * @param from
+         *            first frame to get
+         * @param to
+         *            frame after the last one to get
+         * @param pixels
+         *            width the frames are drawn on
+         * @return the tiles covering the frames in order, computed in
+         *         background
+         */
+        CompletableFuture<List<WaveformTile>> getTiles(int from, int to, int pixels);
+    }
+
+    private final Canvas canvas;
+    private boolean leftChannel;
+    private TileSource source;
+    private int length;
+    private double framesPerPixel;
+    private double visibleFrom;
+    private double visibleTo;
+    private List<WaveformTile> drawnTiles;
+    private CompletableFuture<List<WaveformTile>> pending;
+    private int requests;
+    private boolean pendingAll;
+    private double targetX;
+    private double targetWidth;
+    private double targetHeight;
+
+    public WaveformView() {
+        this.canvas = new Canvas();
+        this.leftChannel = true;
+        this.length = 0;
+        this.framesPerPixel = 1;
+        this.visibleTo = Double.MAX_VALUE;
+        this.drawnTiles = Collections.emptyList();
+        this.getChildren().add(canvas);
+    }
+
+    /**
+     * @param leftChannel
+     *            true to draw the left channel, false for the right one
+     */
+    public void setLeftChannel(final boolean leftChannel) {
+        this.leftChannel = leftChannel;
+        redraw(true);
+    }
+
+    /**
+     * @return true if the left channel is drawn, false for the right one
+     */
+    public boolean isLeftChannel() {
+        return leftChannel;
+    }
+
+    /**
+     * Sets the waveform to draw, which is drawn again entirely.
+     *
+     * @param source
+     *            where to get the tiles of the waveform from
+     * @param length
+     *            length (in frames) of the song
+     * @param framesPerPixel
+     *            frames of the song in a pixel
+     */
+    public void setWaveform(final TileSource source, final int length, final double framesPerPixel) {
+        this.source = source;
+        this.length = length;
+        this.framesPerPixel = framesPerPixel;
+        redraw(true);
+    }
+
+    /**
+     * Zooms the waveform, which is drawn again entirely.
+     *
+     * @param framesPerPixel
+     *            frames of the song in a pixel
+     */
+    public void setFramesPerPixel(final double framesPerPixel) {
+        if (framesPerPixel != this.framesPerPixel) {
+            this.framesPerPixel = framesPerPixel;
+            redraw(true);
+        }
+    }
+
+    /**
+     * Draws again only the parts of the waveform that changed, to be called
+     * after the song has been edited.
+     *
+     * @param length
+     *            the new length (in frames) of the song
+     */
+    public void refresh(final int length) {
+        this.length = length;
+        redraw(false);
+    }
+
+    /**
+     * Tells the component which part of it is visible, the canvas is moved
+     * and drawn again only if that part is not covered by it.
+     *
+     * @param from
+     *            first visible x, in the coordinates of the component
+     * @param to
+     *            last visible x, in the coordinates of the component
+     */
+    public void setVisibleRange(final double from, final double to) {
+        visibleFrom = Math.max(from, 0);
+        visibleTo = Math.max(to, visibleFrom);
+
+        if (visibleFrom < targetX || visibleTo > targetX + targetWidth) {
+            redraw(true);
+        }
+    }
+
+    @Override
+    protected void layoutChildren() {
+        if (targetHeight != getHeight() || targetX + targetWidth > getWidth()
+                || targetWidth < Math.min(getWidth(), visibleTo - visibleFrom)) {
+            redraw(true);
+        }
+    }
+
+    @Override
+    protected double computeMinWidth(final double height) {
+        return 0;
+    }
+
+    @Override
+    protected double computePrefWidth(final double height) {
+        return length / framesPerPixel;
+    }
+
+    @Override
+    protected double computePrefHeight(final double width) {
+        return 200;
+    }
+
+    /*
+     * Asks for the tiles around the visible part, superseding any previous
+     * request, and draws them once they are ready.
+     */
+    private void redraw(final boolean all) {
+        final double visibleWidth = Math.min(visibleTo, getWidth()) - visibleFrom;
+        final int canvasWidth = (int) Math.min(Math.min(getWidth(), CANVAS_SCREENS * Math.max(visibleWidth, 1)),
+                MAX_CANVAS_WIDTH);
+        final double canvasX = Math.floor(Math.max(0, Math.min(getWidth() - canvasWidth,
+                visibleFrom + (visibleWidth - canvasWidth) / 2)));
+
+        final double canvasHeight = getHeight();
+        final int request = ++requests;
+
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+
+        targetX = canvasX;
+        targetWidth = canvasWidth;
+        targetHeight = canvasHeight;
+
+        if (source == null || canvasWidth <= 0 || canvasHeight <= 0) {
+            canvas.getGraphicsContext2D().clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+            drawnTiles = Collections.emptyList();
+            pendingAll = false;
+            return;
+        }
+
+        /* a superseded full redraw is still owed */
+        pendingAll |= all || canvas.getWidth() != canvasWidth || canvas.getHeight() != canvasHeight
+                || canvas.getLayoutX() != canvasX;
+
+        final boolean redrawAll = pendingAll;
+        final int from = (int) Math.min(length, canvasX * framesPerPixel);
+        final int to = (int) Math.min(length, Math.ceil((canvasX + canvasWidth) * framesPerPixel));
+
+        pending = source.getTiles(from, to, canvasWidth);
+        pending.thenAccept(tiles -> Platform.runLater(() -> {
+            if (request == requests) {
+                pending = null;
+                pendingAll = false;
+                draw(tiles, canvasX, canvasWidth, canvasHeight, redrawAll);
+            }
+        }));
+    }
+
+    /*
+     * Places the canvas and draws the columns of the tiles that changed, or
+     * all of them.
+     */
+    private void draw(final List<WaveformTile> tiles, final double canvasX, final int canvasWidth,
+            final double canvasHeight, final boolean all) {
+        final boolean[] dirty = new boolean[canvasWidth];
+
+        canvas.setLayoutX(canvasX);
+        canvas.setWidth(canvasWidth);
+        canvas.setHeight(canvasHeight);
+
+        if (all) {
+            Arrays.fill(dirty, true);
+        } else {
+            markChangedTiles(tiles, dirty);
+        }
+
+        drawColumns(canvas.getGraphicsContext2D(), tiles, dirty);
+        drawnTiles = tiles;
+    }
+
+    /*
+     * Marks the columns of the tiles that are not the ones drawn last time.
+     */
+    private void markChangedTiles(final List<WaveformTile> tiles, final boolean[] dirty) {
+        for (int i = 0; i < Math.max(tiles.size(), drawnTiles.size()); i++) {
+            if (i >= tiles.size() || i >= drawnTiles.size() || tiles.get(i) != drawnTiles.get(i)) {
+                final WaveformTile tile = i < tiles.size() ? tiles.get(i) : drawnTiles.get(i);
+                final int first = (int) Math.floor(tile.getFrom() / framesPerPixel - canvas.getLayoutX());
+                final int last = (int) Math.ceil(tile.getTo() / framesPerPixel - canvas.getLayoutX());
+
+                for (int x = Math.max(first, 0); x < Math.min(last, dirty.length); x++) {
+                    dirty[x] = true;
+                }
+            }
+        }
+    }
+
+    /*
+     * Reduces the groups of the tiles falling in every column to a peak and
+     * an RMS line, walking columns and groups together.
+     */
+    private void drawColumns(final GraphicsContext graphics, final List<WaveformTile> tiles, final boolean[] dirty) {
+        final double middle = canvas.getHeight() / 2;
+        int tileIndex = 0;
+        int group = 0;
+
+        graphics.setLineWidth(1);
+        for (int x = 0; x < dirty.length; x++) {
+            final double columnStart = (canvas.getLayoutX() + x) * framesPerPixel;
+            final double columnEnd = columnStart + framesPerPixel;
+            float max = 0;
+            float min = 0;
+            float positiveRMS = 0;
+            float negativeRMS = 0;
+
+            while (tileIndex < tiles.size()) {
+                final WaveformTile tile = tiles.get(tileIndex);
+                final GroupedWaveform waveform = tile.getWaveform();
+                final long groupStart = tile.getFrom() + (long) group * tile.getFramesPerGroup();
+                final long groupEnd = groupStart + tile.getFramesPerGroup();
+
+                if (group >= waveform.getSize()) {
+                    tileIndex++;
+                    group = 0;
+                    continue;
+                }
+                if (groupStart >= columnEnd) {
+                    break;
+                }
+                if (groupEnd > columnStart) {
+                    max = Math.max(max, (leftChannel ? waveform.getLeftChannelMax()
+                            : waveform.getRightChannelMax())[group]);
+                    min = Math.min(min, (leftChannel ? waveform.getLeftChannelMin()
+                            : waveform.getRightChannelMin())[group]);
+                    positiveRMS = Math.max(positiveRMS, (leftChannel ? waveform.getLeftChannelPositiveRMS()
+                            : waveform.getRightChannelPositiveRMS())[group]);
+                    negativeRMS = Math.min(negativeRMS, (leftChannel ? waveform.getLeftChannelNegativeRMS()
+                            : waveform.getRightChannelNegativeRMS())[group]);
+                }
+                if (groupEnd > columnEnd) {
+                    /* the group goes on in the next column */
+                    break;
+                }
+                group++;
+            }
+
+            if (dirty[x]) {
+                graphics.clearRect(x, 0, 1, canvas.getHeight());
+                graphics.setStroke(AXIS_COLOR);
+                graphics.strokeLine(x + 0.5, middle, x + 0.5, middle + 1);
+                graphics.setStroke(PEAK_COLOR);
+                graphics.strokeLine(x + 0.5, middle - max * middle, x + 0.5, middle - min * middle);
+                graphics.setStroke(RMS_COLOR);
+                graphics.strokeLine(x + 0.5, middle - positiveRMS * middle, x + 0.5, middle - negativeRMS * middle);
+            }
+        }
+    }
+}
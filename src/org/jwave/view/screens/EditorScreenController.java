@@ -1,25 +1,26 @@
 package org.jwave.view.screens;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.jwave.controller.EditorController;
-import org.jwave.model.editor.GroupedSampleInfo;
 import org.jwave.model.player.Song;
 import org.jwave.view.FXEnvironment;
 import org.jwave.view.UI;
+import org.jwave.view.WaveformView;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
-import javafx.scene.chart.LineChart;
-import javafx.scene.chart.XYChart;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.image.ImageView;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckMenuItem;
 import javafx.scene.control.Label;
 import javafx.scene.control.MenuItem;
+import javafx.scene.control.ScrollPane;
 import javafx.scene.control.Slider;
+import javafx.scene.input.ScrollEvent;
 import javafx.scene.layout.VBox;
 import javafx.stage.FileChooser;
 import javafx.stage.FileChooser.ExtensionFilter;
@@ -31,25 +32,39 @@ import javafx.stage.Stage;
  */
 public class EditorScreenController implements UI {
 
+    private static final double CHART_MARGINS = 50;
+    private static final double ZOOM_STEP = 1.1;
+    private static final double MIN_ZOOM = 0.01;
+    private static final double MAX_ZOOM = 100;
+    private static final int SPLICE_FADE_MS = 10;
+
     private final FXMLScreens FXMLSCREEN = FXMLScreens.EDITOR;
     private final FXEnvironment environment;
     private final EditorController controller;
     private Stage primaryStage;
     private boolean lockedPositionSlider;
+    private final AtomicBoolean positionPending;
+    private volatile int latestPosition;
+    private volatile int latestLength;
     private boolean loaded;
+    private int graphLength;
+    private double framesPerUnit;
+    private double zoom;
 
     @FXML
     private MenuItem btnEditor;
     @FXML
+    private CheckMenuItem btnSmoothJoins;
+    @FXML
     private Label labelLeft, labelRight, labelSong, labelFrom, labelTo;
     @FXML
     private Button btnPlay, btnStop, btnNewPlaylist;
     @FXML
     private volatile Slider sliderPosition, sliderVolume, sliderCursor1, sliderCursor2;
     @FXML
-    private LineChart<Integer, Float> lineChartLeft;
+    private WaveformView waveformLeft, waveformRight;
     @FXML
-    private LineChart<Integer, Float> lineChartRight;
+    private ScrollPane scrollPaneChart;
     @FXML
     private VBox vboxChartContainer;
 
@@ -62,8 +77,10 @@ public class EditorScreenController implements UI {
         this.environment = environment;
         this.environment.loadScreen(FXMLSCREEN, this);
         this.lockedPositionSlider = false;
+        this.positionPending = new AtomicBoolean(false);
         this.controller.addGraph(this);
         this.loaded = false;
+        this.zoom = 1;
         
         btnPlay.setGraphic(new ImageView("/icons/play.png"));
         btnStop.setGraphic(new ImageView("/icons/stop.png"));
@@ -74,6 +91,16 @@ public class EditorScreenController implements UI {
             controller.setVolume(new_val.intValue());
             System.out.println(new_val);
         });
+
+        scrollPaneChart.viewportBoundsProperty().addListener((ov, old_val, new_val) -> updateVisibleRange());
+        scrollPaneChart.addEventFilter(ScrollEvent.SCROLL, e -> {
+            if (e.isControlDown()) {
+                double notches = e.getMultiplierY() != 0 ? e.getDeltaY() / e.getMultiplierY()
+                        : Math.signum(e.getDeltaY());
+                zoom(Math.pow(ZOOM_STEP, notches), e.getX());
+                e.consume();
+            }
+        });
     }
 
     /*
@@ -129,40 +156,37 @@ public class EditorScreenController implements UI {
     }
 
     /**
-     * @param samplesList
-     *            Plots the graph of the waveform
+     * 
      */
-    public void paintWaveForm(List<GroupedSampleInfo> samplesList) {
-
-        lineChartLeft.getData().clear();
-        lineChartRight.getData().clear();
-
-        System.out.println("paint" + Thread.currentThread());
-
-        XYChart.Series<Integer, Float> leftSeries = new XYChart.Series<>();
-
-        leftSeries.setName("Left Channel");
-
-        for (int i = 0; i < samplesList.size(); i++) {
-            leftSeries.getData().add(new XYChart.Data<Integer, Float>(i, samplesList.get(i).getLeftChannelMax()));
-            leftSeries.getData().add(new XYChart.Data<Integer, Float>(i, samplesList.get(i).getLeftChannelMin()));
-        }
-
-        lineChartLeft.setCreateSymbols(false);
-        lineChartLeft.getData().add(leftSeries);
-
-        XYChart.Series<Integer, Float> rightSeries = new XYChart.Series<>();
-
-        rightSeries.setName("Right Channel");
+    @FXML
+    private void undo() {
+        controller.undo();
+    }
 
-        for (int i = 0; i < samplesList.size(); i++) {
-            rightSeries.getData().add(new XYChart.Data<Integer, Float>(i, samplesList.get(i).getRightChannelMax()));
-            rightSeries.getData().add(new XYChart.Data<Integer, Float>(i, samplesList.get(i).getRightChannelMin()));
-        }
+    /**
+     * 
+     */
+    @FXML
+    private void redo() {
+        controller.redo();
+    }
 
-        lineChartRight.setCreateSymbols(false);
-        lineChartRight.getData().add(rightSeries);
+    /**
+     * Crossfades the joins of the edited song when it is played, or joins
+     * them exactly as exported.
+     */
+    @FXML
+    private void smoothJoins() {
+        controller.setSpliceFade(btnSmoothJoins.isSelected() ? SPLICE_FADE_MS : 0);
+    }
 
+    /**
+     * Plots the graph of the waveform again, only where the song changed.
+     */
+    public void paintWaveForm() {
+        int length = this.controller.getSongLength();
+        waveformLeft.refresh(length);
+        waveformRight.refresh(length);
     }
 
     /**
@@ -174,17 +198,21 @@ public class EditorScreenController implements UI {
         fileChooser.getExtensionFilters().add(new ExtensionFilter("Audio file", "*.mp3", "*.wav"));
         File openedFile = fileChooser.showOpenDialog(primaryStage);
         this.loaded = true;
-        try {
-            controller.loadSong(openedFile);
-            paintWaveForm(new ArrayList<GroupedSampleInfo>(this.controller.getWaveform()));
-
-        } catch (Exception e) {
-            Alert alert = new Alert(AlertType.ERROR);
-            alert.setTitle("Errore");
-            alert.setHeaderText("Impossibile aprire il file " + openedFile.getName());
-            alert.setContentText("Il file potrebbe essere danneggiato o in un formato non valido.");
-            alert.showAndWait();
-        }
+        controller.loadSongAsync(openedFile).whenComplete((result, e) -> Platform.runLater(() -> {
+            if (e == null) {
+                int length = this.controller.getSongLength();
+                framesPerUnit = (double) length / Math.max(graphLength, 1);
+                layoutGraph();
+                waveformLeft.setWaveform(this.controller::getWaveformTilesAsync, length, framesPerUnit / zoom);
+                waveformRight.setWaveform(this.controller::getWaveformTilesAsync, length, framesPerUnit / zoom);
+            } else {
+                Alert alert = new Alert(AlertType.ERROR);
+                alert.setTitle("Errore");
+                alert.setHeaderText("Impossibile aprire il file " + openedFile.getName());
+                alert.setContentText("Il file potrebbe essere danneggiato o in un formato non valido.");
+                alert.showAndWait();
+            }
+        }));
 
     }
 
@@ -214,6 +242,21 @@ public class EditorScreenController implements UI {
      */
     @Override
     public void updatePosition(Integer ms, Integer lenght) {
+        latestPosition = ms;
+        latestLength = lenght;
+        /* a single update waits for the FX thread at a time, showing the latest position */
+        if (positionPending.compareAndSet(false, true)) {
+            Platform.runLater(() -> {
+                positionPending.set(false);
+                showPosition(latestPosition, latestLength);
+            });
+        }
+    }
+
+    /*
+     * Moves the slider and writes the elapsed and remaining time.
+     */
+    private void showPosition(int ms, int lenght) {
         if (!sliderPosition.isValueChanging() && lockedPositionSlider == false)
             sliderPosition.setValue((ms * 10000) / lenght);
 
@@ -222,11 +265,8 @@ public class EditorScreenController implements UI {
         String remaining = ("-" + String.format("%d:%02d", TimeUnit.MILLISECONDS.toMinutes(lenght - ms),
                 TimeUnit.MILLISECONDS.toSeconds(lenght - ms)
                         - TimeUnit.MINUTES.toSeconds(TimeUnit.MILLISECONDS.toMinutes(lenght - ms))));
-
-        Platform.runLater(() -> {
-            labelLeft.setText(elapsed);
-            labelRight.setText(remaining);
-        });
+        labelLeft.setText(elapsed);
+        labelRight.setText(remaining);
     }
 
     /**
@@ -263,7 +303,15 @@ public class EditorScreenController implements UI {
             fileChooser.getExtensionFilters().add(extFilter);
             File file = fileChooser.showSaveDialog(primaryStage);
             if (file != null) {
-                controller.saveFile(file.getAbsolutePath());
+                try {
+                    controller.saveFile(file.getAbsolutePath());
+                } catch (IOException e) {
+                    Alert alert = new Alert(AlertType.ERROR);
+                    alert.setTitle("Errore");
+                    alert.setHeaderText("Impossibile salvare il file " + file.getName());
+                    alert.setContentText(e.getMessage());
+                    alert.showAndWait();
+                }
             }
         }
         
@@ -288,11 +336,59 @@ public class EditorScreenController implements UI {
      *            length of the song to be displayed
      */
     public void updateGraphLenght(int ms) {
-        vboxChartContainer.setPrefWidth(ms);
+        if (!Platform.isFxApplicationThread()) {
+            Platform.runLater(() -> updateGraphLenght(ms));
+            return;
+        }
+        graphLength = ms;
         sliderCursor1.setMax(ms);
         sliderCursor2.setMax(ms);
-        lineChartLeft.setPrefWidth(ms);
-        lineChartRight.setPrefWidth(ms);
+        layoutGraph();
+    }
+
+    /*
+     * Sizes the graph so that the song is drawn at the current zoom.
+     */
+    private void layoutGraph() {
+        if (framesPerUnit > 0) {
+            vboxChartContainer.setPrefWidth(this.controller.getSongLength() / (framesPerUnit / zoom) + CHART_MARGINS);
+            waveformLeft.setFramesPerPixel(framesPerUnit / zoom);
+            waveformRight.setFramesPerPixel(framesPerUnit / zoom);
+        } else {
+            vboxChartContainer.setPrefWidth(graphLength * zoom + CHART_MARGINS);
+        }
+    }
+
+    /*
+     * Zooms the graph by the given factor, keeping still the point of the
+     * song under the given x of the scroll pane.
+     */
+    private void zoom(double factor, double x) {
+        double newZoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom * factor));
+        double contentX = x - scrollPaneChart.getViewportBounds().getMinX();
+
+        if (newZoom != zoom && framesPerUnit > 0) {
+            double left = waveformLeft.getLayoutX();
+            double scrollable;
+
+            contentX = left + (contentX - left) * newZoom / zoom;
+            zoom = newZoom;
+            layoutGraph();
+            scrollPaneChart.layout();
+            scrollable = vboxChartContainer.getWidth() - scrollPaneChart.getViewportBounds().getWidth();
+            scrollPaneChart.setHvalue(scrollable > 0 ? Math.max(0, Math.min(1, (contentX - x) / scrollable)) : 0);
+        }
+    }
+
+    /*
+     * Tells the graphs which part of them is visible in the scroll pane.
+     */
+    private void updateVisibleRange() {
+        double from = -scrollPaneChart.getViewportBounds().getMinX();
+        double to = from + scrollPaneChart.getViewportBounds().getWidth();
+
+        waveformLeft.setVisibleRange(from - waveformLeft.getLayoutX(), to - waveformLeft.getLayoutX());
+        waveformRight.setVisibleRange(from - waveformRight.getLayoutX(), to - waveformRight.getLayoutX());
     }
 
 }
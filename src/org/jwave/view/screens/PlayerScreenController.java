@@ -4,11 +4,12 @@ import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 import org.jwave.controller.PlayerController;
 import org.jwave.model.player.MetaData;
@@ -38,6 +39,7 @@ import javafx.scene.control.TableView;
 import javafx.scene.control.TextInputDialog;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.FileChooser.ExtensionFilter;
 import javafx.stage.Stage;
@@ -54,11 +56,14 @@ public class PlayerScreenController implements UI {
     private final PlayerController controller;
     private Stage primaryStage;
     private boolean lockedPositionSlider;
+    private final AtomicBoolean positionPending;
+    private volatile int latestPosition;
+    private volatile int latestLength;
 
     @FXML
     private MenuItem btnEditor, about;
     @FXML
-    private ChoiceBox<String> choiceMode;
+    private ChoiceBox<String> choiceMode, choiceCrossfade;
     @FXML
     private Label labelLeft, labelRight, labelSong;
     @FXML
@@ -81,6 +86,7 @@ public class PlayerScreenController implements UI {
         this.environment = environment;
         this.environment.loadScreen(FXMLSCREEN, this);
         this.lockedPositionSlider = false;
+        this.positionPending = new AtomicBoolean(false);
         this.primaryStage = this.environment.getMainStage();
 
         sliderVolume.valueProperty().addListener((ov, old_val, new_val) -> {
@@ -138,6 +144,30 @@ public class PlayerScreenController implements UI {
                     }
                 });
 
+        // Sets the choices for the crossfade between songs
+        choiceCrossfade.getItems().add("No crossfade");
+        choiceCrossfade.getItems().add("Crossfade 2 s");
+        choiceCrossfade.getItems().add("Crossfade 5 s");
+        choiceCrossfade.getItems().add("Crossfade 10 s");
+        choiceCrossfade.getSelectionModel().selectFirst();
+        choiceCrossfade.getSelectionModel().selectedItemProperty()
+                .addListener((ObservableValue<? extends String> observable, String oldValue, String newValue) -> {
+                    switch (newValue) {
+                    case "Crossfade 2 s":
+                        controller.setCrossfade(2000);
+                        break;
+                    case "Crossfade 5 s":
+                        controller.setCrossfade(5000);
+                        break;
+                    case "Crossfade 10 s":
+                        controller.setCrossfade(10000);
+                        break;
+                    default:
+                        controller.setCrossfade(0);
+                        break;
+                    }
+                });
+
         // Sets the right-click menù on a song displayed in the table
         MenuItem addToPlaylist = new MenuItem("Aggiungi a playlist");
         addToPlaylist.setOnAction(e -> {
@@ -198,9 +228,15 @@ public class PlayerScreenController implements UI {
         // display the content in the table
         listView.setItems(controller.getObservablePlaylists());
         listView.setOnMouseClicked(e -> {
+            final Playlist selected = listView.getSelectionModel().getSelectedItem();
             try {
-                tableView.setItems(
-                        controller.getObservablePlaylistContent(listView.getSelectionModel().getSelectedItem()));
+                tableView.setItems(controller.getObservablePlaylistContent(selected));
+            } catch (IllegalStateException x) {
+                Alert alert = new Alert(AlertType.ERROR);
+                alert.setTitle("Errore");
+                alert.setHeaderText("Impossibile aprire la playlist " + selected);
+                alert.setContentText("Il file potrebbe essere danneggiato.");
+                alert.showAndWait();
             } catch (Exception x) {
                 System.out.println("Unable to retrieve playlists");
             }
@@ -317,24 +353,41 @@ public class PlayerScreenController implements UI {
         fileChooser.getExtensionFilters().add(new ExtensionFilter("Audio file", "*.mp3", "*.wav"));
         List<File> openedFiles = fileChooser.showOpenMultipleDialog(primaryStage);
         if (openedFiles != null)
-            openedFiles.forEach(f -> {
-                try {
-                    controller.loadSong(f);
-                } catch (IllegalArgumentException a) {
-                    Alert alert = new Alert(AlertType.ERROR);
-                    alert.setTitle("Errore");
-                    alert.setHeaderText("Impossibile aprire il file " + f.getName());
-                    alert.setContentText("Il file potrebbe essere danneggiato o in un formato non valido.");
-                    alert.showAndWait();
-                } catch (IOException i) {
-                    Alert alert = new Alert(AlertType.ERROR);
-                    alert.setTitle("Errore");
-                    alert.setHeaderText("Impossibile accedere alla playlist.");
-                    alert.setContentText(
-                            "Le canzoni saranno comunque disponibili alla riproduzione ma non saranno memorizzate in maniera permanente.");
-                    alert.showAndWait();
-                }
-            });
+            importFiles(openedFiles, openedFiles.size());
+    }
+
+    /**
+     * 
+     */
+    @FXML
+    private void openFolder() {
+        DirectoryChooser directoryChooser = new DirectoryChooser();
+        File openedFolder = directoryChooser.showDialog(primaryStage);
+        if (openedFolder != null)
+            importFiles(Collections.singletonList(openedFolder), 1);
+    }
+
+    /**
+     * Imports files in background, telling if fewer songs than expected were
+     * found.
+     */
+    private void importFiles(List<File> files, int expected) {
+        controller.importFiles(files).whenComplete((added, e) -> Platform.runLater(() -> {
+            if (e != null) {
+                Alert alert = new Alert(AlertType.ERROR);
+                alert.setTitle("Errore");
+                alert.setHeaderText("Impossibile accedere alla playlist.");
+                alert.setContentText(
+                        "Le canzoni saranno comunque disponibili alla riproduzione ma non saranno memorizzate in maniera permanente.");
+                alert.showAndWait();
+            } else if (added < expected) {
+                Alert alert = new Alert(AlertType.ERROR);
+                alert.setTitle("Errore");
+                alert.setHeaderText("Impossibile aprire alcuni file.");
+                alert.setContentText("I file potrebbero essere danneggiati o in un formato non valido.");
+                alert.showAndWait();
+            }
+        }));
     }
 
     /**
@@ -355,6 +408,21 @@ public class PlayerScreenController implements UI {
      */
     @Override
     public void updatePosition(Integer ms, Integer lenght) {
+        latestPosition = ms;
+        latestLength = lenght;
+        /* a single update waits for the FX thread at a time, showing the latest position */
+        if (positionPending.compareAndSet(false, true)) {
+            Platform.runLater(() -> {
+                positionPending.set(false);
+                showPosition(latestPosition, latestLength);
+            });
+        }
+    }
+
+    /*
+     * Moves the slider and writes the elapsed and remaining time.
+     */
+    private void showPosition(int ms, int lenght) {
         if (!sliderPosition.isValueChanging() && lockedPositionSlider == false)
             sliderPosition.setValue((ms * 10000) / lenght);
 
@@ -363,11 +431,8 @@ public class PlayerScreenController implements UI {
         String remaining = ("-" + String.format("%d:%02d", TimeUnit.MILLISECONDS.toMinutes(lenght - ms),
                 TimeUnit.MILLISECONDS.toSeconds(lenght - ms)
                         - TimeUnit.MINUTES.toSeconds(TimeUnit.MILLISECONDS.toMinutes(lenght - ms))));
-        Platform.runLater(() -> {
-            labelLeft.setText(elapsed);
-            labelRight.setText(remaining);
-        });
-
+        labelLeft.setText(elapsed);
+        labelRight.setText(remaining);
     }
 
     /**